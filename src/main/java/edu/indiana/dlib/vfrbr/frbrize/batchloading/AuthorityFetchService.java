@@ -0,0 +1,229 @@
+/**
+ * Copyright 2009-2011, Trustees of Indiana University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *   Neither the name of Indiana University nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.indiana.dlib.vfrbr.frbrize.batchloading;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import org.apache.log4j.Logger;
+
+/**
+ *  Process-wide service fetching authority records in the background.
+ * <p>
+ * A fixed number of fetch threads share a pool of AuthorityFetchers,
+ * each holding its server connection open between searches.  Searches
+ * are paced by a token bucket of authority_requests_per_second, rather
+ * than a fixed sleep after each search on the frbrizing thread.
+ * <p>
+ * A fetch returns a Future, so a caller may prefetch a heading and carry
+ * on, and later lookups of the same heading share the one fetch in
+ * flight.  The Sink of a fetch stores the records into the authority
+ * cache before the fetch stops being in flight.
+ */
+public final class AuthorityFetchService {
+
+    private static final Logger log =
+            Logger.getLogger(AuthorityFetchService.class);
+
+    /**
+     *  Stores fetched records into the authority cache.
+     */
+    public interface Sink {
+
+        /**
+         * @param records the raw MARC records, empty if no hits.
+         * @throws Exception if they can't be stored.
+         */
+        void fetched(byte[] records) throws Exception;
+    }
+
+    private static AuthorityFetchService instance;
+
+    private final ExecutorService fetchThreads;
+
+    private final BlockingQueue<AuthorityFetcher> fetchers;
+
+    /**
+     * All the fetchers, for closing.
+     */
+    private final List<AuthorityFetcher> allFetchers =
+            new ArrayList<AuthorityFetcher>();
+
+    private final TokenBucket rateLimiter;
+
+    /**
+     * Fetches in flight, by cache key.
+     */
+    private final ConcurrentMap<String, Future<byte[]>> inFlight =
+            new ConcurrentHashMap<String, Future<byte[]>>();
+
+    private AuthorityFetchService(final Properties authCacheProps)
+            throws Exception {
+
+        final int connections = Math.max(1, Integer.parseInt(
+                authCacheProps.getProperty("authority_connections", "2").trim()));
+        final double perSecond = Double.parseDouble(
+                authCacheProps.getProperty("authority_requests_per_second", "4").trim());
+        final int burst = Integer.parseInt(
+                authCacheProps.getProperty("authority_burst", "1").trim());
+        final String fetcherClass = authCacheProps.getProperty(
+                "authority_fetcher",
+                Z3950AuthorityFetcher.class.getName()).trim();
+
+        this.fetchers = new ArrayBlockingQueue<AuthorityFetcher>(connections);
+        for (int idx = 0; idx < connections; idx++) {
+            final AuthorityFetcher fetcher = (AuthorityFetcher)
+                    Class.forName(fetcherClass).
+                    getConstructor(Properties.class).
+                    newInstance(authCacheProps);
+            this.fetchers.add(fetcher);
+            this.allFetchers.add(fetcher);
+        }
+
+        this.rateLimiter = new TokenBucket(perSecond, burst);
+
+        this.fetchThreads = Executors.newFixedThreadPool(connections,
+                new ThreadFactory() {
+
+                    private int threadNum = 0;
+
+                    @Override
+                    public synchronized Thread newThread(final Runnable run) {
+                        final Thread thread =
+                                new Thread(run, "authority-fetch-" + (++threadNum));
+                        // don't hold the JVM open for prefetches
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+
+        log.info("authority fetch service: " + connections
+                + " " + fetcherClass + " connections, "
+                + perSecond + " requests per second");
+    }
+
+    /**
+     *  Get the service, starting it on first use.
+     * @param authCacheProps the authCache properties.
+     * @return the AuthorityFetchService.
+     * @throws Exception if the fetchers can't be created.
+     */
+    public static synchronized AuthorityFetchService getInstance(
+            final Properties authCacheProps) throws Exception {
+
+        if (instance == null) {
+            instance = new AuthorityFetchService(authCacheProps);
+        }
+        return instance;
+    }
+
+    /**
+     *  Stop the service, if started, and close its connections.
+     */
+    public static synchronized void shutdown() {
+        if (instance != null) {
+            instance.fetchThreads.shutdownNow();
+            for (AuthorityFetcher fetcher : instance.allFetchers) {
+                fetcher.close();
+            }
+            instance = null;
+        }
+    }
+
+    /**
+     *  Fetch the authority records of a heading in the background,
+     * or join the fetch of it already in flight.
+     * @param key the authority cache key of the heading.
+     * @param query the prefix query for the heading.
+     * @param sink stores the fetched records.
+     * @return Future of the raw MARC records.
+     */
+    public Future<byte[]> fetch(final String key,
+                                final String query,
+                                final Sink sink) {
+
+        final FutureTask<byte[]> task = new FutureTask<byte[]>(
+                new Callable<byte[]>() {
+
+                    @Override
+                    public byte[] call() throws Exception {
+                        try {
+                            final byte[] records = search(query);
+                            sink.fetched(records);
+                            return records;
+                        } finally {
+                            inFlight.remove(key);
+                        }
+                    }
+                });
+
+        final Future<byte[]> existing = this.inFlight.putIfAbsent(key, task);
+        if (existing != null) {
+            return existing;
+        }
+
+        this.fetchThreads.execute(task);
+        return task;
+    }
+
+    /**
+     * @return number of fetches in flight.
+     */
+    public int getInFlightCount() {
+        return this.inFlight.size();
+    }
+
+    private byte[] search(final String query) throws Exception {
+
+        this.rateLimiter.acquire();
+
+        final AuthorityFetcher fetcher = this.fetchers.take();
+        try {
+            return fetcher.search(query);
+        } catch (Exception ex) {
+            // reconnect for the next search
+            fetcher.close();
+            throw ex;
+        } finally {
+            this.fetchers.put(fetcher);
+        }
+    }
+}
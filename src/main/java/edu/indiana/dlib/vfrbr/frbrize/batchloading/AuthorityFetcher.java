@@ -0,0 +1,56 @@
+/**
+ * Copyright 2009-2011, Trustees of Indiana University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *   Neither the name of Indiana University nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.indiana.dlib.vfrbr.frbrize.batchloading;
+
+/**
+ *  Source of authority records for the authority cache,
+ * normally a Z39.50 server.
+ * <p>
+ * Implementations are named by authority_fetcher in authCache.properties
+ * and need a public constructor taking the authCache Properties.
+ * Each instance is used by one fetch thread at a time, and may keep its
+ * connection open between searches.
+ */
+public interface AuthorityFetcher {
+
+    /**
+     *  Search for the authority records of a heading.
+     * @param query the prefix query, attribute set and quoted heading.
+     * @return the raw MARC records, empty if there are no hits.
+     * @throws Exception if the search fails.
+     */
+    byte[] search(String query) throws Exception;
+
+    /**
+     *  Close any connection, a later search reconnects.
+     */
+    void close();
+}
@@ -34,22 +34,44 @@ import edu.indiana.dlib.vfrbr.frbrize.batchloading.mappers.WorkMapper;
 import edu.indiana.dlib.vfrbr.frbrize.batchloading.marcDecorators.MarcCollection;
 import edu.indiana.dlib.vfrbr.frbrize.batchloading.marcDecorators.MarcDataField;
 import edu.indiana.dlib.vfrbr.frbrize.batchloading.marcDecorators.MarcRecord;
+import edu.indiana.dlib.vfrbr.frbrize.batchloading.marcDecorators.SubfieldCodes;
 import org.apache.log4j.Logger;
-import org.yaz4j.Connection;
-import org.yaz4j.ResultSet;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.text.Normalizer;
 import java.text.Normalizer.Form;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.Future;
 
 
 public class AuthorityHandler {
 
     private static final Logger log = Logger.getLogger(AuthorityHandler.class);
 
+    private static final SubfieldCodes SUBFIELDS_ABCDEJQ =
+            SubfieldCodes.of("abcdejq");
+
+    private static final SubfieldCodes SUBFIELD_T =
+            SubfieldCodes.of("t");
+
+    private static final SubfieldCodes SUBFIELDS_ABCDENQ =
+            SubfieldCodes.of("abcdenq");
+
+    private static final SubfieldCodes SUBFIELDS_KPO =
+            SubfieldCodes.of("kpo");
+
+    private static final SubfieldCodes SUBFIELDS_TMNR =
+            SubfieldCodes.of("tmnr");
+
     private String CACHE_PATH;
 
     private String CORP_CACHE_PATH;
@@ -58,11 +80,16 @@ public class AuthorityHandler {
 
     private String WORK_CACHE_PATH;
 
-    private String AUTHORTY_HOST;
-    private int AUTHORITY_PORT;
-    private String AUTHORITY_DATABASE;
-    private String AUTHORITY_USERNAME;
-    private String AUTHORITY_PASSWORD;
+    /**
+     * The authCache properties, for the fetch service.
+     */
+    private Properties authCacheProps;
+
+    /**
+     * Use the single-file AuthorityStore per cache directory,
+     * instead of a file per heading.
+     */
+    private boolean USE_STORE;
 
     //form for attribute arrays
     //USE - RELATION - POSITION - STRUCTURE - TRUNCATION - COMPLETENESS
@@ -70,12 +97,49 @@ public class AuthorityHandler {
     private final String WORK_ATTRIB = "@attr 1=4 @attr 2=104 @attr 3=1 @attr 4=1 @attr 5=100 @attr 6=3 ";
     private final String PERSON_ATTRIB = "@attr 1=1 @attr 2=104 @attr 3=1 @attr 4=1 @attr 5=100 @attr 6=3 ";
     private final String CORP_ATTRIB = "@attr 1=2 @attr 2=104 @attr 3=1 @attr 4=1 @attr 5=100 @attr 6=3 ";
+    private static final String[] PERSON_TAGS = {"100", "600", "700"};
+    private static final String[] CORP_TAGS = {
+            "110", "111", "610", "611", "710", "711"};
     private final static boolean isEnabled = !Boolean.getBoolean("authorityDisabled");
+
+    private static final int DECODED_CACHE_SIZE =
+            LoadSettings.getInt("auth_decoded_cache_size", 2000);
+
+    /**
+     * Decoded authority records, by cache file path,
+     * least recently used evicted.
+     */
+    private static final Map<String, List<MarcRecord>> decodedCache =
+            new LinkedHashMap<String, List<MarcRecord>>(256, 0.75f, true) {
+
+                @Override
+                protected boolean removeEldestEntry(
+                        final Map.Entry<String, List<MarcRecord>> eldest) {
+                    return size() > DECODED_CACHE_SIZE;
+                }
+            };
+    /**
+     * Whether headings missing from the cache are fetched and waited for.
+     */
+    private final boolean fetchMissing;
+
     /**
      * Instantiate an AuthorityHandler,
      * also loading the authority handler properties.
      */
     public AuthorityHandler() {
+        this(true);
+    }
+
+    /**
+     * Instantiate an AuthorityHandler,
+     * also loading the authority handler properties.
+     * @param fetchMissing whether to fetch headings missing from the
+     *        cache, and wait for them.  False under an IdentityLocks
+     *        monitor, where a missing heading is looked up as not found.
+     */
+    public AuthorityHandler(final boolean fetchMissing) {
+        this.fetchMissing = fetchMissing;
         if (!isEnabled) {
             return;
         }
@@ -87,7 +151,7 @@ public class AuthorityHandler {
             log.error("==*!!*== Can't load authCache.properties.");
         } else {
             try {
-                final Properties authCacheProps = new Properties();
+                authCacheProps = new Properties();
                 authCacheProps.load(inSteam);
                 // and set the path fields
                 CACHE_PATH =
@@ -99,11 +163,8 @@ public class AuthorityHandler {
                 WORK_CACHE_PATH =
                         CACHE_PATH + authCacheProps.getProperty("auth_cache_path_work");
 
-                AUTHORTY_HOST = authCacheProps.getProperty("authority_host");
-                AUTHORITY_PORT = Integer.getInteger(authCacheProps.getProperty("authority_port"));
-                AUTHORITY_DATABASE = authCacheProps.getProperty("authority_database");
-                AUTHORITY_USERNAME = authCacheProps.getProperty("authority_username");
-                AUTHORITY_PASSWORD = authCacheProps.getProperty("authority_password");
+                USE_STORE = "store".equals(
+                        authCacheProps.getProperty("auth_cache_format", "files").trim());
 
             } catch (Exception ex) {
                 log.error("==*!!*== load failed for authCache.properties.");
@@ -123,52 +184,49 @@ public class AuthorityHandler {
             return null;
         }
         final String nameFromMARC =
-                personField.concatSubfields("abcdejq".toCharArray());
+                personField.concatSubfields(SUBFIELDS_ABCDEJQ);
 
         MarcRecord selectedRecord = null;
 
+        // first candidate whose heading matches exactly
+        MarcRecord matchingRecord = null;
+
         int recIndx = 0;
 
         try {
-            MarcCollection peopleCache = this.getAuthRecords(nameFromMARC, PEOPLE_CACHE_PATH, PERSON_ATTRIB);
+            final List<MarcRecord> peopleCache = this.getDecodedAuthRecords(nameFromMARC, PEOPLE_CACHE_PATH, PERSON_ATTRIB);
             if(peopleCache == null) {
                 return null;
             }
             int numberOfCanidates = 0;
-            while (peopleCache.hasNext()) {
+            for (MarcRecord marcRec : peopleCache) {
                 recIndx++;
-                final MarcRecord marcRec = peopleCache.next();
                 if (marcRec.hasField("100")) {
                     final MarcDataField field100 = marcRec.getDataField("100");
-                    if (!field100.hasSubfields("t".toCharArray())) {
+                    if (!field100.hasSubfields(SUBFIELD_T)) {
 
                         selectedRecord = marcRec;
                         numberOfCanidates++;
-                    }
-                }
-            }
 
-            if (numberOfCanidates == 1) {
-                return selectedRecord;
-            } else if (numberOfCanidates > 1) {
-                peopleCache = this.getAuthRecords(nameFromMARC, PEOPLE_CACHE_PATH, PERSON_ATTRIB);
-                while (peopleCache.hasNext()) {
-                    final MarcRecord marcRec = peopleCache.next();
-                    if (marcRec.hasField("100")) {
-                        final MarcDataField field100 =
-                                marcRec.getDataField("100");
-                        if (!field100.hasSubfields("t".toCharArray())) {
+                        if (matchingRecord == null) {
                             final String fieldValue100 =
                                     field100.concatSubfields(
-                                    "abcdejq".toCharArray());
+                                    SUBFIELDS_ABCDEJQ);
                             // FIXME String.equals probably doesn't handle extended utf
                             if (nameFromMARC.equals(fieldValue100)) {
-                                return marcRec;
+                                matchingRecord = marcRec;
                             }
                         }
                     }
                 }
             }
+
+            if (numberOfCanidates == 1) {
+                return selectedRecord;
+            } else if (numberOfCanidates > 1) {
+                // ambiguous, only an exact heading match will do
+                return matchingRecord;
+            }
             return null;
         } catch (Exception ex) {
             log.error("\n-- exception processing MarcCollection on fileName for \""
@@ -193,42 +251,41 @@ public class AuthorityHandler {
             return null;
         }
         final String nameFromMARC =
-                corpBodyField.concatSubfields("abcdenq".toCharArray());
+                corpBodyField.concatSubfields(SUBFIELDS_ABCDENQ);
         final String[] corpFields = {"110", "111"};
         MarcRecord selectedRecord = null;
 
+        // first candidate whose heading matches exactly
+        MarcRecord matchingRecord = null;
+
         try {
-            MarcCollection corpCache = this.getAuthRecords(nameFromMARC, CORP_CACHE_PATH, CORP_ATTRIB);
+            final List<MarcRecord> corpCache = this.getDecodedAuthRecords(nameFromMARC, CORP_CACHE_PATH, CORP_ATTRIB);
             if(corpCache == null) {
                 return null;
             }
             int numberOfCanidates = 0;
-            while (corpCache.hasNext()) {
-                final MarcRecord marcRec = corpCache.next();
+            for (MarcRecord marcRec : corpCache) {
                 final MarcDataField field11x =
                         marcRec.getDataFields(corpFields).get(0);
-                if (!field11x.hasSubfields("t".toCharArray())) {
+                if (!field11x.hasSubfields(SUBFIELD_T)) {
                     selectedRecord = marcRec;
                     numberOfCanidates++;
-                }
-            }
-            if (numberOfCanidates == 1) {
-                return selectedRecord;
-            } else if (numberOfCanidates > 1) {
-                corpCache = this.getAuthRecords(nameFromMARC, CORP_CACHE_PATH, CORP_ATTRIB);
-                while (corpCache.hasNext()) {
-                    final MarcRecord marcRec = corpCache.next();
-                    final MarcDataField field11x =
-                            marcRec.getDataFields(corpFields).get(0);
-                    if (!field11x.hasSubfields("t".toCharArray())) {
+
+                    if (matchingRecord == null) {
                         final String fieldValue11x =
-                                field11x.concatSubfields("abcdenq".toCharArray());
+                                field11x.concatSubfields(SUBFIELDS_ABCDENQ);
                         if (nameFromMARC.equals(fieldValue11x)) {
-                            return marcRec;
+                            matchingRecord = marcRec;
                         }
                     }
                 }
             }
+            if (numberOfCanidates == 1) {
+                return selectedRecord;
+            } else if (numberOfCanidates > 1) {
+                // ambiguous, only an exact heading match will do
+                return matchingRecord;
+            }
             return null;
         } catch (Exception ex) {
             return null;
@@ -245,49 +302,23 @@ public class AuthorityHandler {
         if (!isEnabled) {
             return null;
         }
-        final MarcDataField composerField = workMapper.getComposerField();
-        String name = "";
-        String path;
-        String attribSet;
-        if (null != composerField) {
-
-            if ((composerField.getTag().equals("100"))
-                    || (composerField.getTag().equals("700"))) {
-
-                name = composerField.concatSubfields("abcdejq".toCharArray());
-                path = PEOPLE_CACHE_PATH;
-                attribSet = PERSON_ATTRIB;
-
-            } else {
-
-                name = composerField.concatSubfields("abcdenq".toCharArray());
-                path = CORP_CACHE_PATH;
-                attribSet = CORP_ATTRIB;
-            }
-        } else {
-            // no composer field, use work title
-            // as done in auth cache file creation (|t subfield)
-            name = workMapper.getSimpleTitleString();
-            path = WORK_CACHE_PATH;
-            attribSet = WORK_ATTRIB;
-        }
+        final Heading heading = getWorkHeading(workMapper);
 
         try {
-            final MarcCollection marcCache = this.getAuthRecords(name, path, attribSet);
-            while (marcCache.hasNext()) {
-                final MarcRecord marcRec = marcCache.next();
+            final List<MarcRecord> marcCache = this.getDecodedAuthRecords(heading.searchString, heading.cache, heading.attribSet);
+            for (MarcRecord marcRec : marcCache) {
                 final String[] headingFields = {"100", "110", "111"};
 
                 if (marcRec.hasField(headingFields)) {
                     final MarcDataField mdf =
                             marcRec.getDataFields(headingFields).get(0);
-                    if (mdf.hasSubfields("t".toCharArray())
-                            && !mdf.hasSubfields("kpo".toCharArray())) {
+                    if (mdf.hasSubfields(SUBFIELD_T)
+                            && !mdf.hasSubfields(SUBFIELDS_KPO)) {
                         if (normalize(
                                 workMapper.getUniformTitleString(),
                                 true).equals(
                                 normalize(mdf.concatSubfields(
-                                "tmnr".toCharArray()), true))) {
+                                SUBFIELDS_TMNR), true))) {
                             return marcRec;
                         }
                     }
@@ -300,6 +331,111 @@ public class AuthorityHandler {
         return null;
     }
 
+    /**
+     * @return whether authority lookups are enabled,
+     *         i.e. the authorityDisabled system property is not set.
+     */
+    static boolean isLookupEnabled() {
+        return isEnabled;
+    }
+
+    /**
+     *  Get the authority heading looked up for a Work, that of its
+     * composer, or of its title if it has no composer.
+     * @param workMapper the WorkMapper holding the Work MarcDataField.
+     * @return the Heading.
+     */
+    final Heading getWorkHeading(final WorkMapper workMapper) {
+        final MarcDataField composerField = workMapper.getComposerField();
+        if (null != composerField) {
+
+            if ((composerField.getTag().equals("100"))
+                    || (composerField.getTag().equals("700"))) {
+
+                return new Heading(
+                        composerField.concatSubfields(SUBFIELDS_ABCDEJQ),
+                        PEOPLE_CACHE_PATH,
+                        PERSON_ATTRIB);
+
+            } else {
+
+                return new Heading(
+                        composerField.concatSubfields(SUBFIELDS_ABCDENQ),
+                        CORP_CACHE_PATH,
+                        CORP_ATTRIB);
+            }
+        } else {
+            // no composer field, use work title
+            // as done in auth cache file creation (|t subfield)
+            return new Heading(workMapper.getSimpleTitleString(),
+                               WORK_CACHE_PATH,
+                               WORK_ATTRIB);
+        }
+    }
+
+    /**
+     *  Get the person and corporate authority headings
+     * looked up for a bib record.
+     * @param marcRec the MARC bib record.
+     * @return the Headings, in field order.
+     */
+    final List<Heading> getRecordHeadings(final MarcRecord marcRec) {
+        final List<Heading> headings = new ArrayList<Heading>();
+        for (MarcDataField personField : marcRec.getDataFields(PERSON_TAGS)) {
+            headings.add(new Heading(
+                    personField.concatSubfields(SUBFIELDS_ABCDEJQ),
+                    PEOPLE_CACHE_PATH,
+                    PERSON_ATTRIB));
+        }
+        for (MarcDataField corpField : marcRec.getDataFields(CORP_TAGS)) {
+            headings.add(new Heading(
+                    corpField.concatSubfields(SUBFIELDS_ABCDENQ),
+                    CORP_CACHE_PATH,
+                    CORP_ATTRIB));
+        }
+        return headings;
+    }
+
+    /**
+     * @param heading an authority Heading.
+     * @return the authority cache file path of the heading.
+     */
+    final String getCacheFileName(final Heading heading) {
+        return toFileName(heading.searchString, heading.cache);
+    }
+
+    /**
+     * @param heading an authority Heading.
+     * @return whether the heading is in the authority cache.
+     * @throws IOException on a cache read failure.
+     */
+    final boolean isCached(final Heading heading) throws IOException {
+        return isCached(heading.searchString, heading.cache);
+    }
+
+    /**
+     * @param heading an authority Heading.
+     * @return the cached raw MARC records, empty if none,
+     *         or null if not cached.
+     * @throws IOException on a cache read failure.
+     */
+    final byte[] readCached(final Heading heading) throws IOException {
+        return readCachedAuthRecords(heading.searchString, heading.cache);
+    }
+
+    /**
+     *  Start fetching a heading into the authority cache.
+     * @param heading an authority Heading.
+     * @return Future of the raw MARC records,
+     *         or null if the heading has been cached meanwhile.
+     * @throws Exception if the fetch service can't be started.
+     */
+    final Future<byte[]> startFetch(final Heading heading) throws Exception {
+        return startFetch(heading.searchString,
+                          heading.cache,
+                          heading.attribSet);
+    }
+
     /**
      * Normalization for cached file name matching.
      * @param unNormal String to normalize.
@@ -326,61 +462,245 @@ public class AuthorityHandler {
         return normaled;
     }
 
+    /**
+     *  Import the cache directories of one file per heading
+     * into their AuthorityStores.
+     * @throws IOException on a read or write failure.
+     */
+    public final void importCacheDirectories() throws IOException {
+        for (String path : new String[]{PEOPLE_CACHE_PATH,
+                                        CORP_CACHE_PATH,
+                                        WORK_CACHE_PATH}) {
+            AuthorityStore.forDirectory(path).importDirectory(new File(path));
+        }
+    }
+
+    /**
+     * The normalized heading key, as used for cache file names.
+     */
+    private String toHeadingKey(String in) {
+        String key = normalize(in, true);
+        key = key.replaceAll(" ", "_");
+        key = key.replaceAll("[^a-zA-Z0-9\\-_]", "");
+        if (key.endsWith("-")) {
+            key = key.substring(0, key.length() - 1);
+        }
+        return key;
+    }
+
     private String toFileName(String in, String path) {
-        String fileName = normalize(in, true);
-        fileName = fileName.replaceAll(" ", "_");
-        fileName = fileName.replaceAll("[^a-zA-Z0-9\\-_]", "");
-        fileName = path + fileName + ".mrc";
-        fileName = fileName.replace("-.mrc", ".mrc");
-        return fileName;
+        return path + toHeadingKey(in) + ".mrc";
+    }
+
+    /**
+     *  Get the decoded authority records of a heading,
+     * from the decoded cache or else from getAuthRecords,
+     * timed as an authority lookup.
+     * @return the records, or null if they could not be had.
+     */
+    private List<MarcRecord> getDecodedAuthRecords(String searchString,
+                                                   String cache,
+                                                   String attribSet) {
+        final long start = LoadTimings.start();
+        try {
+            return decodeAuthRecords(searchString, cache, attribSet);
+        } finally {
+            LoadTimings.stop(LoadTimings.Timer.AUTHORITY_LOOKUP, start);
+        }
+    }
+
+    private List<MarcRecord> decodeAuthRecords(String searchString,
+                                               String cache,
+                                               String attribSet) {
+        final String fileName = toFileName(searchString, cache);
+
+        List<MarcRecord> records;
+        synchronized (decodedCache) {
+            records = decodedCache.get(fileName);
+        }
+        if (records == null) {
+            final MarcCollection marcRecs =
+                    getAuthRecords(searchString, cache, attribSet);
+            if (marcRecs == null) {
+                return null;
+            }
+            final List<MarcRecord> decoded = new ArrayList<MarcRecord>();
+            while (marcRecs.hasNext()) {
+                decoded.add(marcRecs.next());
+            }
+            records = Collections.unmodifiableList(decoded);
+            synchronized (decodedCache) {
+                decodedCache.put(fileName, records);
+            }
+        }
+        return records;
     }
 
     private MarcCollection getAuthRecords(String searchString, String cache, String attribSet) {
         log.info("processing: " + searchString);
-        String fileName = toFileName(searchString, cache);
-        File f = new File(fileName);
-        if(f.exists()) {
-            log.info("auth file exists for " + searchString);
-            try {
-                return new MarcCollection(fileName);
-            } catch(Exception ex) {
-                log.error(ex);
+        try {
+            byte[] records = readCachedAuthRecords(searchString, cache);
+            if (records == null && !this.fetchMissing) {
+                log.info("auth entry not cached, not fetched for " + searchString);
                 return null;
             }
-        } else {
-            Connection con = new Connection(AUTHORTY_HOST, AUTHORITY_PORT);
-            con.setUsername(AUTHORITY_USERNAME);
-            con.setPassword(AUTHORITY_PASSWORD);
-            con.setDatabaseName(AUTHORITY_DATABASE);
+            if (records == null) {
+                final Future<byte[]> fetching =
+                        startFetch(searchString, cache, attribSet);
+                if (fetching == null) {
+                    log.info("auth entry fetched meanwhile for " + searchString);
+                    records = readCachedAuthRecords(searchString, cache);
+                } else {
+                    records = fetching.get();
+                }
+            } else {
+                log.info("auth entry exists for " + searchString);
+            }
+            return new MarcCollection(new ByteArrayInputStream(records));
+        } catch (Exception ex) {
+            log.error(ex);
+            return null;
+        }
+    }
 
+    /**
+     *  Start fetching the authority records of the person and
+     * corporate headings of a bib record not yet in the cache,
+     * without waiting for them.
+     * @param marcRec the MARC bib record.
+     */
+    public final void prefetchHeadings(final MarcRecord marcRec) {
+        if (!isEnabled) {
+            return;
+        }
+        for (Heading heading : getRecordHeadings(marcRec)) {
             try {
-                con.connect();
-
-                searchString = searchString.replaceAll("\"", "\\\\\"");
+                if (!isCached(heading)) {
+                    startFetch(heading);
+                }
+            } catch (Exception ex) {
+                log.warn("Error prefetching \"" + heading.searchString + "\"",
+                         ex);
+            }
+        }
+    }
 
-                String query = attribSet + "\"" + searchString + "\"";
+    private boolean isCached(String searchString, String cache)
+            throws IOException {
+        if (USE_STORE) {
+            return AuthorityStore.forDirectory(cache).contains(
+                    toHeadingKey(searchString));
+        }
+        return new File(toFileName(searchString, cache)).exists();
+    }
 
-                log.info("searching: " + query);
+    /**
+     *  Read the cached authority records of a heading.
+     * @return the raw MARC records, empty if the heading has none,
+     *         or null if the heading is not cached.
+     */
+    private byte[] readCachedAuthRecords(String searchString, String cache)
+            throws IOException {
+        if (USE_STORE) {
+            return AuthorityStore.forDirectory(cache).get(
+                    toHeadingKey(searchString));
+        }
+        final File f = new File(toFileName(searchString, cache));
+        if (!f.exists()) {
+            return null;
+        }
+        return AuthorityStore.readFile(f);
+    }
 
-                ResultSet set = con.search(query, Connection.QueryType.PrefixQuery);
-                log.info("Found:" + set.getHitCount());
-                if(set.getHitCount() > 0) {
-                    FileOutputStream fos = new FileOutputStream(f);
-                    for(int i = 0; i < set.getHitCount(); i++) {
-                        fos.write(set.getRecord(i).getContent());
-                    }
-                    fos.close();
-                } else {
-                    f.createNewFile(); //create blank file
-                }
-                Thread.sleep(250);  //so we don't overwhelm the server
+    /**
+     *  Store fetched authority records of a heading,
+     * an empty file or negative entry if there are none.
+     */
+    private void storeAuthRecords(String searchString,
+                                  String cache,
+                                  byte[] records) throws IOException {
+        if (USE_STORE) {
+            AuthorityStore.forDirectory(cache).put(toHeadingKey(searchString),
+                                                   records);
+        } else {
+            final FileOutputStream fos =
+                    new FileOutputStream(toFileName(searchString, cache));
+            try {
+                fos.write(records);
+            } finally {
+                fos.close();
+            }
+        }
+    }
 
-                con.close();
-                return new MarcCollection(fileName);
-            } catch (Exception ex) {
-                log.error(ex);
+    /**
+     *  Start fetching the authority records of a heading from the
+     * authority server, to be stored in the cache when fetched.
+     * @param searchString the heading to search.
+     * @param cache the cache directory.
+     * @param attribSet the search attribute set.
+     * @return Future of the raw MARC records,
+     *         or null if the heading has been cached meanwhile.
+     * @throws Exception if the fetch service can't be started.
+     */
+    private Future<byte[]> startFetch(final String searchString,
+                                      final String cache,
+                                      final String attribSet)
+            throws Exception {
+        final String fileName = toFileName(searchString, cache);
+        final Object cacheLock =
+                IdentityLocks.forKey(IdentityLocks.AUTH_FILE, fileName);
+
+        // one fetch per heading, even with parallel workers
+        synchronized (cacheLock) {
+            if (isCached(searchString, cache)) {
                 return null;
             }
+
+            final String query = attribSet + "\""
+                    + searchString.replaceAll("\"", "\\\\\"") + "\"";
+
+            return AuthorityFetchService.getInstance(authCacheProps).fetch(
+                    fileName,
+                    query,
+                    new AuthorityFetchService.Sink() {
+
+                        @Override
+                        public void fetched(final byte[] records)
+                                throws Exception {
+                            synchronized (cacheLock) {
+                                storeAuthRecords(searchString, cache, records);
+                            }
+                        }
+                    });
+        }
+    }
+
+    /**
+     *  An authority heading to look up: the search string,
+     * its cache directory and its search attribute set.
+     */
+    static final class Heading {
+
+        private final String searchString;
+
+        private final String cache;
+
+        private final String attribSet;
+
+        Heading(final String searchString,
+                final String cache,
+                final String attribSet) {
+            this.searchString = searchString;
+            this.cache = cache;
+            this.attribSet = attribSet;
+        }
+
+        /**
+         * @return the heading search string.
+         */
+        String getSearchString() {
+            return this.searchString;
         }
     }
 }
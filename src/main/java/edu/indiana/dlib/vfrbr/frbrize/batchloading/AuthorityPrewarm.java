@@ -0,0 +1,247 @@
+/**
+ * Copyright 2009-2011, Trustees of Indiana University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *   Neither the name of Indiana University nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.indiana.dlib.vfrbr.frbrize.batchloading;
+
+import edu.indiana.dlib.vfrbr.frbrize.batchloading.mappers.WorkMapper;
+import edu.indiana.dlib.vfrbr.frbrize.batchloading.marcDecorators.MarcCollection;
+import edu.indiana.dlib.vfrbr.frbrize.batchloading.marcDecorators.MarcRecord;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import org.apache.log4j.Logger;
+
+/**
+ *  Authority cache pre-warming pass over the MARC data files,
+ * before frbrization.
+ * <p>
+ * Scans the records for the person, corporate and work headings the
+ * handlers and WorkMapper will look up (as Util lists them), de-duplicates
+ * them by authority cache file, and fetches the missing ones through the
+ * AuthorityFetchService, its connections working in parallel.
+ * The load that follows then finds every heading in the cache.
+ */
+public class AuthorityPrewarm {
+
+    private static final Logger log = Logger.getLogger(AuthorityPrewarm.class);
+
+    /**
+     * Directory holding the MARC data files, with trailing separator.
+     */
+    private final String prefix;
+
+    private final String[] marcFiles;
+
+    /**
+     * Most fetches waited on at once, bounding the fetched records held.
+     */
+    private final int maxOutstanding;
+
+    private int headings = 0;
+
+    private int cached = 0;
+
+    private int cachedNegative = 0;
+
+    private int fetched = 0;
+
+    private int fetchedNegative = 0;
+
+    private int failed = 0;
+
+    /**
+     *  Instantiate a prewarm pass.
+     * @param prefix directory of the MARC data files.
+     * @param marcFiles names of the MARC data files.
+     */
+    public AuthorityPrewarm(final String prefix, final String[] marcFiles) {
+        this.prefix = prefix;
+        this.marcFiles = marcFiles;
+        this.maxOutstanding =
+                Math.max(1, LoadSettings.getInt("prewarm_outstanding", 64));
+    }
+
+    /**
+     *  Run the prewarm pass.
+     * @throws Exception if a MARC data file can't be read.
+     */
+    public void run() throws Exception {
+
+        if (!AuthorityHandler.isLookupEnabled()) {
+            log.warn("==== authority lookups disabled, no prewarm");
+            return;
+        }
+
+        final AuthorityHandler authHandler = new AuthorityHandler();
+
+        final Map<String, AuthorityHandler.Heading> uniqueHeadings =
+                scanHeadings(authHandler);
+        this.headings = uniqueHeadings.size();
+
+        log.warn("==== prewarming " + this.headings + " authority headings");
+
+        final LinkedList<Future<byte[]>> outstanding =
+                new LinkedList<Future<byte[]>>();
+
+        for (AuthorityHandler.Heading heading : uniqueHeadings.values()) {
+            try {
+                final byte[] records = authHandler.readCached(heading);
+                if (records != null) {
+                    this.cached++;
+                    if (records.length == 0) {
+                        this.cachedNegative++;
+                    }
+                } else {
+                    final Future<byte[]> fetching =
+                            authHandler.startFetch(heading);
+                    if (fetching == null) {
+                        // cached meanwhile
+                        this.cached++;
+                    } else {
+                        outstanding.add(fetching);
+                        if (outstanding.size() >= this.maxOutstanding) {
+                            awaitFetch(outstanding.removeFirst());
+                        }
+                    }
+                }
+            } catch (Exception ex) {
+                this.failed++;
+                log.error("Error prewarming \""
+                        + heading.getSearchString() + "\"", ex);
+            }
+        }
+
+        while (!outstanding.isEmpty()) {
+            awaitFetch(outstanding.removeFirst());
+        }
+
+        log.warn(reportPrewarmCounts());
+    }
+
+    /**
+     *  Report the prewarm counts.
+     * @return String report.
+     */
+    public String reportPrewarmCounts() {
+        StringBuilder strBuff = new StringBuilder();
+
+        strBuff.append("\n------------\n");
+        strBuff.append(" Authority prewarm:\n");
+        strBuff.append("   headings:               ");
+        strBuff.append(this.headings);
+        strBuff.append("\n   already cached:         ");
+        strBuff.append(this.cached);
+        strBuff.append("\n     of which negative:    ");
+        strBuff.append(this.cachedNegative);
+        strBuff.append("\n   fetched:                ");
+        strBuff.append(this.fetched);
+        strBuff.append("\n     of which negative:    ");
+        strBuff.append(this.fetchedNegative);
+        strBuff.append("\n   failed:                 ");
+        strBuff.append(this.failed);
+        strBuff.append("\n------------\n");
+
+        return strBuff.toString();
+    }
+
+    /**
+     *  Scan the MARC data files for their authority headings.
+     * @return the headings, by authority cache file.
+     */
+    private Map<String, AuthorityHandler.Heading> scanHeadings(
+            final AuthorityHandler authHandler) throws Exception {
+
+        final Map<String, AuthorityHandler.Heading> uniqueHeadings =
+                new LinkedHashMap<String, AuthorityHandler.Heading>();
+
+        for (String marcFile : this.marcFiles) {
+            final MarcCollection marcRecs =
+                    new MarcCollection(this.prefix + marcFile,
+                                       MarcFileLoader.loadRecordTypes(),
+                                       null);
+            while (marcRecs.hasNext()) {
+                final MarcRecord marcRec = marcRecs.next();
+
+                for (AuthorityHandler.Heading heading
+                        : authHandler.getRecordHeadings(marcRec)) {
+                    addHeading(authHandler, uniqueHeadings, heading);
+                }
+
+                try {
+                    final List<WorkField> workFields =
+                            new WorkIdentification(marcRec).getAllWorkFields();
+                    for (WorkField workField : workFields) {
+                        final WorkMapper workMapper = new WorkMapper(
+                                workField.getWorkDataField(), marcRec);
+                        addHeading(authHandler,
+                                   uniqueHeadings,
+                                   authHandler.getWorkHeading(workMapper));
+                    }
+                } catch (Exception ex) {
+                    // the load will report it
+                    log.info("Work identification failed in prewarm", ex);
+                }
+            }
+        }
+
+        return uniqueHeadings;
+    }
+
+    private void addHeading(
+            final AuthorityHandler authHandler,
+            final Map<String, AuthorityHandler.Heading> uniqueHeadings,
+            final AuthorityHandler.Heading heading) {
+
+        final String searchString = heading.getSearchString();
+        if (searchString != null && !searchString.trim().isEmpty()) {
+            final String cacheFileName = authHandler.getCacheFileName(heading);
+            if (!uniqueHeadings.containsKey(cacheFileName)) {
+                uniqueHeadings.put(cacheFileName, heading);
+            }
+        }
+    }
+
+    private void awaitFetch(final Future<byte[]> fetching)
+            throws InterruptedException {
+        try {
+            final byte[] records = fetching.get();
+            this.fetched++;
+            if (records.length == 0) {
+                this.fetchedNegative++;
+            }
+        } catch (ExecutionException ex) {
+            this.failed++;
+            log.error("Authority fetch failed in prewarm", ex.getCause());
+        }
+    }
+}
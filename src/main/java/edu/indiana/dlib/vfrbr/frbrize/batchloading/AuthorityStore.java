@@ -0,0 +1,379 @@
+/**
+ * Copyright 2009-2011, Trustees of Indiana University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *   Neither the name of Indiana University nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.indiana.dlib.vfrbr.frbrize.batchloading;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.log4j.Logger;
+
+/**
+ *  Single-file authority cache, replacing a directory of one .mrc file
+ * per heading.
+ * <p>
+ * The store file is an append-only log of entries, each the normalized
+ * heading key and the raw MARC authority records fetched for it:
+ * <pre>
+ *   int keyLength, key (UTF-8), int dataLength, data
+ * </pre>
+ * An entry with no data is a negative entry, a heading known to have no
+ * authority records (an empty file in the directory layout).
+ * A later entry for the same key supersedes an earlier one.
+ * <p>
+ * The hash index of key to data offset is built by one scan of the entry
+ * headers when the store is opened, and the data is read through a
+ * read-only memory mapping of the log, re-mapped as the log grows.
+ * A partial entry at the end of the log, from an interrupted append,
+ * is truncated away on open.
+ */
+public final class AuthorityStore {
+
+    private static final Logger log = Logger.getLogger(AuthorityStore.class);
+
+    /**
+     * File name extension of a store file.
+     */
+    public static final String STORE_EXTENSION = ".authstore";
+
+    private static final String CHARSET = "UTF-8";
+
+    /**
+     * Open stores, by store file path.
+     */
+    private static final Map<String, AuthorityStore> stores =
+            new HashMap<String, AuthorityStore>();
+
+    private final File storeFile;
+
+    private final RandomAccessFile raf;
+
+    private final FileChannel channel;
+
+    /**
+     * Offset of the dataLength of the latest entry, by key.
+     */
+    private final Map<String, Long> index = new HashMap<String, Long>();
+
+    /**
+     * Read-only mapping of the log, null until first read.
+     */
+    private MappedByteBuffer mapped;
+
+    /**
+     * Length of the log, where the next entry is appended.
+     */
+    private long logLength;
+
+    private AuthorityStore(final File storeFile) throws IOException {
+
+        this.storeFile = storeFile;
+        this.logLength = scan(storeFile, this.index);
+
+        this.raf = new RandomAccessFile(storeFile, "rw");
+        this.channel = this.raf.getChannel();
+
+        if (this.channel.size() > this.logLength) {
+            log.warn("==*!!*== truncating partial entry at "
+                    + this.logLength + " of " + storeFile);
+            this.channel.truncate(this.logLength);
+        }
+
+        log.info("authority store " + storeFile + " opened, "
+                + this.index.size() + " headings");
+    }
+
+    /**
+     *  Get the store for an authority cache directory,
+     * opening it on first use.  The store file sits beside the directory,
+     * e.g. people.authstore for the people/ directory.
+     * @param cacheDirPath path of the authority cache directory.
+     * @return the AuthorityStore.
+     * @throws IOException if the store file can't be opened.
+     */
+    public static AuthorityStore forDirectory(final String cacheDirPath)
+            throws IOException {
+
+        String dirPath = cacheDirPath;
+        while (dirPath.endsWith("/") || dirPath.endsWith(File.separator)) {
+            dirPath = dirPath.substring(0, dirPath.length() - 1);
+        }
+        final File storeFile = new File(dirPath + STORE_EXTENSION);
+
+        synchronized (stores) {
+            AuthorityStore store = stores.get(storeFile.getPath());
+            if (store == null) {
+                store = new AuthorityStore(storeFile);
+                stores.put(storeFile.getPath(), store);
+            }
+            return store;
+        }
+    }
+
+    /**
+     *  Close all the open stores.
+     */
+    public static void closeAll() {
+        synchronized (stores) {
+            for (AuthorityStore store : stores.values()) {
+                store.close();
+            }
+            stores.clear();
+        }
+    }
+
+    /**
+     * @param key the normalized heading.
+     * @return whether the store has an entry, possibly negative, for key.
+     */
+    public synchronized boolean contains(final String key) {
+        return this.index.containsKey(key);
+    }
+
+    /**
+     * @return number of headings in the store.
+     */
+    public synchronized int size() {
+        return this.index.size();
+    }
+
+    /**
+     *  Get the authority records of a heading.
+     * @param key the normalized heading.
+     * @return the raw MARC records, empty for a negative entry,
+     *         or null if the heading is not in the store.
+     * @throws IOException on a read failure.
+     */
+    public synchronized byte[] get(final String key) throws IOException {
+
+        final Long dataLengthOffset = this.index.get(key);
+        if (dataLengthOffset == null) {
+            return null;
+        }
+
+        final byte[] lengthBytes = read(dataLengthOffset.longValue(), 4);
+        final int dataLength = ByteBuffer.wrap(lengthBytes).getInt();
+
+        return read(dataLengthOffset.longValue() + 4, dataLength);
+    }
+
+    /**
+     *  Append the authority records of a heading.
+     * @param key the normalized heading.
+     * @param data the raw MARC records, empty for a negative entry.
+     * @throws IOException on a write failure.
+     */
+    public synchronized void put(final String key, final byte[] data)
+            throws IOException {
+
+        final byte[] keyBytes = key.getBytes(CHARSET);
+        final ByteBuffer entry =
+                ByteBuffer.allocate(8 + keyBytes.length + data.length);
+        entry.putInt(keyBytes.length);
+        entry.put(keyBytes);
+        entry.putInt(data.length);
+        entry.put(data);
+        entry.flip();
+
+        long position = this.logLength;
+        while (entry.hasRemaining()) {
+            position += this.channel.write(entry, position);
+        }
+
+        this.index.put(key, Long.valueOf(this.logLength + 4 + keyBytes.length));
+        this.logLength = position;
+    }
+
+    /**
+     *  Import a directory of one .mrc file per heading.
+     * The file name without .mrc is the key, an empty file is a negative
+     * entry.  Headings already in the store are left as they are.
+     * @param cacheDir the authority cache directory.
+     * @return number of headings imported.
+     * @throws IOException on a read or write failure.
+     */
+    public int importDirectory(final File cacheDir) throws IOException {
+
+        final File[] files = cacheDir.listFiles(new FilenameFilter() {
+
+            @Override
+            public boolean accept(final File dir, final String name) {
+                return name.endsWith(".mrc");
+            }
+        });
+        if (files == null) {
+            log.warn("==*!!*== no authority cache directory " + cacheDir);
+            return 0;
+        }
+
+        int imported = 0;
+        for (File file : files) {
+            final String name = file.getName();
+            final String key = name.substring(0, name.length() - 4);
+            if (!contains(key)) {
+                put(key, readFile(file));
+                imported++;
+            }
+        }
+
+        log.warn("==== imported " + imported + " of " + files.length
+                + " headings from " + cacheDir + " into " + this.storeFile);
+
+        return imported;
+    }
+
+    /**
+     *  Close the store.
+     */
+    public synchronized void close() {
+        try {
+            this.mapped = null;
+            this.channel.force(false);
+            this.raf.close();
+        } catch (IOException ex) {
+            log.error("Error closing authority store " + this.storeFile, ex);
+        }
+    }
+
+    private byte[] read(final long offset, final int length)
+            throws IOException {
+
+        final byte[] bytes = new byte[length];
+        final long end = offset + length;
+
+        if (this.logLength <= Integer.MAX_VALUE) {
+            if (this.mapped == null || end > this.mapped.capacity()) {
+                // the log has grown past the mapping
+                this.mapped = this.channel.map(FileChannel.MapMode.READ_ONLY,
+                                               0,
+                                               this.logLength);
+            }
+            final ByteBuffer view = this.mapped.duplicate();
+            view.position((int) offset);
+            view.get(bytes);
+        } else {
+            // too big for one mapping
+            final ByteBuffer buf = ByteBuffer.wrap(bytes);
+            long position = offset;
+            while (buf.hasRemaining()) {
+                final int got = this.channel.read(buf, position);
+                if (got < 0) {
+                    throw new EOFException("authority store " + this.storeFile);
+                }
+                position += got;
+            }
+        }
+
+        return bytes;
+    }
+
+    /**
+     *  Scan the entry headers of a store file into the index.
+     * @return the length of the whole entries.
+     */
+    private static long scan(final File storeFile,
+                             final Map<String, Long> index)
+            throws IOException {
+
+        if (!storeFile.exists()) {
+            return 0;
+        }
+
+        final DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(storeFile)));
+        final long fileLength = storeFile.length();
+        long position = 0;
+        try {
+            while (position + 8 <= fileLength) {
+                final int keyLength = in.readInt();
+                if (keyLength < 0 || position + 8 + keyLength > fileLength) {
+                    break;
+                }
+                final byte[] keyBytes = new byte[keyLength];
+                in.readFully(keyBytes);
+                final int dataLength = in.readInt();
+                final long dataEnd = position + 8 + keyLength + dataLength;
+                if (dataLength < 0 || dataEnd > fileLength) {
+                    break;
+                }
+                index.put(new String(keyBytes, CHARSET),
+                          Long.valueOf(position + 4 + keyLength));
+                skipFully(in, dataLength);
+                position = dataEnd;
+            }
+        } finally {
+            in.close();
+        }
+
+        return position;
+    }
+
+    private static void skipFully(final DataInputStream in, final int length)
+            throws IOException {
+
+        int remaining = length;
+        while (remaining > 0) {
+            final int skipped = in.skipBytes(remaining);
+            if (skipped <= 0) {
+                throw new EOFException();
+            }
+            remaining -= skipped;
+        }
+    }
+
+    /**
+     *  Read the whole of a file.
+     * @param file the file.
+     * @return the file content.
+     * @throws IOException on a read failure.
+     */
+    static byte[] readFile(final File file) throws IOException {
+
+        final byte[] bytes = new byte[(int) file.length()];
+        final DataInputStream in =
+                new DataInputStream(new FileInputStream(file));
+        try {
+            in.readFully(bytes);
+        } finally {
+            in.close();
+        }
+        return bytes;
+    }
+}
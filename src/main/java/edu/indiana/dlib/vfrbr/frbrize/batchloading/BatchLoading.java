@@ -30,8 +30,7 @@
  */
 package edu.indiana.dlib.vfrbr.frbrize.batchloading;
 
-import edu.indiana.dlib.vfrbr.frbrize.batchloading.marcDecorators.MarcCollection;
-import edu.indiana.dlib.vfrbr.frbrize.batchloading.marcDecorators.MarcRecord;
+import edu.indiana.dlib.vfrbr.frbrize.batchloading.marcDecorators.MarcOffsetIndex;
 import edu.indiana.dlib.vfrbr.persist.dao.DAOFactory;
 import org.apache.log4j.Logger;
 
@@ -39,12 +38,14 @@ import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Properties;
-
-import static com.google.common.collect.Sets.newHashSet;
-import static edu.indiana.dlib.vfrbr.frbrize.batchloading.marcDecorators.MarcRecord.OTHER;
-import static edu.indiana.dlib.vfrbr.frbrize.batchloading.marcDecorators.MarcRecord.RECORDING;
-import static edu.indiana.dlib.vfrbr.frbrize.batchloading.marcDecorators.MarcRecord.SCORE;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * FRBRize MARC bibliographic marcRec files to database persistence.
@@ -174,24 +175,42 @@ public final class BatchLoading {
             "Variations",
             "Waltzes"};
 
+    /**
+     * Whether to resume from the checkpoint of an earlier load.
+     */
+    private final boolean resume;
+
     /**
      * Main program entrance point.
-     * No argument expected or processed.
+     * The only argument processed is --resume, to continue an
+     * interrupted load from its checkpoint.
      * Batchloading is intitiated via constructor.
      *
      * @param args arguments.
      */
     public static void main(final String[] args) {
 
+        boolean resume = false;
+        for (String arg : args) {
+            if ("--resume".equals(arg)) {
+                resume = true;
+            } else {
+                log.warn("ignoring argument " + arg);
+            }
+        }
+
         // instantiate to process
-        new BatchLoading();
+        new BatchLoading(resume);
 
     }
 
     /**
      * Constructor that initializes and then invokes batchloading.
+     *
+     * @param resume whether to resume from the checkpoint.
      */
-    private BatchLoading() {
+    private BatchLoading(final boolean resume) {
+        this.resume = resume;
         try {
             /*
              * get the batchLoading properties
@@ -236,97 +255,103 @@ public final class BatchLoading {
 
     /**
      * Batchload the array of file names.
+     * With worker_threads greater than one, files are loaded concurrently
+     * by a bounded pool of workers, each with its own persistence context
+     * and Counts, and the Counts are accumulated in file order at the end.
      */
     private void startBatchloading() {
         // TODO report batchLoadingProps settings ???
 
-        DAOFactory daoFac = null;
-        final Counts accumulatedCounts = new Counts();
-        Counts count = null;
+        Counts accumulatedCounts = new Counts();
+
+        final int workerThreads = LoadSettings.getInt("worker_threads", 1);
+
+        LoadCheckpoint checkpoint = null;
 
         try {
             log.warn("======= Starting BatchLoad process: \n"
-                    + ", data_path: " + PREFIX);
+                    + ", data_path: " + PREFIX
+                    + ", worker_threads: " + workerThreads
+                    + (this.resume ? ", resuming" : ""));
             System.out.println("location:" + getClass().getProtectionDomain().getCodeSource().getLocation());
             System.out.println("======= Starting BatchLoad process: \n"
                     + ", data_path: " + PREFIX);
 
-            for (String currentFile : getMarcFiles()) {
-                /*
-                 * ==> a(nother) MARC data file
-                 */
-                // new DAOFactory for each MARC data file
-                daoFac = new DAOFactory();
+            final String[] marcFiles = getMarcFiles();
+
+            final File checkpointFile = new File(
+                    LoadSettings.getString("checkpoint_file",
+                                           PREFIX + "batchLoading.checkpoint").
+                    replaceFirst("^~", System.getProperty("user.home")));
 
-                count = new Counts();
-                count.setFileName(currentFile);
+            LoadCheckpoint.Resume resumeAt = null;
+            if (this.resume) {
+                resumeAt = LoadCheckpoint.read(checkpointFile);
+                if (null == resumeAt) {
+                    log.warn("no checkpoint " + checkpointFile
+                            + ", loading from the start");
+                } else {
+                    log.warn("resuming after [" + resumeAt.getFileName()
+                            + ":" + resumeAt.getRecNum() + "]"
+                            + (resumeAt.isFileDone() ? ", file done" : ""));
+                    accumulatedCounts = resumeAt.getAccumulatedCounts();
+                }
+            }
 
-                final String currentPath = PREFIX + currentFile;
+            if (LoadSettings.getBoolean("identity_cache_warm", false)) {
+                warmIdentityCache();
+            }
 
-                log.warn(" ");
-                log.warn("======= Starting file " + currentFile
-                        + " =======");
+            if (LoadSettings.getBoolean("authority_prewarm", false)) {
+                // fill the authority cache before loading
+                new AuthorityPrewarm(PREFIX, marcFiles).run();
+            }
 
-                System.out.println("======= Starting file " + currentFile
-                        + " =======");
+            final List<String> loadNames = new ArrayList<String>();
+            final List<MarcFileLoader> loaders =
+                    getLoaders(marcFiles, workerThreads, resumeAt, loadNames);
 
-                final MarcCollection marcRecs =
-                        new MarcCollection(currentPath);
+            final DeltaStore deltaStore = DeltaStore.configured(PREFIX);
+            if (deltaStore != null) {
+                log.warn("incremental load, frbrizing new records, counting changed ones");
+                for (MarcFileLoader loader : loaders) {
+                    loader.setDeltaStore(deltaStore);
+                }
+            }
 
-                while (marcRecs.hasNext()) {
+            if (workerThreads > 1 && loaders.size() > 1) {
+                loadParallel(loaders, loadNames, workerThreads,
+                             accumulatedCounts);
+            } else {
+                // a resumed load keeps its checkpoint, to resume again
+                if ((this.resume
+                        || LoadSettings.getBoolean("checkpoint_enabled", false))
+                        && !LoadSettings.getBoolean("pipeline_enabled", false)) {
+                    // only sequential loads commit records in file order
+                    checkpoint = new LoadCheckpoint(checkpointFile,
+                                                    accumulatedCounts);
+                }
+                for (MarcFileLoader loader : loaders) {
                     /*
-                     * ==> a(nother) MARC Record
+                     * ==> a(nother) MARC data file
                      */
-                    count.incrementRecNum();
-                    final MarcRecord marcRec = marcRecs.next();
-                    final MarcRecordHandler recHandler = new MarcRecordHandler(daoFac, count);
-
-                    if (newHashSet(RECORDING, SCORE, OTHER).contains(marcRec.getType())) {
-                        /*
-                         * ==> a MARC Record of type RECORDING or SCORE
-                         */
-                        log.info(" ");
-                        log.info("===== "
-                                + marcRec.getType()
-                                + " Type Record ["
-                                + count.getFileName() + ":" + count.getRecNum()
-                                + "]"
-                                + " =====");
-                        log.info("---- MARC Bib record:\n"
-                                + marcRec.toString()
-                                + "----");
-
-                        recHandler.frbrizeRecord(marcRec);
-
-                    } else {
-                        /*
-                         * ==> a MARC Record of type OTHER
-                         */
-                        log.info(" ");
-                        log.info("===== OTHER Type Record ["
-                                + count.getFileName() + ":" + count.getRecNum()
-                                + "]"
-                                + " =====");
-                        log.info("---- MARC Bib record:\n"
-                                + marcRec.toString()
-                                + "----");
-
-                        recHandler.registerOther(marcRec);
-                    }
-
-                } // of all the records in this MARC data file
+                    loader.setCheckpoint(checkpoint);
+                    final Counts count = loader.call();
 
-                // accumulate running counts
-                accumulatedCounts.accumulate(count);
-                // report file counts
-                log.warn(count.reportCurrentFileCounts());
+                    // accumulate running counts
+                    accumulatedCounts.accumulate(count);
 
-                // cycle the DAOFactory at the end of the file
-                daoFac.closeEntityManager();
-                daoFac.getEntityManagerFactory().close();
+                    if (checkpoint != null) {
+                        checkpoint.fileDone(count);
+                    }
 
-            } // of all the MARC data files to process
+                } // of all the MARC data files to process
 
+                if (checkpoint != null) {
+                    // nothing left to resume
+                    checkpoint.clear();
+                }
+            }
 
             log.warn("======= BatchLoad process complete.");
 
@@ -335,12 +360,6 @@ public final class BatchLoading {
         } catch (Exception ex) {
             ex.printStackTrace();
             log.error(ex.getMessage(), ex);
-            log.error("\n"
-                    + "============\n"
-                    + " At counts for file: " + count.getFileName() + "\n"
-                    + "   records procesed:        "
-                    + count.getRecNum() + "\n"
-                    + "============\n");
         } finally {
 
             // report total counts
@@ -348,6 +367,152 @@ public final class BatchLoading {
 
             System.out.println(accumulatedCounts.reportAccumulatedFileCounts());
 
+            log.warn(IdentityCache.reportAll());
+            log.warn(ExpressionMatchIndex.report());
+            // write the queued report rows while persistence is up
+            ReportSink.shutdown();
+            log.warn(ReportSink.report());
+            log.warn(RelationWriter.report());
+            log.warn(PersistenceRuntime.report());
+            PersistenceRuntime.shutdown();
+
+            AuthorityFetchService.shutdown();
+            AuthorityStore.closeAll();
+            DeltaStore.closeAll();
+        }
+    }
+
+    /**
+     *  Fill the identity caches from the already persisted entities.
+     */
+    private void warmIdentityCache() {
+
+        final DAOFactory daoFac = PersistenceRuntime.acquire();
+        try {
+            IdentityCache.PERSONS.warm(daoFac);
+            IdentityCache.CORPORATE_BODIES.warm(daoFac);
+            IdentityCache.WORKS.warm(daoFac);
+        } finally {
+            PersistenceRuntime.release(daoFac);
+        }
+    }
+
+    /**
+     *  A loader for each MARC data file, or with partition_records set
+     * and several worker threads, for each partition of partition_records
+     * records of the larger files, located by their MarcOffsetIndex.
+     *
+     * When resuming, the files before the checkpoint are left out,
+     * and the checkpoint file is loaded after its last committed record.
+     *
+     * @param marcFiles the MARC data file names.
+     * @param workerThreads maximum number of loads at once.
+     * @param resumeAt the checkpoint to resume after, or null.
+     * @param loadNames receives the file name, and range, of each loader.
+     * @return the loaders, in file and record order.
+     * @throws IOException if a file to partition cannot be indexed.
+     */
+    private List<MarcFileLoader> getLoaders(final String[] marcFiles,
+                                            final int workerThreads,
+                                            final LoadCheckpoint.Resume resumeAt,
+                                            final List<String> loadNames)
+            throws IOException {
+
+        int firstFile = 0;
+        if (null != resumeAt) {
+            firstFile = Arrays.asList(marcFiles).indexOf(resumeAt.getFileName());
+            if (firstFile < 0) {
+                throw new IllegalStateException("checkpoint file "
+                        + resumeAt.getFileName() + " is not in the load");
+            }
+        }
+
+        final int partitionRecords =
+                (workerThreads > 1)
+                ? LoadSettings.getInt("partition_records", 0)
+                : 0;
+
+        final List<MarcFileLoader> loaders = new ArrayList<MarcFileLoader>();
+        for (int fileIdx = firstFile; fileIdx < marcFiles.length; fileIdx++) {
+            final String currentFile = marcFiles[fileIdx];
+            if (null != resumeAt && fileIdx == firstFile) {
+                if (!resumeAt.isFileDone()) {
+                    // positioned by offset, not by decoding what was loaded
+                    final MarcOffsetIndex index =
+                            MarcOffsetIndex.forFile(PREFIX + currentFile);
+                    final MarcFileLoader loader =
+                            new MarcFileLoader(PREFIX,
+                                               currentFile,
+                                               resumeAt.getRecNum() + 1,
+                                               index.size() + 1);
+                    loader.setResumeCounts(resumeAt.getFileCounts());
+                    loaders.add(loader);
+                    loadNames.add(currentFile + "[" + (resumeAt.getRecNum() + 1)
+                            + "-" + index.size() + "]");
+                }
+                continue;
+            }
+            if (partitionRecords > 0) {
+                final MarcOffsetIndex index =
+                        MarcOffsetIndex.forFile(PREFIX + currentFile);
+                if (index.size() > partitionRecords) {
+                    final int[] starts = index.partitions(partitionRecords);
+                    for (int part = 0; part + 1 < starts.length; part++) {
+                        loaders.add(new MarcFileLoader(PREFIX,
+                                                       currentFile,
+                                                       starts[part],
+                                                       starts[part + 1]));
+                        loadNames.add(currentFile + "[" + starts[part]
+                                + "-" + (starts[part + 1] - 1) + "]");
+                    }
+                    continue;
+                }
+            }
+            loaders.add(new MarcFileLoader(PREFIX, currentFile));
+            loadNames.add(currentFile);
+        }
+        return loaders;
+    }
+
+    /**
+     *  Run the MARC data file loaders on a bounded pool of worker threads.
+     * A load that fails is logged and left out of the totals,
+     * the other loads continue.
+     *
+     * @param loaders the file, or file partition, loaders.
+     * @param loadNames the file name, and range, of each loader.
+     * @param workerThreads maximum number of loads at once.
+     * @param accumulatedCounts Counts accumulating all the files.
+     * @throws InterruptedException if interrupted while waiting on workers.
+     */
+    private void loadParallel(final List<MarcFileLoader> loaders,
+                              final List<String> loadNames,
+                              final int workerThreads,
+                              final Counts accumulatedCounts)
+            throws InterruptedException {
+
+        final ExecutorService workers =
+                Executors.newFixedThreadPool(
+                Math.min(workerThreads, loaders.size()));
+
+        try {
+            final List<Future<Counts>> fileCounts =
+                    new ArrayList<Future<Counts>>();
+            for (MarcFileLoader loader : loaders) {
+                fileCounts.add(workers.submit(loader));
+            }
+
+            for (int idx = 0; idx < loaders.size(); idx++) {
+                try {
+                    // accumulate running counts, in file order
+                    accumulatedCounts.accumulate(fileCounts.get(idx).get());
+                } catch (ExecutionException ex) {
+                    log.error("Error loading file " + loadNames.get(idx),
+                              ex.getCause());
+                }
+            }
+        } finally {
+            workers.shutdownNow();
         }
     }
 
@@ -367,6 +532,10 @@ public final class BatchLoading {
                     return name.endsWith(".mrc");
                 }
             });
+            if (list != null) {
+                // a stable order, for resuming after a checkpoint file
+                Arrays.sort(list);
+            }
             return list;
         }
         return this.MARC_FILES;
@@ -38,8 +38,6 @@ import edu.indiana.dlib.vfrbr.persist.dao.DAOFactory;
 import edu.indiana.dlib.vfrbr.persist.entity.responsibleparty.CorporateBodyJpa;
 import org.apache.log4j.Logger;
 
-import javax.persistence.EntityTransaction;
-
 /**
  *  Handler for CorporateBody field of a MarcRecord.
  */
@@ -50,6 +48,8 @@ public class CorporateFieldHandler {
 
     private final DAOFactory daoFactory;
 
+    private final TransactionBatcher txBatcher;
+
     private final CorporateBodyDAO corporateDAO;
 
     private final Counts count;
@@ -58,15 +58,16 @@ public class CorporateFieldHandler {
 
     /**
      *  Handler for corporateBody field.
-     * @param daoFactory DAOFactory holding persistence context.
+     * @param txBatcher transactions of the persistence context.
      */
-    public CorporateFieldHandler(final DAOFactory daoFactory,
+    public CorporateFieldHandler(final TransactionBatcher txBatcher,
                                  final Counts count) {
 
-        this.daoFactory = daoFactory;
+        this.txBatcher = txBatcher;
+        this.daoFactory = txBatcher.getDAOFactory();
         this.corporateDAO = daoFactory.newCorporateBodyDAO();
         this.count = count;
-        this.findPersisted = new FindPersisted(count);
+        this.findPersisted = new FindPersisted(daoFactory, count);
     }
 
     /**
@@ -77,65 +78,94 @@ public class CorporateFieldHandler {
     public final void handleCorporateField(final MarcDataField corpBodyField,
                                            final String bibRecIdent) {
 
+        final String corpAuthIdent =
+                CorporateBodyMapper.getAuthIdent(corpBodyField);
+
         if (log.isInfoEnabled()) {
-            log.info("Handling corporateBody: "
-                    + CorporateBodyMapper.getAuthIdent(corpBodyField));
+            log.info("Handling corporateBody: " + corpAuthIdent);
         }
 
-        if (isAlreadyLoadedCorporateBody(corpBodyField)) {
-            // already persisted, no need to process this record
-            // logged outcome below, by case
-        } else {
-
-            final MarcRecord authRecord = new AuthorityHandler().getAuthorityCorporateBodyRecord(corpBodyField);
-
-            if (authRecord == null) {
-                //no authority match, build from MARC bibliographic marcRecord
-                EntityTransaction entran =
-                        this.daoFactory.getEntityManager().getTransaction();
-                entran.begin();
-
-                if (log.isInfoEnabled()) {
-                    log.info("  -- creating from the bib record.");
-                }
-
-                final CorporateBodyJpa corpBody = this.corporateDAO.getNew();
-                new CorporateBodyMapper().mapFromBibField(corpBodyField,
-                                                          corpBody);
-                this.corporateDAO.persist(corpBody);
-
-                entran.commit();
-                entran = this.daoFactory.getEntityManager().getTransaction();
-                entran.begin();
+        // already persisted, e.g. by an earlier record, needs no lookup
+        if (null != this.findPersisted.corporateBody(corpBodyField,
+                                                     "referenced",
+                                                     this.corporateDAO)) {
+            return;
+        }
 
-                this.corporateDAO.reportG2Bib(corpBody,
-                                              bibRecIdent,
-                                              corpBodyField.getTag(),
-                                              corpBodyField.toString());
-                entran.commit();
-                this.count.incrementPersistedCorporateBodies();
+        /*
+         * resolve the authority record first, the lookup may wait for a
+         * fetch, which must not happen under the identity monitor
+         */
+        final MarcRecord authRecord = new AuthorityHandler().getAuthorityCorporateBodyRecord(corpBodyField);
+        String lockIdent = corpAuthIdent;
+        if (authRecord != null) {
+            final CorporateBodyJpa authCorp = new CorporateBodyJpa();
+            new CorporateBodyMapper().mapFromAuthRecord(authRecord, authCorp);
+            lockIdent = authCorp.getAuthIdent();
+        }
 
+        /*
+         * check and create under the monitor of the resolved identity,
+         * so parallel workers don't both persist the same corporateBody,
+         * even from different headings of the same authority record
+         */
+        synchronized (IdentityLocks.forKey(IdentityLocks.CORPORATE,
+                                           lockIdent)) {
+            if (isAlreadyLoadedCorporateBody(corpBodyField,
+                                             authRecord,
+                                             lockIdent)) {
+                // already persisted, no need to process this record
+                // logged outcome below, by case
             } else {
-                // authority match, build from cached authority record
-                EntityTransaction entran =
-                        this.daoFactory.getEntityManager().getTransaction();
-                entran.begin();
-
-                // TODO consider backup persisted check based on authRec
-
-                if (log.isInfoEnabled()) {
-                    log.info(
-                            "  -- creating from matching cached authority record.");
-                    log.info("---- MARC Auth record:\n"
-                            + authRecord.toString()
-                            + "----");
-                }
 
-                final CorporateBodyJpa corpBody = this.corporateDAO.getNew();
-                new CorporateBodyMapper().mapFromAuthRecord(authRecord, corpBody);
-                this.corporateDAO.persist(corpBody);
-                entran.commit();
-                this.count.incrementPersistedCorporateBodies();
+                if (authRecord == null) {
+                    //no authority match, build from MARC bibliographic marcRecord
+                    this.txBatcher.begin();
+
+                    if (log.isInfoEnabled()) {
+                        log.info("  -- creating from the bib record.");
+                    }
+
+                    final CorporateBodyJpa corpBody = this.corporateDAO.getNew();
+                    new CorporateBodyMapper().mapFromBibField(corpBodyField,
+                                                              corpBody);
+                    this.corporateDAO.persist(corpBody);
+
+                    this.txBatcher.commit();
+                    IdentityCache.CORPORATE_BODIES.persisted(corpAuthIdent,
+                            corpBody.getAuthIdent(),
+                            CorporateBodyMapper.getNormalName(corpBodyField),
+                            corpBody.getId());
+                    this.txBatcher.report(ReportRow.g2Bib(corpBody,
+                            bibRecIdent,
+                            corpBodyField.getTag(),
+                            corpBodyField.toString()));
+                    this.count.incrementPersistedCorporateBodies();
+
+                } else {
+                    // authority match, build from cached authority record
+                    this.txBatcher.begin();
+
+                    // TODO consider backup persisted check based on authRec
+
+                    if (log.isInfoEnabled()) {
+                        log.info(
+                                "  -- creating from matching cached authority record.");
+                        log.info("---- MARC Auth record:\n"
+                                + authRecord.toString()
+                                + "----");
+                    }
+
+                    final CorporateBodyJpa corpBody = this.corporateDAO.getNew();
+                    new CorporateBodyMapper().mapFromAuthRecord(authRecord, corpBody);
+                    this.corporateDAO.persist(corpBody);
+                    this.txBatcher.commit();
+                    IdentityCache.CORPORATE_BODIES.persistedFromAuthority(
+                            corpAuthIdent,
+                            corpBody.getAuthIdent(),
+                            corpBody.getId());
+                    this.count.incrementPersistedCorporateBodies();
+                }
             }
         }
     }
@@ -143,16 +173,24 @@ public class CorporateFieldHandler {
     /**
      * Is this corporateBody already persisted.
      * @param corpBodyField corporate field from the MarcRecord.
+     * @param authRecord the authority record of the corporateBody, or null.
+     * @param authIdent the authIdent resolved from authRecord.
      * @return persisted or not.
      */
     private boolean isAlreadyLoadedCorporateBody(
-            final MarcDataField corpBodyField) {
+            final MarcDataField corpBodyField,
+            final MarcRecord authRecord,
+            final String authIdent) {
 
         boolean alreadyLoaded = false;
 
-        if (null != this.findPersisted.corporateBody(corpBodyField,
-                                                     "referenced",
-                                                     this.corporateDAO)) {
+        if (authRecord != null
+                && null != this.findPersisted.corporateBodyByAuthIdent(
+                        authIdent, this.corporateDAO)) {
+            alreadyLoaded = true;
+        } else if (null != this.findPersisted.corporateBody(corpBodyField,
+                                                            "referenced",
+                                                            this.corporateDAO)) {
             alreadyLoaded = true;
         }
 
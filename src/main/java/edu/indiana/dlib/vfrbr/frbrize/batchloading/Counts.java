@@ -34,6 +34,10 @@
  */
 package edu.indiana.dlib.vfrbr.frbrize.batchloading;
 
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
 /**
  *
  * @author pbmcelwa
@@ -98,6 +102,28 @@ public class Counts {
      */
     protected int recNums;
 
+    /**
+     * Records skipped for their type of record, by leader/06.
+     */
+    protected Map<Character, Integer> skippedTypes =
+            new TreeMap<Character, Integer>();
+
+    /**
+     * Incremental load: records new since the last load.
+     */
+    protected int deltaAdded;
+
+    /**
+     * Incremental load: records changed since the last load,
+     * not frbrized again.
+     */
+    protected int deltaChanged;
+
+    /**
+     * Incremental load: unchanged records, not frbrized again.
+     */
+    protected int deltaUnchanged;
+
     /**
      * Current MARC file name;
      */
@@ -108,6 +134,11 @@ public class Counts {
      */
     protected String fileNames;
 
+    /**
+     * Where the time went.
+     */
+    protected LoadTimings timings = new LoadTimings();
+
     /*
      * ---- incrementors for local counts
      */
@@ -151,6 +182,68 @@ public class Counts {
         this.recNum++;
     }
 
+    /**
+     * A record skipped for its type of record.
+     * It still takes a record number, keeping numbers file positions.
+     * @param typeOfRecord leader/06 of the skipped record.
+     */
+    public void incrementSkipped(char typeOfRecord) {
+        this.recNum++;
+        this.addSkipped(typeOfRecord, 1);
+    }
+
+    private void addSkipped(char typeOfRecord, int skipped) {
+        final Integer current = this.skippedTypes.get(typeOfRecord);
+        this.skippedTypes.put(typeOfRecord,
+                              (null == current) ? skipped : current + skipped);
+    }
+
+    public void incrementDeltaAdded() {
+        this.deltaAdded++;
+    }
+
+    public void incrementDeltaChanged() {
+        this.deltaChanged++;
+    }
+
+    public void incrementDeltaUnchanged() {
+        this.deltaUnchanged++;
+    }
+
+    /**
+     * Report incremental load counts, if any.
+     */
+    private void reportDelta(StringBuilder strBuff) {
+        if (this.deltaAdded + this.deltaChanged + this.deltaUnchanged > 0) {
+            strBuff.append("\n   records added:            ");
+            strBuff.append(this.deltaAdded);
+            strBuff.append("\n   records changed:          ");
+            strBuff.append(this.deltaChanged);
+            strBuff.append("\n   records unchanged:        ");
+            strBuff.append(this.deltaUnchanged);
+        }
+    }
+
+    /**
+     * Report skipped record counts, e.g. " 12 (a=10, g=2)".
+     */
+    private String reportSkipped() {
+        int total = 0;
+        final StringBuilder types = new StringBuilder();
+        for (Map.Entry<Character, Integer> skipped
+                : this.skippedTypes.entrySet()) {
+            total += skipped.getValue();
+            if (types.length() > 0) {
+                types.append(", ");
+            }
+            types.append(skipped.getKey()).append('=').append(skipped.getValue());
+        }
+        if (total == 0) {
+            return "0";
+        }
+        return total + " (" + types + ")";
+    }
+
     /**
      * Report counts for current fileName
      */
@@ -162,6 +255,9 @@ public class Counts {
         strBuff.append(this.fileName);
         strBuff.append("\n   records procesed:        ");
         strBuff.append(this.recNum);
+        strBuff.append("\n   records skipped by type:  ");
+        strBuff.append(this.reportSkipped());
+        this.reportDelta(strBuff);
         strBuff.append("\n   new persisted persons: ");
         strBuff.append(this.persistedPersons);
         strBuff.append("\n   new persisted corporations: ");
@@ -181,6 +277,7 @@ public class Counts {
         strBuff.append(this.unmatchedRealizers);
         strBuff.append("\n   unmatched producers:       ");
         strBuff.append(this.unmatchedProducers);
+        strBuff.append(this.timings.report());
         strBuff.append("\n============\n");
 
         return strBuff.toString();
@@ -195,6 +292,9 @@ public class Counts {
         strBuff.append("\n============\n");
         strBuff.append(" Counts for files: ");
         strBuff.append(this.fileNames);
+        strBuff.append("\n   records skipped by type:  ");
+        strBuff.append(this.reportSkipped());
+        this.reportDelta(strBuff);
         strBuff.append("\n   new persisted persons: ");
         strBuff.append(this.persistedPersons);
         strBuff.append("\n   new persisted corporations: ");
@@ -214,6 +314,7 @@ public class Counts {
         strBuff.append(this.unmatchedRealizers);
         strBuff.append("\n   unmatched producers:       ");
         strBuff.append(this.unmatchedProducers);
+        strBuff.append(this.timings.report());
         strBuff.append("\n============\n");
 
         return strBuff.toString();
@@ -238,8 +339,12 @@ public class Counts {
         this.unmatchedRealizers += count.unmatchedRealizers;
         this.unmatchedProducers += count.unmatchedProducers;
 
+        // skipped and incremental records
+        this.mergeRecordCounts(count);
+
         // records
         this.recNums += count.recNum;
+        this.timings.merge(count.timings);
 
         // files
         if (null == this.fileNames) {
@@ -257,6 +362,167 @@ public class Counts {
         }
     }
 
+    /**
+     * Merge the entity tallies of another Counts for the same file.
+     * For combining the counts of several workers on one MARC file,
+     * record number and file names are left as they are.
+     * Skipped and incremental record counts, and timings, are merged too.
+     * @param count Count instance to merge.
+     */
+    public void merge(Counts count) {
+        this.mergeTallies(count);
+        this.mergeRecordCounts(count);
+        this.timings.merge(count.timings);
+    }
+
+    private void mergeTallies(Counts count) {
+        // persistences
+        this.persistedPersons += count.persistedPersons;
+        this.persistedCorps += count.persistedCorps;
+        this.persistedWorks += count.persistedWorks;
+        this.persistedExpressions += count.persistedExpressions;
+        this.persistedManifestations += count.persistedManifestations;
+
+        // non-matches
+        this.unmatchedComposers += count.unmatchedComposers;
+        this.unmatchedCreators += count.unmatchedCreators;
+        this.unmatchedRealizers += count.unmatchedRealizers;
+        this.unmatchedProducers += count.unmatchedProducers;
+    }
+
+    /**
+     * Merge the counts of records read, rather than persisted.
+     */
+    private void mergeRecordCounts(Counts count) {
+        for (Map.Entry<Character, Integer> skipped
+                : count.skippedTypes.entrySet()) {
+            this.addSkipped(skipped.getKey(), skipped.getValue());
+        }
+        this.deltaAdded += count.deltaAdded;
+        this.deltaChanged += count.deltaChanged;
+        this.deltaUnchanged += count.deltaUnchanged;
+    }
+
+    /**
+     * Copy of the entity tallies, for restoring after a rollback.
+     * @return a new Counts with the current tallies.
+     */
+    public Counts snapshot() {
+        Counts copy = new Counts();
+        copy.setFileName(this.fileName);
+        copy.mergeTallies(this);
+        return copy;
+    }
+
+    /**
+     * Restore the entity tallies from a snapshot.
+     * The counts of records read are kept, the records were read
+     * whether or not their batch is rolled back.
+     * @param snapshot Counts from snapshot().
+     */
+    public void restore(Counts snapshot) {
+        this.persistedPersons = 0;
+        this.persistedCorps = 0;
+        this.persistedWorks = 0;
+        this.persistedExpressions = 0;
+        this.persistedManifestations = 0;
+        this.unmatchedComposers = 0;
+        this.unmatchedCreators = 0;
+        this.unmatchedRealizers = 0;
+        this.unmatchedProducers = 0;
+        this.mergeTallies(snapshot);
+    }
+
+    /**
+     * Store all the counts as properties, for a load checkpoint.
+     * @param props properties to store into.
+     * @param prefix prefix of the property names.
+     */
+    public void store(Properties props, String prefix) {
+        props.setProperty(prefix + "persistedPersons",
+                          Integer.toString(this.persistedPersons));
+        props.setProperty(prefix + "persistedCorps",
+                          Integer.toString(this.persistedCorps));
+        props.setProperty(prefix + "persistedWorks",
+                          Integer.toString(this.persistedWorks));
+        props.setProperty(prefix + "persistedExpressions",
+                          Integer.toString(this.persistedExpressions));
+        props.setProperty(prefix + "persistedManifestations",
+                          Integer.toString(this.persistedManifestations));
+        props.setProperty(prefix + "unmatchedComposers",
+                          Integer.toString(this.unmatchedComposers));
+        props.setProperty(prefix + "unmatchedCreators",
+                          Integer.toString(this.unmatchedCreators));
+        props.setProperty(prefix + "unmatchedRealizers",
+                          Integer.toString(this.unmatchedRealizers));
+        props.setProperty(prefix + "unmatchedProducers",
+                          Integer.toString(this.unmatchedProducers));
+        props.setProperty(prefix + "deltaAdded",
+                          Integer.toString(this.deltaAdded));
+        props.setProperty(prefix + "deltaChanged",
+                          Integer.toString(this.deltaChanged));
+        props.setProperty(prefix + "deltaUnchanged",
+                          Integer.toString(this.deltaUnchanged));
+        props.setProperty(prefix + "recNum", Integer.toString(this.recNum));
+        props.setProperty(prefix + "recNums", Integer.toString(this.recNums));
+        if (null != this.fileName) {
+            props.setProperty(prefix + "fileName", this.fileName);
+        }
+        if (null != this.fileNames) {
+            props.setProperty(prefix + "fileNames", this.fileNames);
+        }
+        for (Map.Entry<Character, Integer> skipped
+                : this.skippedTypes.entrySet()) {
+            props.setProperty(prefix + "skipped." + skipped.getKey(),
+                              skipped.getValue().toString());
+        }
+    }
+
+    /**
+     * Load counts stored by store().
+     * @param props properties to load from.
+     * @param prefix prefix of the property names.
+     * @return the counts.
+     */
+    public static Counts load(Properties props, String prefix) {
+        Counts count = new Counts();
+        count.persistedPersons = getInt(props, prefix + "persistedPersons");
+        count.persistedCorps = getInt(props, prefix + "persistedCorps");
+        count.persistedWorks = getInt(props, prefix + "persistedWorks");
+        count.persistedExpressions =
+                getInt(props, prefix + "persistedExpressions");
+        count.persistedManifestations =
+                getInt(props, prefix + "persistedManifestations");
+        count.unmatchedComposers =
+                getInt(props, prefix + "unmatchedComposers");
+        count.unmatchedCreators = getInt(props, prefix + "unmatchedCreators");
+        count.unmatchedRealizers =
+                getInt(props, prefix + "unmatchedRealizers");
+        count.unmatchedProducers =
+                getInt(props, prefix + "unmatchedProducers");
+        count.deltaAdded = getInt(props, prefix + "deltaAdded");
+        count.deltaChanged = getInt(props, prefix + "deltaChanged");
+        count.deltaUnchanged = getInt(props, prefix + "deltaUnchanged");
+        count.recNum = getInt(props, prefix + "recNum");
+        count.recNums = getInt(props, prefix + "recNums");
+        count.fileName = props.getProperty(prefix + "fileName");
+        count.fileNames = props.getProperty(prefix + "fileNames");
+        final String skippedPrefix = prefix + "skipped.";
+        for (String name : props.stringPropertyNames()) {
+            if (name.startsWith(skippedPrefix)
+                    && name.length() == skippedPrefix.length() + 1) {
+                count.addSkipped(name.charAt(skippedPrefix.length()),
+                                 getInt(props, name));
+            }
+        }
+        return count;
+    }
+
+    private static int getInt(Properties props, String name) {
+        final String value = props.getProperty(name);
+        return (null == value) ? 0 : Integer.parseInt(value.trim());
+    }
+
     /**
      * @return the recNum
      */
@@ -271,6 +537,13 @@ public class Counts {
         this.recNum = recNum;
     }
 
+    /**
+     * @return the timings of the records counted.
+     */
+    public LoadTimings getTimings() {
+        return this.timings;
+    }
+
     /**
      * @return the fileName
      */
@@ -0,0 +1,361 @@
+/**
+ * Copyright 2009-2011, Trustees of Indiana University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *   Neither the name of Indiana University nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.indiana.dlib.vfrbr.frbrize.batchloading;
+
+import edu.indiana.dlib.vfrbr.frbrize.batchloading.marcDecorators.MarcRecord;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.log4j.Logger;
+import org.marc4j.marc.ControlField;
+import org.marc4j.marc.DataField;
+import org.marc4j.marc.Leader;
+import org.marc4j.marc.Record;
+import org.marc4j.marc.Subfield;
+
+/**
+ *  Content hashes of the bib records already loaded, by control number,
+ * for incremental loads.
+ * <p>
+ * The store file is an append-only log of entries:
+ * <pre>
+ *   int keyLength, control number (UTF-8), int hashLength, hash
+ * </pre>
+ * A later entry for the same control number supersedes an earlier one.
+ * A record without a control number is keyed by its content hash, so
+ * an unchanged one is recognized, and an edited one is a new record.
+ * The whole store is held in memory, read once when opened, and a
+ * partial entry at the end of the log is truncated away.
+ * <p>
+ * The content hash covers what frbrizing reads: leader/06 and /09,
+ * the 006-008 control fields, and every data field with its indicators
+ * and subfields.  The 001, 003 and 005 control fields and the rest of
+ * the leader change without the record changing for FRBR purposes,
+ * and are left out.
+ */
+public final class DeltaStore {
+
+    private static final Logger log = Logger.getLogger(DeltaStore.class);
+
+    private static final String CHARSET = "UTF-8";
+
+    private static final String DIGEST = "MD5";
+
+    /**
+     * Open stores, by store file path.
+     */
+    private static final Map<String, DeltaStore> stores =
+            new HashMap<String, DeltaStore>();
+
+    /**
+     *  Whether a record is new, changed or unchanged since the last load.
+     */
+    public enum Delta {
+
+        ADDED, CHANGED, UNCHANGED
+    }
+
+    private final File storeFile;
+
+    private final RandomAccessFile raf;
+
+    private final FileChannel channel;
+
+    /**
+     * Content hash of the loaded records, by control number.
+     */
+    private final Map<String, byte[]> hashes = new HashMap<String, byte[]>();
+
+    /**
+     * Length of the log, where the next entry is appended.
+     */
+    private long logLength;
+
+    private DeltaStore(final File storeFile) throws IOException {
+
+        this.storeFile = storeFile;
+        this.logLength = scan(storeFile, this.hashes);
+
+        this.raf = new RandomAccessFile(storeFile, "rw");
+        this.channel = this.raf.getChannel();
+
+        if (this.channel.size() > this.logLength) {
+            log.warn("==*!!*== truncating partial entry at "
+                    + this.logLength + " of " + storeFile);
+            this.channel.truncate(this.logLength);
+        }
+
+        log.info("delta store " + storeFile + " opened, "
+                + this.hashes.size() + " records");
+    }
+
+    /**
+     *  Get the store of a file, opening it on first use.
+     * @param storePath path of the store file.
+     * @return the DeltaStore.
+     * @throws IOException if the store file can't be opened.
+     */
+    public static DeltaStore forFile(final String storePath)
+            throws IOException {
+
+        final File storeFile = new File(storePath);
+        synchronized (stores) {
+            DeltaStore store = stores.get(storeFile.getPath());
+            if (store == null) {
+                store = new DeltaStore(storeFile);
+                stores.put(storeFile.getPath(), store);
+            }
+            return store;
+        }
+    }
+
+    /**
+     *  Get the store of the delta_store setting, for an incremental load.
+     * @param marcDataPath MARC data directory, with trailing separator,
+     *                     holding the store unless delta_store is set.
+     * @return the DeltaStore, or null if incremental_load is off.
+     * @throws IOException if the store file can't be opened.
+     */
+    public static DeltaStore configured(final String marcDataPath)
+            throws IOException {
+
+        if (!LoadSettings.getBoolean("incremental_load", false)) {
+            return null;
+        }
+        final String storePath =
+                LoadSettings.getString("delta_store",
+                                       marcDataPath + "batchLoading.delta").
+                replaceFirst("^~", System.getProperty("user.home"));
+        return forFile(storePath);
+    }
+
+    /**
+     *  Close all the open stores.
+     */
+    public static void closeAll() {
+        synchronized (stores) {
+            for (DeltaStore store : stores.values()) {
+                store.close();
+            }
+            stores.clear();
+        }
+    }
+
+    /**
+     *  Compare a record with the one last loaded under its control number.
+     * @param controlNumber the control number, empty if none.
+     * @param hash the record content hash.
+     * @return ADDED, CHANGED or UNCHANGED;
+     *         a record without control number is never CHANGED.
+     */
+    public synchronized Delta compare(final String controlNumber,
+                                      final byte[] hash) {
+
+        final byte[] loaded = this.hashes.get(key(controlNumber, hash));
+        if (loaded == null) {
+            return Delta.ADDED;
+        }
+        return Arrays.equals(loaded, hash) ? Delta.UNCHANGED : Delta.CHANGED;
+    }
+
+    /**
+     *  Record a loaded record, once its persistence is committed.
+     * @param controlNumber the control number, empty if none.
+     * @param hash the record content hash.
+     * @throws IOException on a write failure.
+     */
+    public synchronized void put(final String controlNumber,
+                                 final byte[] hash) throws IOException {
+
+        final String key = key(controlNumber, hash);
+        if (Arrays.equals(this.hashes.get(key), hash)) {
+            return;
+        }
+
+        final byte[] keyBytes = key.getBytes(CHARSET);
+        final ByteBuffer entry =
+                ByteBuffer.allocate(8 + keyBytes.length + hash.length);
+        entry.putInt(keyBytes.length);
+        entry.put(keyBytes);
+        entry.putInt(hash.length);
+        entry.put(hash);
+        entry.flip();
+
+        long position = this.logLength;
+        while (entry.hasRemaining()) {
+            position += this.channel.write(entry, position);
+        }
+
+        this.hashes.put(key, hash);
+        this.logLength = position;
+    }
+
+    /**
+     * @return the store key of a record: its control number, or if it has
+     *         none, "#" and its content hash in hex.
+     */
+    private static String key(final String controlNumber, final byte[] hash) {
+        if (controlNumber.length() > 0) {
+            return controlNumber;
+        }
+        final StringBuilder key = new StringBuilder(1 + hash.length * 2);
+        key.append('#');
+        for (byte b : hash) {
+            key.append(Character.forDigit((b >> 4) & 0xF, 16));
+            key.append(Character.forDigit(b & 0xF, 16));
+        }
+        return key.toString();
+    }
+
+    /**
+     *  Close the store.
+     */
+    public synchronized void close() {
+        try {
+            this.channel.force(false);
+            this.raf.close();
+        } catch (IOException ex) {
+            log.error("Error closing delta store " + this.storeFile, ex);
+        }
+    }
+
+    /**
+     *  Hash the FRBR-relevant content of a record.
+     * @param marcRec the record.
+     * @return the content hash.
+     */
+    public static byte[] contentHash(final MarcRecord marcRec) {
+
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(DIGEST);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(DIGEST + " digest", ex);
+        }
+        final Record record = marcRec.getRecord();
+
+        final Leader leader = record.getLeader();
+        if (leader != null) {
+            digest.update((byte) leader.getTypeOfRecord());
+            digest.update((byte) leader.getCharCodingScheme());
+        }
+
+        for (Object field : record.getControlFields()) {
+            final ControlField controlField = (ControlField) field;
+            final String tag = controlField.getTag();
+            if ("006".compareTo(tag) <= 0 && "008".compareTo(tag) >= 0) {
+                update(digest, tag);
+                update(digest, controlField.getData());
+            }
+        }
+
+        for (Object field : record.getDataFields()) {
+            final DataField dataField = (DataField) field;
+            update(digest, dataField.getTag());
+            digest.update((byte) dataField.getIndicator1());
+            digest.update((byte) dataField.getIndicator2());
+            for (Object sub : dataField.getSubfields()) {
+                final Subfield subfield = (Subfield) sub;
+                digest.update((byte) subfield.getCode());
+                update(digest, subfield.getData());
+            }
+        }
+
+        return digest.digest();
+    }
+
+    /**
+     * Digest a string with a terminator, so field boundaries count.
+     */
+    private static void update(final MessageDigest digest,
+                               final String value) {
+        if (value != null) {
+            try {
+                digest.update(value.getBytes(CHARSET));
+            } catch (UnsupportedEncodingException ex) {
+                throw new IllegalStateException(CHARSET, ex);
+            }
+        }
+        digest.update((byte) 0x1F);
+    }
+
+    /**
+     *  Read the entries of a store file.
+     * @return the length of the whole entries.
+     */
+    private static long scan(final File storeFile,
+                             final Map<String, byte[]> hashes)
+            throws IOException {
+
+        if (!storeFile.exists()) {
+            return 0;
+        }
+
+        final DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(storeFile)));
+        final long fileLength = storeFile.length();
+        long position = 0;
+        try {
+            while (position + 8 <= fileLength) {
+                final int keyLength = in.readInt();
+                if (keyLength < 0 || position + 8 + keyLength > fileLength) {
+                    break;
+                }
+                final byte[] keyBytes = new byte[keyLength];
+                in.readFully(keyBytes);
+                final int hashLength = in.readInt();
+                final long entryEnd = position + 8 + keyLength + hashLength;
+                if (hashLength < 0 || entryEnd > fileLength) {
+                    break;
+                }
+                final byte[] hash = new byte[hashLength];
+                in.readFully(hash);
+                hashes.put(new String(keyBytes, CHARSET), hash);
+                position = entryEnd;
+            }
+        } finally {
+            in.close();
+        }
+
+        return position;
+    }
+}
@@ -0,0 +1,399 @@
+/**
+ * Copyright 2009-2011, Trustees of Indiana University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *   Neither the name of Indiana University nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.indiana.dlib.vfrbr.frbrize.batchloading;
+
+import edu.indiana.dlib.vfrbr.frbrize.batchloading.mappers.ExpressionMatchKeys;
+import edu.indiana.dlib.vfrbr.persist.dao.DAOFactory;
+import edu.indiana.dlib.vfrbr.persist.entity.expression.ExpressionJpa;
+import edu.indiana.dlib.vfrbr.persist.entity.work.WorkJpa;
+import edu.indiana.dlib.vfrbr.persist.relation.WorkToExpression;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.log4j.Logger;
+
+/**
+ *  Index of the persisted expressions of a work, by realizer authIdent,
+ * holding the ExpressionMatchKeys of each expression.
+ * <p>
+ * An expression only matches a record that shares at least one realizer
+ * with it, so a record is checked against just the expressions indexed
+ * under its own realizers, rather than against every realization of
+ * the work.
+ * <p>
+ * The index of a work is built by querying its realizations the first
+ * time the work is seen in the run, and kept by work id, up to
+ * expression_index_works works, least recently used evicted.  New
+ * expressions are added as they are persisted, and a batch rollback
+ * clears them all.  Like the IdentityCache, the indexes are only kept
+ * for single writer loads.
+ * <p>
+ * The realizations are queried rather than read from
+ * work.getHasRealizations(), which RelationWriter leaves as it was
+ * loaded, without the expressions added since.
+ */
+public final class ExpressionMatchIndex {
+
+    private static final Logger log =
+            Logger.getLogger(ExpressionMatchIndex.class);
+
+    private static final boolean ENABLED =
+            IdentityCache.isSingleWriterLoad()
+            && LoadSettings.getBoolean("expression_index_enabled", true);
+
+    private static final int MAX_WORKS =
+            LoadSettings.getInt("expression_index_works", 10000);
+
+    private static final Comparator<Entry> BY_ORDINAL =
+            new Comparator<Entry>() {
+
+                public int compare(final Entry left, final Entry right) {
+                    return (left.ordinal < right.ordinal) ? -1
+                            : ((left.ordinal == right.ordinal) ? 0 : 1);
+                }
+            };
+
+    private static long hits;
+
+    private static long builds;
+
+    private static long evictions;
+
+    private static long lookups;
+
+    private static long candidates;
+
+    /**
+     * Cleared if the realizations query is not supported
+     * by the persistence unit, reading work.getHasRealizations() instead.
+     */
+    private static volatile boolean queryRealizations = true;
+
+    // access ordered, for least recently used eviction
+    private static final LinkedHashMap<Object, ExpressionMatchIndex> works =
+            new LinkedHashMap<Object, ExpressionMatchIndex>(1024, 0.75f, true) {
+
+                @Override
+                protected boolean removeEldestEntry(
+                        final Map.Entry<Object, ExpressionMatchIndex> eldest) {
+                    if (size() > MAX_WORKS) {
+                        evictions++;
+                        return true;
+                    }
+                    return false;
+                }
+            };
+
+    /**
+     * Expressions in realization order.
+     */
+    private final List<Entry> entries = new ArrayList<Entry>();
+
+    /**
+     * Expressions by "p:" person or "c:" corporateBody realizer authIdent.
+     */
+    private final Map<String, List<Entry>> byRealizer =
+            new HashMap<String, List<Entry>>();
+
+    private ExpressionMatchIndex() {
+    }
+
+    /**
+     *  Get the expression index of a work, kept or newly built.
+     * @param daoFac DAOFactory holding the persistence context.
+     * @param work the persisted WorkJpa.
+     * @return the ExpressionMatchIndex of the work.
+     */
+    public static ExpressionMatchIndex forWork(final DAOFactory daoFac,
+                                               final WorkJpa work) {
+
+        final Object workId = work.getId();
+        final boolean keep = ENABLED && (workId != null);
+
+        if (keep) {
+            synchronized (works) {
+                final ExpressionMatchIndex kept = works.get(workId);
+                if (kept != null) {
+                    hits++;
+                    return kept;
+                }
+            }
+        }
+
+        final ExpressionMatchIndex built = build(daoFac, work);
+
+        if (keep) {
+            synchronized (works) {
+                works.put(workId, built);
+                builds++;
+            }
+        }
+
+        return built;
+    }
+
+    /**
+     *  Forget the expression index of a work.
+     * @param work the WorkJpa.
+     */
+    public static void forget(final WorkJpa work) {
+
+        final Object workId = work.getId();
+        if (workId != null) {
+            synchronized (works) {
+                works.remove(workId);
+            }
+        }
+    }
+
+    /**
+     *  Forget the expression indexes of all works.
+     */
+    public static void clearAll() {
+        synchronized (works) {
+            works.clear();
+        }
+    }
+
+    /**
+     *  Index the persisted realizations of a work.
+     */
+    private static ExpressionMatchIndex build(final DAOFactory daoFac,
+                                              final WorkJpa work) {
+
+        final ExpressionMatchIndex index = new ExpressionMatchIndex();
+
+        if (queryRealizations && work.getId() != null) {
+            try {
+                final long start = LoadTimings.start();
+                final List realized = daoFac.getEntityManager().createQuery(
+                        "SELECT r.targetExpression FROM WorkToExpression r"
+                        + " WHERE r.sourceWork = :work")
+                        .setParameter("work", work)
+                        .getResultList();
+                LoadTimings.stop(LoadTimings.Timer.DAO_QUERY, start);
+                for (Object expression : realized) {
+                    index.add((ExpressionJpa) expression);
+                }
+                return index;
+            } catch (IllegalArgumentException ex) {
+                queryRealizations = false;
+                log.warn("realizations query not supported,"
+                        + " reading work realizations instead", ex);
+            }
+        }
+
+        // for all the work.hasRealizations expressions
+        final List<WorkToExpression> realizations = work.getHasRealizations();
+        for (int idx = 0; idx < realizations.size(); idx++) {
+            final WorkToExpression realizedBy = realizations.get(idx);
+
+            // test for null realizedBy
+            if (null == realizedBy) {
+                log.warn("****** WARNING ******");
+                log.warn("* null realizedBy from work.getHasRealizations() ");
+                log.warn("* for work.uniformTitle: \""
+                        + work.getUniformTitle() + "\"");
+                log.warn("* hasRealizations List size: "
+                        + realizations.size());
+                log.warn("* this element index: " + idx);
+                log.warn("* skipping this element");
+                log.warn("*******");
+            } else {
+                index.add(realizedBy.getTargetExpression());
+            }
+        }
+
+        return index;
+    }
+
+    /**
+     *  Add an expression of the work, as persisted.
+     * @param expression the ExpressionJpa.
+     */
+    public synchronized void add(final ExpressionJpa expression) {
+
+        final ExpressionMatchKeys keys =
+                ExpressionMatchKeys.forExpression(expression);
+        final Entry entry =
+                new Entry(this.entries.size(), expression, keys);
+
+        this.entries.add(entry);
+        for (String authIdent : keys.getPersons()) {
+            indexUnder("p:" + authIdent, entry);
+        }
+        for (String authIdent : keys.getCorporateBodies()) {
+            indexUnder("c:" + authIdent, entry);
+        }
+    }
+
+    /**
+     *  Find the expressions of the work matching a record.
+     * @param daoFac DAOFactory holding the persistence context.
+     * @param recordKeys the ExpressionMatchKeys of the record.
+     * @return the matching ExpressionJpas, in realization order,
+     *         or null if an indexed expression is no longer persisted.
+     */
+    public synchronized List<ExpressionJpa> match(
+            final DAOFactory daoFac,
+            final ExpressionMatchKeys recordKeys) {
+
+        final Set<Entry> sharing = new LinkedHashSet<Entry>();
+        for (String authIdent : recordKeys.getPersons()) {
+            addAll(sharing, this.byRealizer.get("p:" + authIdent));
+        }
+        for (String authIdent : recordKeys.getCorporateBodies()) {
+            addAll(sharing, this.byRealizer.get("c:" + authIdent));
+        }
+
+        synchronized (works) {
+            lookups++;
+            candidates += sharing.size();
+        }
+
+        if (sharing.isEmpty()) {
+            return Collections.<ExpressionJpa>emptyList();
+        }
+
+        final List<Entry> ordered = new ArrayList<Entry>(sharing);
+        Collections.sort(ordered, BY_ORDINAL);
+
+        final List<ExpressionJpa> matching = new ArrayList<ExpressionJpa>();
+        for (Entry entry : ordered) {
+            if (recordKeys.matches(entry.keys)) {
+                final ExpressionJpa expression = entry.resolve(daoFac);
+                if (expression == null) {
+                    return null;
+                }
+                matching.add(expression);
+            }
+        }
+
+        return matching;
+    }
+
+    private void indexUnder(final String key, final Entry entry) {
+        List<Entry> indexed = this.byRealizer.get(key);
+        if (null == indexed) {
+            indexed = new ArrayList<Entry>(2);
+            this.byRealizer.put(key, indexed);
+        }
+        indexed.add(entry);
+    }
+
+    private static void addAll(final Set<Entry> sharing,
+                               final List<Entry> indexed) {
+        if (null != indexed) {
+            sharing.addAll(indexed);
+        }
+    }
+
+    /**
+     *  Report the index counters.
+     * @return String report.
+     */
+    public static String report() {
+        StringBuilder strBuff = new StringBuilder();
+
+        synchronized (works) {
+            strBuff.append("\n------------\n");
+            strBuff.append(" Expression match index");
+            if (!ENABLED) {
+                strBuff.append(" (not kept)");
+            }
+            strBuff.append("\n   works indexed:          ");
+            strBuff.append(works.size());
+            strBuff.append("\n   hits:                   ");
+            strBuff.append(hits);
+            strBuff.append("\n   builds:                 ");
+            strBuff.append(builds);
+            strBuff.append("\n   evictions:              ");
+            strBuff.append(evictions);
+            strBuff.append("\n   lookups:                ");
+            strBuff.append(lookups);
+            strBuff.append("\n   expressions checked:    ");
+            strBuff.append(candidates);
+            strBuff.append("\n------------\n");
+        }
+
+        return strBuff.toString();
+    }
+
+    /**
+     *  An indexed expression.  Holds the id of the expression, found in
+     * the current persistence context when matched, or while its id is
+     * not yet generated inside a transaction batch, the expression itself.
+     */
+    private static final class Entry {
+
+        private final int ordinal;
+
+        private final ExpressionMatchKeys keys;
+
+        private Object id;
+
+        private ExpressionJpa pending;
+
+        Entry(final int ordinal,
+              final ExpressionJpa expression,
+              final ExpressionMatchKeys keys) {
+            this.ordinal = ordinal;
+            this.keys = keys;
+            this.id = expression.getId();
+            if (this.id == null) {
+                this.pending = expression;
+            }
+        }
+
+        ExpressionJpa resolve(final DAOFactory daoFac) {
+            if (this.id == null) {
+                this.id = this.pending.getId();
+                if (this.id == null) {
+                    // same open batch, still managed
+                    return this.pending;
+                }
+                this.pending = null;
+            }
+            final long start = LoadTimings.start();
+            final ExpressionJpa expression =
+                    daoFac.getEntityManager().find(ExpressionJpa.class,
+                                                   this.id);
+            LoadTimings.stop(LoadTimings.Timer.DAO_QUERY, start);
+            return expression;
+        }
+    }
+}
@@ -30,15 +30,17 @@
  */
 package edu.indiana.dlib.vfrbr.frbrize.batchloading;
 
+import edu.indiana.dlib.vfrbr.frbrize.batchloading.LoadTimings.Timer;
 import edu.indiana.dlib.vfrbr.frbrize.batchloading.mappers.CorporateBodyMapper;
 import edu.indiana.dlib.vfrbr.frbrize.batchloading.mappers.PersonMapper;
 import edu.indiana.dlib.vfrbr.frbrize.batchloading.marcDecorators.MarcDataField;
 import edu.indiana.dlib.vfrbr.frbrize.batchloading.marcDecorators.MarcRecord;
 import edu.indiana.dlib.vfrbr.persist.dao.CorporateBodyDAO;
-
+import edu.indiana.dlib.vfrbr.persist.dao.DAOFactory;
 import edu.indiana.dlib.vfrbr.persist.dao.PersonDAO;
 import edu.indiana.dlib.vfrbr.persist.entity.responsibleparty.CorporateBodyJpa;
 import edu.indiana.dlib.vfrbr.persist.entity.responsibleparty.PersonJpa;
+import java.util.Collections;
 import java.util.List;
 
 import org.apache.log4j.Logger;
@@ -52,9 +54,12 @@ public class FindPersisted {
 
     private static Logger log = Logger.getLogger(FindPersisted.class);
 
+    private final DAOFactory daoFactory;
+
     private Counts count;
 
-    public FindPersisted(Counts count) {
+    public FindPersisted(DAOFactory daoFactory, Counts count) {
+        this.daoFactory = daoFactory;
         this.count = count;
     }
 
@@ -84,9 +89,57 @@ public class FindPersisted {
             log.info("      for " + persDataField);
         }
 
+        // first try the identity cache
+        final Object cachedId =
+                IdentityCache.PERSONS.get(IdentityCache.AUTH_IDENT,
+                                          persAuthIdent);
+
+        if (cachedId == IdentityCache.NONE) {
+            if (log.isInfoEnabled()) {
+                log.info("      cached as not found.");
+            }
+        } else {
+            if (cachedId != null) {
+                personFound = IdentityCache.PERSONS.find(this.daoFactory,
+                        PersonJpa.class,
+                        IdentityCache.AUTH_IDENT, persAuthIdent, cachedId);
+            }
+            if (personFound != null) {
+                if (log.isInfoEnabled()) {
+                    log.info("      found by identity cache.");
+                }
+            } else {
+                // stamped before the seek, a miss may not outlive a persist
+                final IdentityCache.Stamp stamp =
+                        IdentityCache.PERSONS.stamp(IdentityCache.AUTH_IDENT,
+                                                    persAuthIdent)
+                        .and(IdentityCache.NORMAL_NAME,
+                             PersonMapper.getNormalName(persDataField));
+                personFound = seekPerson(persDataField,
+                                         persAuthIdent,
+                                         personDAO);
+                IdentityCache.PERSONS.put(IdentityCache.AUTH_IDENT,
+                        persAuthIdent,
+                        (personFound == null) ? null : personFound.getId(),
+                        stamp);
+            }
+        }
+
+        return personFound;
+    }
+
+    /**
+     *  Seek a matching persisted Person in the database,
+     * by authIdent, normalName, and then cached authority record.
+     */
+    private PersonJpa seekPerson(MarcDataField persDataField,
+                                 String persAuthIdent,
+                                 PersonDAO personDAO) {
+        PersonJpa personFound = null;
+
         // first try authIdent
         List<PersonJpa> matchingPersons =
-                personDAO.getByAuthIdent(persAuthIdent);
+                personsByAuthIdent(persAuthIdent, personDAO);
 
         if (matchingPersons.isEmpty()) {
             // then try normalName
@@ -98,7 +151,7 @@ public class FindPersisted {
                         + normalName);
             }
 
-            matchingPersons = personDAO.getByNormalName(normalName);
+            matchingPersons = personsByNormalName(normalName, personDAO);
 
             if (matchingPersons.isEmpty()) {
                 // not found by normalName, either
@@ -110,7 +163,8 @@ public class FindPersisted {
                 // see if cached auth record exists
                 // whose content does match a persisted entry
 
-                final AuthorityHandler authHandler = new AuthorityHandler();
+                // cached only, this may run under an identity monitor
+                final AuthorityHandler authHandler = new AuthorityHandler(false);
                 final MarcRecord authPersRec =
                         authHandler.getAuthorityPersonRecord(persDataField);
 
@@ -128,7 +182,7 @@ public class FindPersisted {
                     PersonMapper personMapper = new PersonMapper();
                     personMapper.mapFromAuthRecord(authPersRec, authPerson);
                     matchingPersons =
-                            personDAO.getByAuthIdent(authPerson.getAuthIdent());
+                            personsByAuthIdent(authPerson.getAuthIdent(), personDAO);
                     if (matchingPersons.isEmpty()) {
                         // not found by authPerson authIdent (??!!)
                         if (log.isInfoEnabled()) {
@@ -206,9 +260,58 @@ public class FindPersisted {
             log.info("      for " + corpDataField);
         }
 
+        // first try the identity cache
+        final Object cachedId =
+                IdentityCache.CORPORATE_BODIES.get(IdentityCache.AUTH_IDENT,
+                                                   corpAuthIdent);
+
+        if (cachedId == IdentityCache.NONE) {
+            if (log.isInfoEnabled()) {
+                log.info("      cached as not found.");
+            }
+        } else {
+            if (cachedId != null) {
+                corporateFound = IdentityCache.CORPORATE_BODIES.find(
+                        this.daoFactory, CorporateBodyJpa.class,
+                        IdentityCache.AUTH_IDENT, corpAuthIdent, cachedId);
+            }
+            if (corporateFound != null) {
+                if (log.isInfoEnabled()) {
+                    log.info("      found by identity cache.");
+                }
+            } else {
+                // stamped before the seek, a miss may not outlive a persist
+                final IdentityCache.Stamp stamp =
+                        IdentityCache.CORPORATE_BODIES.stamp(
+                                IdentityCache.AUTH_IDENT, corpAuthIdent)
+                        .and(IdentityCache.NORMAL_NAME,
+                             CorporateBodyMapper.getNormalName(corpDataField));
+                corporateFound = seekCorporateBody(corpDataField,
+                                                   corpAuthIdent,
+                                                   corporateDAO);
+                IdentityCache.CORPORATE_BODIES.put(IdentityCache.AUTH_IDENT,
+                        corpAuthIdent,
+                        (corporateFound == null)
+                        ? null : corporateFound.getId(),
+                        stamp);
+            }
+        }
+
+        return corporateFound;
+    }
+
+    /**
+     *  Seek a matching persisted CorporateBody in the database,
+     * by authIdent, normalName, and then cached authority record.
+     */
+    private CorporateBodyJpa seekCorporateBody(MarcDataField corpDataField,
+                                               String corpAuthIdent,
+                                               CorporateBodyDAO corporateDAO) {
+        CorporateBodyJpa corporateFound = null;
+
         // first try authIdent
         List<CorporateBodyJpa> matchingCorporates =
-                corporateDAO.getByAuthIdent(corpAuthIdent);
+                corporatesByAuthIdent(corpAuthIdent, corporateDAO);
 
         if (matchingCorporates.isEmpty()) {
             // then try normalName
@@ -220,7 +323,8 @@ public class FindPersisted {
                         + normalName);
             }
 
-            matchingCorporates = corporateDAO.getByNormalName(normalName);
+            matchingCorporates =
+                    corporatesByNormalName(normalName, corporateDAO);
 
             if (matchingCorporates.isEmpty()) {
                 // not found by normalName, either
@@ -232,7 +336,8 @@ public class FindPersisted {
                 // see if cached auth record exists
                 // whose content does match a persisted entry
 
-                final AuthorityHandler authHandler = new AuthorityHandler();
+                // cached only, this may run under an identity monitor
+                final AuthorityHandler authHandler = new AuthorityHandler(false);
                 final MarcRecord authCorpRec =
                         authHandler.getAuthorityCorporateBodyRecord(
                         corpDataField);
@@ -251,7 +356,8 @@ public class FindPersisted {
                     CorporateBodyMapper corpMapper = new CorporateBodyMapper();
                     corpMapper.mapFromAuthRecord(authCorpRec, authCorp);
                     matchingCorporates =
-                            corporateDAO.getByAuthIdent(authCorp.getAuthIdent());
+                            corporatesByAuthIdent(authCorp.getAuthIdent(),
+                                    corporateDAO);
                     if (matchingCorporates.isEmpty()) {
                         // not found by authCorp
                         if (log.isInfoEnabled()) {
@@ -303,6 +409,192 @@ public class FindPersisted {
         return corporateFound;
     }
 
+    /**
+     *  Find the persisted Person of an authority authIdent,
+     * through the identity cache, otherwise with a single query.
+     * @param authIdent the authIdent resolved from the authority record.
+     * @param personDAO PersonDAO for current persistence context.
+     * @return the PersonJpa, or null if none is persisted.
+     */
+    public final PersonJpa personByAuthIdent(String authIdent,
+                                             PersonDAO personDAO) {
+
+        final Object cachedId =
+                IdentityCache.PERSONS.get(IdentityCache.AUTH_IDENT, authIdent);
+        if (cachedId == IdentityCache.NONE) {
+            return null;
+        }
+        if (cachedId != null) {
+            final PersonJpa cachedPerson = IdentityCache.PERSONS.find(
+                    this.daoFactory, PersonJpa.class,
+                    IdentityCache.AUTH_IDENT, authIdent, cachedId);
+            if (cachedPerson != null) {
+                return cachedPerson;
+            }
+        }
+
+        final IdentityCache.Stamp stamp =
+                IdentityCache.PERSONS.stamp(IdentityCache.AUTH_IDENT,
+                                            authIdent);
+        final List<PersonJpa> matchingPersons =
+                personsByAuthIdent(authIdent, personDAO);
+        final PersonJpa personFound =
+                matchingPersons.isEmpty() ? null : matchingPersons.get(0);
+        IdentityCache.PERSONS.put(IdentityCache.AUTH_IDENT,
+                authIdent,
+                (personFound == null) ? null : personFound.getId(),
+                stamp);
+
+        return personFound;
+    }
+
+    /**
+     *  Find the persisted CorporateBody of an authority authIdent,
+     * through the identity cache, otherwise with a single query.
+     * @param authIdent the authIdent resolved from the authority record.
+     * @param corporateDAO CorporateBodyDAO for current persistence context.
+     * @return the CorporateBodyJpa, or null if none is persisted.
+     */
+    public final CorporateBodyJpa corporateBodyByAuthIdent(
+            String authIdent,
+            CorporateBodyDAO corporateDAO) {
+
+        final Object cachedId =
+                IdentityCache.CORPORATE_BODIES.get(IdentityCache.AUTH_IDENT,
+                                                   authIdent);
+        if (cachedId == IdentityCache.NONE) {
+            return null;
+        }
+        if (cachedId != null) {
+            final CorporateBodyJpa cachedCorporate =
+                    IdentityCache.CORPORATE_BODIES.find(
+                    this.daoFactory, CorporateBodyJpa.class,
+                    IdentityCache.AUTH_IDENT, authIdent, cachedId);
+            if (cachedCorporate != null) {
+                return cachedCorporate;
+            }
+        }
+
+        final IdentityCache.Stamp stamp =
+                IdentityCache.CORPORATE_BODIES.stamp(IdentityCache.AUTH_IDENT,
+                                                     authIdent);
+        final List<CorporateBodyJpa> matchingCorporates =
+                corporatesByAuthIdent(authIdent, corporateDAO);
+        final CorporateBodyJpa corporateFound =
+                matchingCorporates.isEmpty() ? null : matchingCorporates.get(0);
+        IdentityCache.CORPORATE_BODIES.put(IdentityCache.AUTH_IDENT,
+                authIdent,
+                (corporateFound == null) ? null : corporateFound.getId(),
+                stamp);
+
+        return corporateFound;
+    }
+
+    /**
+     *  Persons matching an authIdent, in the database.
+     */
+    private List<PersonJpa> personsByAuthIdent(String authIdent,
+                                               PersonDAO personDAO) {
+        final long start = LoadTimings.start();
+        final List<PersonJpa> matchingPersons =
+                personDAO.getByAuthIdent(authIdent);
+        LoadTimings.stop(Timer.DAO_QUERY, start);
+        return matchingPersons;
+    }
+
+    /**
+     *  CorporateBodies matching an authIdent, in the database.
+     */
+    private List<CorporateBodyJpa> corporatesByAuthIdent(
+            String authIdent,
+            CorporateBodyDAO corporateDAO) {
+        final long start = LoadTimings.start();
+        final List<CorporateBodyJpa> matchingCorporates =
+                corporateDAO.getByAuthIdent(authIdent);
+        LoadTimings.stop(Timer.DAO_QUERY, start);
+        return matchingCorporates;
+    }
+
+    /**
+     *  Persons matching a normalName, through the identity cache.
+     * A cached match is returned alone.
+     */
+    private List<PersonJpa> personsByNormalName(String normalName,
+                                                PersonDAO personDAO) {
+
+        final Object cachedId =
+                IdentityCache.PERSONS.get(IdentityCache.NORMAL_NAME,
+                                          normalName);
+
+        if (cachedId == IdentityCache.NONE) {
+            return Collections.<PersonJpa>emptyList();
+        }
+        if (cachedId != null) {
+            final PersonJpa cachedPerson = IdentityCache.PERSONS.find(
+                    this.daoFactory, PersonJpa.class,
+                    IdentityCache.NORMAL_NAME, normalName, cachedId);
+            if (cachedPerson != null) {
+                return Collections.singletonList(cachedPerson);
+            }
+        }
+
+        final IdentityCache.Stamp stamp =
+                IdentityCache.PERSONS.stamp(IdentityCache.NORMAL_NAME,
+                                            normalName);
+        final long start = LoadTimings.start();
+        final List<PersonJpa> matchingPersons =
+                personDAO.getByNormalName(normalName);
+        LoadTimings.stop(Timer.DAO_QUERY, start);
+        IdentityCache.PERSONS.put(IdentityCache.NORMAL_NAME,
+                normalName,
+                matchingPersons.isEmpty()
+                ? null : matchingPersons.get(0).getId(),
+                stamp);
+
+        return matchingPersons;
+    }
+
+    /**
+     *  CorporateBodies matching a normalName, through the identity cache.
+     * A cached match is returned alone.
+     */
+    private List<CorporateBodyJpa> corporatesByNormalName(
+            String normalName,
+            CorporateBodyDAO corporateDAO) {
+
+        final Object cachedId =
+                IdentityCache.CORPORATE_BODIES.get(IdentityCache.NORMAL_NAME,
+                                                   normalName);
+
+        if (cachedId == IdentityCache.NONE) {
+            return Collections.<CorporateBodyJpa>emptyList();
+        }
+        if (cachedId != null) {
+            final CorporateBodyJpa cachedCorporate =
+                    IdentityCache.CORPORATE_BODIES.find(
+                    this.daoFactory, CorporateBodyJpa.class,
+                    IdentityCache.NORMAL_NAME, normalName, cachedId);
+            if (cachedCorporate != null) {
+                return Collections.singletonList(cachedCorporate);
+            }
+        }
+
+        final IdentityCache.Stamp stamp =
+                IdentityCache.CORPORATE_BODIES.stamp(IdentityCache.NORMAL_NAME,
+                                                     normalName);
+        final long start = LoadTimings.start();
+        final List<CorporateBodyJpa> matchingCorporates =
+                corporateDAO.getByNormalName(normalName);
+        LoadTimings.stop(Timer.DAO_QUERY, start);
+        IdentityCache.CORPORATE_BODIES.put(IdentityCache.NORMAL_NAME,
+                normalName,
+                matchingCorporates.isEmpty()
+                ? null : matchingCorporates.get(0).getId(),
+                stamp);
+
+        return matchingCorporates;
+    }
+
     private void countUnmatchedRole(String role) {
 
         if ("composer".equals(role)) {
@@ -0,0 +1,537 @@
+/**
+ * Copyright 2009-2011, Trustees of Indiana University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *   Neither the name of Indiana University nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.indiana.dlib.vfrbr.frbrize.batchloading;
+
+import edu.indiana.dlib.vfrbr.persist.dao.DAOFactory;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.log4j.Logger;
+
+/**
+ *  Process-wide cache of persisted Person, CorporateBody and Work
+ * identities.  Maps the authIdent of a bib field, and a normalName, to the
+ * id of the matching persisted entity, so that FindPersisted and
+ * WorkFieldHandler only query the database the first time a name is seen.
+ * A cached id is resolved with EntityManager.find, which the persistence
+ * provider serves from its shared cache without a query, across the
+ * per-record EntityManagers, and across files when the persistence
+ * lifecycle is "run".
+ * <p>
+ * Misses are cached too, stamped with the generations of the keys the
+ * lookup depended on, taken before its query.  Persisting an entity from
+ * a bib field bumps the generations of its authIdents and normalName
+ * only, so only the misses it could now satisfy go stale.  An entity
+ * persisted from an authority record may have any number of variant
+ * names, and its authority record may match other bib fields, so it
+ * makes all the misses of its kind stale.  A miss never replaces a
+ * cached id.
+ * <p>
+ * The cache is bounded by identity_cache_size entries per kind, evicting
+ * the least recently used.  The handlers register each new entity once its
+ * transaction commits, and a batch rollback clears the cache, as the ids
+ * of its entities are gone.
+ * <p>
+ * All of this holds only while this load is the one writer to the
+ * database.  With single_writer_load false, for deployments where other
+ * loaders or applications write at the same time, the cache is off and
+ * every lookup goes to the database.
+ */
+public final class IdentityCache {
+
+    private static final Logger log = Logger.getLogger(IdentityCache.class);
+
+    /**
+     * Key prefix for the authIdent of a bib field.
+     */
+    public static final String AUTH_IDENT = "a:";
+
+    /**
+     * Key prefix for a normalName.
+     */
+    public static final String NORMAL_NAME = "n:";
+
+    /**
+     * Key prefix for the work key of a bib field, as computed before
+     * mapping.  Holds the id of the work the field was resolved to.
+     */
+    public static final String WORK_KEY = "k:";
+
+    /**
+     * Returned by get for a cached miss.
+     */
+    public static final Object NONE = new Object();
+
+    /**
+     * Whether nothing else writes to the database during the load.
+     */
+    private static final boolean SINGLE_WRITER =
+            LoadSettings.getBoolean("single_writer_load", true);
+
+    public static final IdentityCache PERSONS =
+            new IdentityCache("person", "PersonJpa");
+
+    public static final IdentityCache CORPORATE_BODIES =
+            new IdentityCache("corporateBody", "CorporateBodyJpa");
+
+    public static final IdentityCache WORKS =
+            new IdentityCache("work", "WorkJpa");
+
+    private final String kind;
+
+    /**
+     * JPA entity name, for warming.
+     */
+    private final String entityName;
+
+    private final boolean enabled;
+
+    private final int maxSize;
+
+    /**
+     * Number of key generation stripes, a power of two.
+     */
+    private static final int GENERATION_STRIPES = 4096;
+
+    /**
+     * Bumped when an entity of this kind is persisted from an authority
+     * record, or the cache is cleared: cached misses of older
+     * generations are stale.
+     */
+    private long generation;
+
+    /**
+     * Generations of the keys, by stripe, bumped when an entity found by
+     * a key of the stripe is persisted.
+     */
+    private final long[] keyGenerations = new long[GENERATION_STRIPES];
+
+    private long hits;
+
+    private long missHits;
+
+    private long misses;
+
+    private long evictions;
+
+    private long entityFinds;
+
+    private long staleIds;
+
+    private final LinkedHashMap<String, Object> entries;
+
+    private IdentityCache(final String kind, final String entityName) {
+
+        this.kind = kind;
+        this.entityName = entityName;
+        this.enabled = SINGLE_WRITER
+                && LoadSettings.getBoolean("identity_cache_enabled", true);
+        this.maxSize = LoadSettings.getInt("identity_cache_size", 100000);
+
+        // access ordered, for least recently used eviction
+        this.entries = new LinkedHashMap<String, Object>(1024, 0.75f, true) {
+
+            @Override
+            protected boolean removeEldestEntry(
+                    final Map.Entry<String, Object> eldest) {
+                if (size() > maxSize) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @return whether nothing else writes to the database during the load,
+     *         the single_writer_load setting.
+     */
+    static boolean isSingleWriterLoad() {
+        return SINGLE_WRITER;
+    }
+
+    /**
+     *  Get the cached identity for a key.
+     * @param prefix AUTH_IDENT, NORMAL_NAME or WORK_KEY.
+     * @param value the authIdent or normalName.
+     * @return the entity id, NONE for a cached miss,
+     *         or null if not cached.
+     */
+    public synchronized Object get(final String prefix, final String value) {
+
+        if (!this.enabled || value == null) {
+            return null;
+        }
+
+        final String key = prefix + value;
+        final Object cached = this.entries.get(key);
+
+        if (cached == null) {
+            this.misses++;
+            return null;
+        }
+
+        if (cached instanceof Miss) {
+            if (isCurrent(((Miss) cached).stamp)) {
+                this.missHits++;
+                return NONE;
+            }
+            // stale, something has been persisted since
+            this.entries.remove(key);
+            this.misses++;
+            return null;
+        }
+
+        this.hits++;
+        return cached;
+    }
+
+    /**
+     *  Stamp the generations of the keys a lookup depends on,
+     * before its query, for put of a miss.
+     * @param prefix AUTH_IDENT, NORMAL_NAME or WORK_KEY.
+     * @param value the authIdent or normalName.
+     * @return the Stamp, to add further keys to with and().
+     */
+    public synchronized Stamp stamp(final String prefix, final String value) {
+        return new Stamp(this.generation).and(prefix, value);
+    }
+
+    /**
+     *  Cache the id found for a key.  A miss, a null id, is not cached
+     * without a stamp.
+     * @param prefix AUTH_IDENT, NORMAL_NAME or WORK_KEY.
+     * @param value the authIdent or normalName.
+     * @param id the entity id.
+     */
+    public synchronized void put(final String prefix,
+                                 final String value,
+                                 final Object id) {
+        put(prefix, value, id, null);
+    }
+
+    /**
+     *  Cache the identity found for a key.  A miss is only cached if
+     * none of the keys of its stamp have been persisted since the stamp,
+     * and never replaces a cached id.
+     * @param prefix AUTH_IDENT, NORMAL_NAME or WORK_KEY.
+     * @param value the authIdent or normalName.
+     * @param id the entity id, or null if none was found.
+     * @param stamp from stamp(), taken before the query, or null.
+     */
+    public synchronized void put(final String prefix,
+                                 final String value,
+                                 final Object id,
+                                 final Stamp stamp) {
+
+        if (!this.enabled || value == null) {
+            return;
+        }
+
+        final String key = prefix + value;
+        if (id != null) {
+            this.entries.put(key, id);
+        } else if (stamp != null && isCurrent(stamp)) {
+            final Object cached = this.entries.get(key);
+            if (cached == null || cached instanceof Miss) {
+                this.entries.put(key, new Miss(stamp));
+            }
+        }
+    }
+
+    /**
+     *  Find the entity of a cached id.  A cached id that no longer
+     * finds an entity is forgotten.
+     * @param daoFac DAOFactory holding the persistence context.
+     * @param entityClass the entity class of this kind.
+     * @param prefix AUTH_IDENT, NORMAL_NAME or WORK_KEY.
+     * @param value the authIdent or normalName.
+     * @param id the id from get.
+     * @return the entity, or null if it is gone.
+     */
+    public <T> T find(final DAOFactory daoFac,
+                      final Class<T> entityClass,
+                      final String prefix,
+                      final String value,
+                      final Object id) {
+
+        final long start = LoadTimings.start();
+        final T entity = daoFac.getEntityManager().find(entityClass, id);
+        LoadTimings.stop(LoadTimings.Timer.DAO_QUERY, start);
+
+        synchronized (this) {
+            if (entity == null) {
+                this.staleIds++;
+                remove(prefix, value);
+            } else {
+                this.entityFinds++;
+            }
+        }
+
+        return entity;
+    }
+
+    /**
+     *  Forget a key, e.g. when its cached id no longer finds an entity.
+     * @param prefix AUTH_IDENT, NORMAL_NAME or WORK_KEY.
+     * @param value the authIdent or normalName.
+     */
+    public synchronized void remove(final String prefix, final String value) {
+
+        if (value != null) {
+            this.entries.remove(prefix + value);
+        }
+    }
+
+    /**
+     *  Register an entity newly persisted from a bib field,
+     * once its step is committed.
+     * @param fieldAuthIdent authIdent of the bib field it was created for.
+     * @param authIdent authIdent of the entity.
+     * @param normalName normalName of the entity, or null if none.
+     * @param id the entity id.
+     */
+    public synchronized void persisted(final String fieldAuthIdent,
+                                       final String authIdent,
+                                       final String normalName,
+                                       final Object id) {
+
+        bump(AUTH_IDENT, fieldAuthIdent);
+        bump(AUTH_IDENT, authIdent);
+        bump(NORMAL_NAME, normalName);
+        register(fieldAuthIdent, authIdent, id);
+    }
+
+    /**
+     *  Register an entity newly persisted from an authority record,
+     * once its step is committed.  All cached misses of the kind go stale.
+     * @param fieldAuthIdent authIdent of the bib field it was created for.
+     * @param authIdent authIdent of the entity.
+     * @param id the entity id.
+     */
+    public synchronized void persistedFromAuthority(
+            final String fieldAuthIdent,
+            final String authIdent,
+            final Object id) {
+
+        this.generation++;
+        register(fieldAuthIdent, authIdent, id);
+    }
+
+    private void register(final String fieldAuthIdent,
+                          final String authIdent,
+                          final Object id) {
+        if (id == null) {
+            // id not yet generated, inside a transaction batch
+            remove(AUTH_IDENT, fieldAuthIdent);
+            remove(AUTH_IDENT, authIdent);
+        } else {
+            put(AUTH_IDENT, fieldAuthIdent, id);
+            put(AUTH_IDENT, authIdent, id);
+        }
+    }
+
+    /**
+     *  Forget all entries.
+     */
+    public synchronized void clear() {
+        this.entries.clear();
+        this.generation++;
+    }
+
+    /**
+     *  Forget all entries of all kinds.
+     */
+    public static void clearAll() {
+        PERSONS.clear();
+        CORPORATE_BODIES.clear();
+        WORKS.clear();
+    }
+
+    /**
+     *  Fill the cache with the authIdents of the persisted entities,
+     * up to the size bound.
+     * @param daoFac DAOFactory holding a persistence context.
+     */
+    public void warm(final DAOFactory daoFac) {
+
+        if (!this.enabled) {
+            return;
+        }
+
+        final List rows = daoFac.getEntityManager().createQuery(
+                "SELECT e.authIdent, e.id FROM " + this.entityName + " e")
+                .setMaxResults(this.maxSize)
+                .getResultList();
+
+        synchronized (this) {
+            for (Object row : rows) {
+                final Object[] cols = (Object[]) row;
+                put(AUTH_IDENT, (String) cols[0], cols[1]);
+            }
+        }
+
+        log.warn("==== identity cache warmed with " + rows.size()
+                + " " + this.kind + " authIdents");
+    }
+
+    /**
+     *  Report the cache counters.
+     * @return String report.
+     */
+    public synchronized String report() {
+        StringBuilder strBuff = new StringBuilder();
+
+        strBuff.append("\n------------\n");
+        strBuff.append(" Identity cache for ");
+        strBuff.append(this.kind);
+        if (!this.enabled) {
+            strBuff.append(SINGLE_WRITER
+                    ? " (disabled)" : " (disabled, not single writer)");
+        }
+        strBuff.append("\n   entries:                ");
+        strBuff.append(this.entries.size());
+        strBuff.append("\n   hits:                   ");
+        strBuff.append(this.hits);
+        strBuff.append("\n   cached miss hits:       ");
+        strBuff.append(this.missHits);
+        strBuff.append("\n   misses:                 ");
+        strBuff.append(this.misses);
+        strBuff.append("\n   evictions:              ");
+        strBuff.append(this.evictions);
+        strBuff.append("\n   entities found by id:   ");
+        strBuff.append(this.entityFinds);
+        strBuff.append("\n   stale ids:              ");
+        strBuff.append(this.staleIds);
+        strBuff.append("\n------------\n");
+
+        return strBuff.toString();
+    }
+
+    /**
+     *  Report the counters of all kinds.
+     * @return String report.
+     */
+    public static String reportAll() {
+        return PERSONS.report() + CORPORATE_BODIES.report() + WORKS.report();
+    }
+
+    private int stripeOf(final String prefix, final String value) {
+        int hash = (prefix + value).hashCode();
+        // spread the hash bits before masking
+        hash ^= (hash >>> 16);
+        return hash & (GENERATION_STRIPES - 1);
+    }
+
+    private void bump(final String prefix, final String value) {
+        if (value != null) {
+            this.keyGenerations[stripeOf(prefix, value)]++;
+        }
+    }
+
+    /**
+     * @return whether nothing the stamp depends on has been persisted.
+     */
+    private boolean isCurrent(final Stamp stamp) {
+        if (stamp.generation != this.generation) {
+            return false;
+        }
+        for (int idx = 0; idx < stamp.size; idx++) {
+            if (this.keyGenerations[stamp.stripes[idx]]
+                    != stamp.keyGenerations[idx]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     *  The generations of the keys a lookup depended on,
+     * taken before its query.
+     */
+    public final class Stamp {
+
+        private final long generation;
+
+        private int[] stripes = new int[2];
+
+        private long[] keyGenerations = new long[2];
+
+        private int size = 0;
+
+        private Stamp(final long generation) {
+            this.generation = generation;
+        }
+
+        /**
+         *  Add a further key the lookup depends on.
+         * @param prefix AUTH_IDENT, NORMAL_NAME or WORK_KEY.
+         * @param value the authIdent or normalName, ignored if null.
+         * @return this Stamp.
+         */
+        public Stamp and(final String prefix, final String value) {
+            if (value == null) {
+                return this;
+            }
+            synchronized (IdentityCache.this) {
+                if (this.size == this.stripes.length) {
+                    final int[] grownStripes = new int[this.size * 2];
+                    final long[] grownGenerations = new long[this.size * 2];
+                    System.arraycopy(this.stripes, 0,
+                                     grownStripes, 0, this.size);
+                    System.arraycopy(this.keyGenerations, 0,
+                                     grownGenerations, 0, this.size);
+                    this.stripes = grownStripes;
+                    this.keyGenerations = grownGenerations;
+                }
+                final int stripe = stripeOf(prefix, value);
+                this.stripes[this.size] = stripe;
+                this.keyGenerations[this.size] =
+                        IdentityCache.this.keyGenerations[stripe];
+                this.size++;
+            }
+            return this;
+        }
+    }
+
+    /**
+     *  A cached miss, good while its stamp is current.
+     */
+    private static final class Miss {
+
+        private final Stamp stamp;
+
+        Miss(final Stamp stamp) {
+            this.stamp = stamp;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/**
+ * Copyright 2009-2011, Trustees of Indiana University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *   Neither the name of Indiana University nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.indiana.dlib.vfrbr.frbrize.batchloading;
+
+/**
+ *  Striped monitors for find-or-create sections keyed by identity.
+ * Parallel workers each have their own persistence context, so the
+ * check for an already persisted Person, CorporateBody or Work and the
+ * commit of a new one must not interleave between workers for the same
+ * authIdent.  Holding the monitor for the key across the check and the
+ * commit keeps the entities deduplicated.
+ * <p>
+ * Each kind has its own monitors, so a section of one kind never waits
+ * on a monitor another kind holds.  A section resolves its authority
+ * record before taking its monitor, and locks on the authIdent that
+ * record resolves to, and never waits for an authority fetch, or any
+ * other Future, while holding it.
+ */
+public final class IdentityLocks {
+
+    public static final String PERSON = "person";
+
+    public static final String CORPORATE = "corporate";
+
+    public static final String WORK = "work";
+
+    public static final String AUTH_FILE = "authFile";
+
+    /**
+     * Number of stripes per kind, a power of two.
+     */
+    private static final int STRIPES = 256;
+
+    private static final Object[] personMonitors = newMonitors();
+
+    private static final Object[] corporateMonitors = newMonitors();
+
+    private static final Object[] workMonitors = newMonitors();
+
+    private static final Object[] authFileMonitors = newMonitors();
+
+    private IdentityLocks() {
+    }
+
+    private static Object[] newMonitors() {
+        final Object[] monitors = new Object[STRIPES];
+        for (int idx = 0; idx < STRIPES; idx++) {
+            monitors[idx] = new Object();
+        }
+        return monitors;
+    }
+
+    /**
+     *  Get the monitor guarding an identity.
+     * Distinct keys may share a monitor, equal keys always do,
+     * keys of different kinds never do.
+     *
+     * @param kind the kind of entity, e.g. PERSON.
+     * @param ident the identity, e.g. the authIdent.
+     * @return the monitor to synchronize on.
+     */
+    public static Object forKey(final String kind, final String ident) {
+
+        final Object[] monitors;
+        if (PERSON.equals(kind)) {
+            monitors = personMonitors;
+        } else if (CORPORATE.equals(kind)) {
+            monitors = corporateMonitors;
+        } else if (WORK.equals(kind)) {
+            monitors = workMonitors;
+        } else if (AUTH_FILE.equals(kind)) {
+            monitors = authFileMonitors;
+        } else {
+            throw new IllegalArgumentException("unknown kind " + kind);
+        }
+
+        int hash = (ident == null) ? 0 : ident.hashCode();
+        // spread the hash bits before masking
+        hash ^= (hash >>> 16);
+
+        return monitors[hash & (STRIPES - 1)];
+    }
+}
@@ -0,0 +1,153 @@
+/**
+ * Copyright 2009-2011, Trustees of Indiana University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *   Neither the name of Indiana University nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.indiana.dlib.vfrbr.frbrize.batchloading;
+
+/**
+ *  Histogram of latencies, in microseconds, for percentiles.
+ * <p>
+ * Buckets are log-linear: eight per power of two, so a percentile is
+ * within 12.5% of the latency recorded, whatever its size, in a fixed
+ * array of counts.  Histograms of several workers or files merge by
+ * adding their counts.  Not thread safe, each frbrizing thread records
+ * into its own.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BITS = 3;
+
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    private static final int BUCKETS = (64 - SUB_BITS + 1) * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKETS];
+
+    private long count = 0;
+
+    private long totalMicros = 0;
+
+    private long maxMicros = 0;
+
+    /**
+     * @param nanos a latency, in nanoseconds.
+     */
+    public void record(final long nanos) {
+        final long micros = Math.max(0, nanos / 1000L);
+        this.counts[bucketOf(micros)]++;
+        this.count++;
+        this.totalMicros += micros;
+        if (micros > this.maxMicros) {
+            this.maxMicros = micros;
+        }
+    }
+
+    /**
+     * @param other a histogram to add into this one.
+     */
+    public void merge(final LatencyHistogram other) {
+        for (int idx = 0; idx < BUCKETS; idx++) {
+            this.counts[idx] += other.counts[idx];
+        }
+        this.count += other.count;
+        this.totalMicros += other.totalMicros;
+        this.maxMicros = Math.max(this.maxMicros, other.maxMicros);
+    }
+
+    public long getCount() {
+        return this.count;
+    }
+
+    public long getTotalMicros() {
+        return this.totalMicros;
+    }
+
+    public long getMaxMicros() {
+        return this.maxMicros;
+    }
+
+    /**
+     * @param fraction the percentile wanted, 0 to 1, e.g. 0.99.
+     * @return the latency at the percentile, in microseconds,
+     *         the upper bound of its bucket; 0 if nothing recorded.
+     */
+    public long getPercentileMicros(final double fraction) {
+        if (this.count == 0) {
+            return 0;
+        }
+        final long rank =
+                Math.max(1, (long) Math.ceil(fraction * this.count));
+        long seen = 0;
+        for (int idx = 0; idx < BUCKETS; idx++) {
+            seen += this.counts[idx];
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(idx), this.maxMicros);
+            }
+        }
+        return this.maxMicros;
+    }
+
+    /**
+     * @return e.g. "n=1200 total=5300ms p50=1.2ms p99=40.9ms max=212.0ms".
+     */
+    @Override
+    public String toString() {
+        return "n=" + this.count
+                + " total=" + (this.totalMicros / 1000L) + "ms"
+                + " p50=" + millis(getPercentileMicros(0.50))
+                + " p99=" + millis(getPercentileMicros(0.99))
+                + " max=" + millis(this.maxMicros);
+    }
+
+    /**
+     * @return microseconds as milliseconds, to a tenth.
+     */
+    static String millis(final long micros) {
+        return (micros / 1000L) + "." + ((micros % 1000L) / 100L) + "ms";
+    }
+
+    private static int bucketOf(final long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        final int exp = 63 - Long.numberOfLeadingZeros(micros);
+        final int sub = (int) (micros >>> (exp - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exp - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    private static long upperBoundOf(final int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        final int exp = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        final long sub = bucket % SUB_BUCKETS;
+        final long width = 1L << (exp - SUB_BITS);
+        return ((SUB_BUCKETS + sub) << (exp - SUB_BITS)) + width - 1;
+    }
+}
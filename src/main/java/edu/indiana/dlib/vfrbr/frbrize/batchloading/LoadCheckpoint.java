@@ -0,0 +1,233 @@
+/**
+ * Copyright 2009-2011, Trustees of Indiana University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *   Neither the name of Indiana University nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.indiana.dlib.vfrbr.frbrize.batchloading;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+import org.apache.log4j.Logger;
+
+/**
+ *  Durable progress of a sequential batch load, for resuming it.
+ * <p>
+ * After each committed batch the checkpoint file records the MARC data
+ * file being loaded, its last committed record number, the Counts of
+ * that file so far, and the Counts accumulated over the completed files.
+ * The file is written to a temporary file, synced, and renamed into
+ * place, so a crash leaves either the old or the new checkpoint.
+ * <p>
+ * A resumed load skips the completed files, and opens the checkpoint
+ * file after its last committed record through the file's
+ * MarcOffsetIndex, without decoding the records before it.
+ */
+public class LoadCheckpoint {
+
+    private static final Logger log = Logger.getLogger(LoadCheckpoint.class);
+
+    private static final String FILE_NAME = "fileName";
+
+    private static final String REC_NUM = "recNum";
+
+    private static final String FILE_DONE = "fileDone";
+
+    private static final String FILE_COUNTS = "file.";
+
+    private static final String ACCUMULATED_COUNTS = "accumulated.";
+
+    private final File checkpointFile;
+
+    /**
+     * Counts of the completed files, accumulated by BatchLoading.
+     */
+    private final Counts accumulatedCounts;
+
+    /**
+     *  A checkpoint kept in a file.
+     * @param checkpointFile the checkpoint file.
+     * @param accumulatedCounts Counts accumulating the completed files.
+     */
+    public LoadCheckpoint(final File checkpointFile,
+                          final Counts accumulatedCounts) {
+        this.checkpointFile = checkpointFile;
+        this.accumulatedCounts = accumulatedCounts;
+    }
+
+    /**
+     *  Record the last committed record of a file being loaded.
+     * @param fileCount the Counts of the file, at its last committed record.
+     */
+    public void committed(final Counts fileCount) {
+        this.write(fileCount, false);
+    }
+
+    /**
+     *  Record a file as completely loaded,
+     * its Counts already in the accumulated Counts.
+     * @param fileCount the Counts of the file.
+     */
+    public void fileDone(final Counts fileCount) {
+        this.write(fileCount, true);
+    }
+
+    /**
+     *  Remove the checkpoint, once the whole load is complete.
+     */
+    public void clear() {
+        if (this.checkpointFile.exists() && !this.checkpointFile.delete()) {
+            log.warn("==*!!*== could not remove checkpoint "
+                    + this.checkpointFile);
+        }
+    }
+
+    private void write(final Counts fileCount, final boolean done) {
+
+        final Properties props = new Properties();
+        props.setProperty(FILE_NAME, fileCount.getFileName());
+        props.setProperty(REC_NUM, Integer.toString(fileCount.getRecNum()));
+        props.setProperty(FILE_DONE, Boolean.toString(done));
+        fileCount.store(props, FILE_COUNTS);
+        this.accumulatedCounts.store(props, ACCUMULATED_COUNTS);
+
+        final File temp = new File(this.checkpointFile.getPath() + ".tmp");
+        try {
+            final FileOutputStream out = new FileOutputStream(temp);
+            try {
+                props.store(out, "batch load checkpoint");
+                out.getFD().sync();
+            } finally {
+                out.close();
+            }
+            if (!temp.renameTo(this.checkpointFile)) {
+                // renameTo does not replace an existing file everywhere
+                this.checkpointFile.delete();
+                if (!temp.renameTo(this.checkpointFile)) {
+                    throw new IOException("cannot rename " + temp);
+                }
+            }
+        } catch (IOException ex) {
+            // the load goes on, only resuming is affected
+            log.error("==*!!*== checkpoint not written at ["
+                    + fileCount.getFileName() + ":"
+                    + fileCount.getRecNum() + "]", ex);
+        }
+    }
+
+    /**
+     *  Read a checkpoint file.
+     * @param checkpointFile the checkpoint file.
+     * @return the checkpoint, or null if there is none.
+     * @throws IOException if the checkpoint cannot be read.
+     */
+    public static Resume read(final File checkpointFile) throws IOException {
+
+        if (!checkpointFile.isFile()) {
+            return null;
+        }
+        final Properties props = new Properties();
+        final InputStream in = new FileInputStream(checkpointFile);
+        try {
+            props.load(in);
+        } finally {
+            in.close();
+        }
+        return new Resume(props.getProperty(FILE_NAME),
+                          Integer.parseInt(props.getProperty(REC_NUM)),
+                          Boolean.parseBoolean(props.getProperty(FILE_DONE)),
+                          Counts.load(props, FILE_COUNTS),
+                          Counts.load(props, ACCUMULATED_COUNTS));
+    }
+
+    /**
+     *  Where a resumed load starts.
+     */
+    public static final class Resume {
+
+        private final String fileName;
+
+        private final int recNum;
+
+        private final boolean fileDone;
+
+        private final Counts fileCounts;
+
+        private final Counts accumulatedCounts;
+
+        Resume(final String fileName,
+               final int recNum,
+               final boolean fileDone,
+               final Counts fileCounts,
+               final Counts accumulatedCounts) {
+            this.fileName = fileName;
+            this.recNum = recNum;
+            this.fileDone = fileDone;
+            this.fileCounts = fileCounts;
+            this.accumulatedCounts = accumulatedCounts;
+        }
+
+        /**
+         * @return the file of the checkpoint.
+         */
+        public String getFileName() {
+            return this.fileName;
+        }
+
+        /**
+         * @return the last committed record number of the file.
+         */
+        public int getRecNum() {
+            return this.recNum;
+        }
+
+        /**
+         * @return whether the file was completely loaded.
+         */
+        public boolean isFileDone() {
+            return this.fileDone;
+        }
+
+        /**
+         * @return the Counts of the file up to the checkpoint.
+         */
+        public Counts getFileCounts() {
+            return this.fileCounts;
+        }
+
+        /**
+         * @return the Counts accumulated over the completed files.
+         */
+        public Counts getAccumulatedCounts() {
+            return this.accumulatedCounts;
+        }
+    }
+}
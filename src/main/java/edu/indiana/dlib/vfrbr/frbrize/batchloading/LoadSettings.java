@@ -0,0 +1,126 @@
+/**
+ * Copyright 2009-2011, Trustees of Indiana University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *   Neither the name of Indiana University nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.indiana.dlib.vfrbr.frbrize.batchloading;
+
+import java.io.InputStream;
+import java.util.Properties;
+import org.apache.log4j.Logger;
+
+/**
+ *  Access to the batchLoading.properties tuning settings.
+ * A System property of the same name over-rides the properties file,
+ * as with marc_data_path.
+ */
+public final class LoadSettings {
+
+    private static final Logger log = Logger.getLogger(LoadSettings.class);
+
+    private static final Properties batchLoadingProps = loadProps();
+
+    private LoadSettings() {
+    }
+
+    /**
+     *  Get a setting as a String.
+     * @param name setting name.
+     * @param defaultValue value if the setting is not present.
+     * @return the setting value.
+     */
+    public static String getString(final String name,
+                                   final String defaultValue) {
+
+        String value = System.getProperty(name);
+        if (value == null || value.trim().isEmpty()) {
+            value = batchLoadingProps.getProperty(name);
+        }
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        return value.trim();
+    }
+
+    /**
+     *  Get a setting as an int.
+     * @param name setting name.
+     * @param defaultValue value if the setting is not present or not a number.
+     * @return the setting value.
+     */
+    public static int getInt(final String name, final int defaultValue) {
+
+        final String value = getString(name, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException ex) {
+            log.warn("==*!!*== non-numeric setting " + name + ": " + value
+                    + ", using " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    /**
+     *  Get a setting as a boolean.
+     * @param name setting name.
+     * @param defaultValue value if the setting is not present.
+     * @return the setting value.
+     */
+    public static boolean getBoolean(final String name,
+                                     final boolean defaultValue) {
+
+        final String value = getString(name, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        return Boolean.parseBoolean(value);
+    }
+
+    private static Properties loadProps() {
+
+        final Properties props = new Properties();
+        final InputStream inStream =
+                Thread.currentThread().getContextClassLoader().
+                getResourceAsStream("batchLoading.properties");
+        if (inStream == null) {
+            log.error("==*!!*== Can't load batchLoading.properties.");
+        } else {
+            try {
+                props.load(inStream);
+                inStream.close();
+            } catch (Exception ex) {
+                log.error("==*!!*== load failed for batchLoading.properties.",
+                          ex);
+            }
+        }
+        return props;
+    }
+}
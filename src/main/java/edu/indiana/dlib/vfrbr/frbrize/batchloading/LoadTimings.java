@@ -0,0 +1,288 @@
+/**
+ * Copyright 2009-2011, Trustees of Indiana University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *   Neither the name of Indiana University nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.indiana.dlib.vfrbr.frbrize.batchloading;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ *  Where the time of a load goes: a LatencyHistogram per pass of
+ * MarcRecordHandler.frbrizeRecord, and of the authority lookups, DAO
+ * queries, flushes and commits made for the records, with the
+ * timing_slowest_records slowest records.
+ * <p>
+ * Each Counts holds its LoadTimings, merged and reported along with its
+ * counts.  MarcRecordHandler binds the timings of its Counts to the
+ * frbrizing thread for the record, so code without the Counts at hand,
+ * such as the DAO queries of the caches, times itself with start() and
+ * stop().  Time spent on other threads, e.g. authority prefetches, is
+ * not recorded.
+ */
+public final class LoadTimings {
+
+    /**
+     * What is timed.
+     */
+    public enum Timer {
+
+        RECORD("record"),
+        RESPONSIBLE_PARTIES("responsibleParties pass"),
+        FIRST_MANIFESTATION("first manifestation pass"),
+        WORKS("works pass"),
+        FINAL_MANIFESTATION("final manifestation pass"),
+        FLUSH("flush"),
+        AUTHORITY_LOOKUP("authority lookup"),
+        DAO_QUERY("DAO query"),
+        COMMIT("commit");
+
+        private final String label;
+
+        private Timer(final String label) {
+            this.label = label;
+        }
+    }
+
+    private static final boolean ENABLED =
+            LoadSettings.getBoolean("timing_enabled", true);
+
+    private static final int SLOWEST =
+            Math.max(0, LoadSettings.getInt("timing_slowest_records", 10));
+
+    private static final ThreadLocal<LoadTimings> current =
+            new ThreadLocal<LoadTimings>();
+
+    private static final Timer[] TIMERS = Timer.values();
+
+    /**
+     *  A slow record, and the time of its passes.
+     */
+    private static final class SlowRecord {
+
+        private final String where;
+
+        private final long nanos;
+
+        private final long[] timerNanos;
+
+        private SlowRecord(final String where,
+                           final long nanos,
+                           final long[] timerNanos) {
+            this.where = where;
+            this.nanos = nanos;
+            this.timerNanos = timerNanos;
+        }
+    }
+
+    private static final Comparator<SlowRecord> FASTEST_FIRST =
+            new Comparator<SlowRecord>() {
+
+                @Override
+                public int compare(final SlowRecord left,
+                                   final SlowRecord right) {
+                    return (left.nanos < right.nanos) ? -1
+                            : ((left.nanos == right.nanos) ? 0 : 1);
+                }
+            };
+
+    private final LatencyHistogram[] histograms =
+            new LatencyHistogram[TIMERS.length];
+
+    /**
+     * Time of each timer within the current record.
+     */
+    private final long[] recordNanos = new long[TIMERS.length];
+
+    /**
+     * The slowest records, the fastest of them at the head.
+     */
+    private final PriorityQueue<SlowRecord> slowest =
+            new PriorityQueue<SlowRecord>(SLOWEST + 1, FASTEST_FIRST);
+
+    public LoadTimings() {
+        for (int idx = 0; idx < TIMERS.length; idx++) {
+            this.histograms[idx] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     *  Bind timings to the current thread, for start() and stop().
+     * @param timings the LoadTimings, or null to unbind.
+     * @return the LoadTimings bound before, or null.
+     */
+    static LoadTimings bind(final LoadTimings timings) {
+        final LoadTimings previous = current.get();
+        if (timings == null) {
+            current.remove();
+        } else {
+            current.set(timings);
+        }
+        return previous;
+    }
+
+    /**
+     * @return the start of a timing, for stop().
+     */
+    public static long start() {
+        return ENABLED ? System.nanoTime() : 0L;
+    }
+
+    /**
+     *  Record the time since start() into the timings bound to
+     * the current thread, if any.
+     * @param timer what was timed.
+     * @param start the result of start().
+     */
+    public static void stop(final Timer timer, final long start) {
+        if (ENABLED) {
+            final LoadTimings timings = current.get();
+            if (timings != null) {
+                timings.record(timer, System.nanoTime() - start);
+            }
+        }
+    }
+
+    /**
+     *  Record a time into these timings.
+     * @param timer what was timed.
+     * @param nanos the time it took.
+     */
+    public void record(final Timer timer, final long nanos) {
+        if (ENABLED) {
+            this.histograms[timer.ordinal()].record(nanos);
+            this.recordNanos[timer.ordinal()] += nanos;
+        }
+    }
+
+    /**
+     *  Begin timing a record, forgetting the times of the one before.
+     */
+    void startRecord() {
+        for (int idx = 0; idx < TIMERS.length; idx++) {
+            this.recordNanos[idx] = 0;
+        }
+    }
+
+    /**
+     *  Record the time of a whole record,
+     * keeping it if it is among the slowest.
+     * @param fileName the MARC file name.
+     * @param recNum the record number in the file.
+     * @param nanos the time of the record.
+     */
+    void endRecord(final String fileName,
+                   final int recNum,
+                   final long nanos) {
+        if (!ENABLED) {
+            return;
+        }
+        record(Timer.RECORD, nanos);
+        if (SLOWEST > 0
+                && (this.slowest.size() < SLOWEST
+                || this.slowest.peek().nanos < nanos)) {
+            this.slowest.add(new SlowRecord(fileName + ":" + recNum,
+                                            nanos,
+                                            this.recordNanos.clone()));
+            if (this.slowest.size() > SLOWEST) {
+                this.slowest.poll();
+            }
+        }
+    }
+
+    /**
+     *  Add the timings of another worker or file into these.
+     * @param other the LoadTimings to add.
+     */
+    public void merge(final LoadTimings other) {
+        for (int idx = 0; idx < TIMERS.length; idx++) {
+            this.histograms[idx].merge(other.histograms[idx]);
+        }
+        for (SlowRecord slow : other.slowest) {
+            this.slowest.add(slow);
+            if (this.slowest.size() > SLOWEST) {
+                this.slowest.poll();
+            }
+        }
+    }
+
+    /**
+     * @return report of the histograms and the slowest records,
+     *         empty when timing is off.
+     */
+    public String report() {
+        if (!ENABLED) {
+            return "";
+        }
+        final StringBuilder strBuff = new StringBuilder();
+        strBuff.append("\n  --- latencies");
+        for (Timer timer : TIMERS) {
+            strBuff.append("\n   ");
+            strBuff.append(pad(timer.label + ":", 27));
+            strBuff.append(this.histograms[timer.ordinal()]);
+        }
+
+        final List<SlowRecord> slowList =
+                new ArrayList<SlowRecord>(this.slowest);
+        Collections.sort(slowList, Collections.reverseOrder(FASTEST_FIRST));
+        if (!slowList.isEmpty()) {
+            strBuff.append("\n  --- slowest records");
+        }
+        for (SlowRecord slow : slowList) {
+            strBuff.append("\n   ");
+            strBuff.append(pad(slow.where, 27));
+            strBuff.append(LatencyHistogram.millis(slow.nanos / 1000L));
+            String separator = " (";
+            for (Timer timer : TIMERS) {
+                final long nanos = slow.timerNanos[timer.ordinal()];
+                if (timer != Timer.RECORD && nanos > 0) {
+                    strBuff.append(separator);
+                    strBuff.append(timer.label).append(' ');
+                    strBuff.append(LatencyHistogram.millis(nanos / 1000L));
+                    separator = ", ";
+                }
+            }
+            if (!" (".equals(separator)) {
+                strBuff.append(')');
+            }
+        }
+        return strBuff.toString();
+    }
+
+    private static String pad(final String str, final int width) {
+        final StringBuilder padded = new StringBuilder(str);
+        while (padded.length() < width) {
+            padded.append(' ');
+        }
+        return padded.toString();
+    }
+}
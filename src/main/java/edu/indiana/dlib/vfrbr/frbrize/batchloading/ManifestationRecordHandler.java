@@ -32,6 +32,7 @@ package edu.indiana.dlib.vfrbr.frbrize.batchloading;
 
 import edu.indiana.dlib.vfrbr.frbrize.batchloading.marcDecorators.MarcDataField;
 import edu.indiana.dlib.vfrbr.frbrize.batchloading.marcDecorators.MarcRecord;
+import edu.indiana.dlib.vfrbr.frbrize.batchloading.marcDecorators.SubfieldCodes;
 import edu.indiana.dlib.vfrbr.persist.dao.CorporateBodyDAO;
 import edu.indiana.dlib.vfrbr.persist.dao.DAOFactory;
 import edu.indiana.dlib.vfrbr.persist.dao.ManifestationDAO;
@@ -43,8 +44,6 @@ import edu.indiana.dlib.vfrbr.persist.relation.ManifestationToResponsibleParty;
 
 import java.util.List;
 
-import javax.persistence.EntityTransaction;
-
 import org.apache.log4j.Logger;
 
 /**
@@ -57,8 +56,16 @@ public class ManifestationRecordHandler {
     private static Logger log =
             Logger.getLogger(ManifestationRecordHandler.class);
 
+    private static final SubfieldCodes SUBFIELD_T =
+            SubfieldCodes.of("t");
+
+    private static final SubfieldCodes SUBFIELD_4 =
+            SubfieldCodes.of("4");
+
     private final DAOFactory daoFactory;
 
+    private final TransactionBatcher txBatcher;
+
     private final PersonDAO personDAO;
 
     private final CorporateBodyDAO corporateDAO;
@@ -69,6 +76,8 @@ public class ManifestationRecordHandler {
 
     private final FindPersisted findPersisted;
 
+    private final RelationWriter relationWriter;
+
     private int persListOrder = 0;
 
     private int corpListOrder = 0;
@@ -76,17 +85,19 @@ public class ManifestationRecordHandler {
     /**
      *  Instantiate a new ManifestationRecordHandler.
      * Initialize.
-     * @param daoFactory DAOFactory holding persitence context.
+     * @param txBatcher transactions of the persistence context.
      */
-    public ManifestationRecordHandler(final DAOFactory daoFactory,
+    public ManifestationRecordHandler(final TransactionBatcher txBatcher,
                                       final Counts count) {
 
-        this.daoFactory = daoFactory;
+        this.txBatcher = txBatcher;
+        this.daoFactory = txBatcher.getDAOFactory();
         this.manifDAO = daoFactory.newManifestationDAO();
         this.personDAO = daoFactory.newPersonDAO();
         this.corporateDAO = daoFactory.newCorporateBodyDAO();
         this.count = count;
-        this.findPersisted = new FindPersisted(count);
+        this.findPersisted = new FindPersisted(daoFactory, count);
+        this.relationWriter = new RelationWriter(daoFactory);
     }
 
     /**
@@ -103,9 +114,7 @@ public class ManifestationRecordHandler {
 
         final String bibRecGroup = marcBibRec.getGroup();
 
-        EntityTransaction entran =
-                this.daoFactory.getEntityManager().getTransaction();
-        entran.begin();
+        this.txBatcher.begin();
 
         if (log.isInfoEnabled()) {
             log.info("Handling linkages for manifestation \""
@@ -219,22 +228,18 @@ public class ManifestationRecordHandler {
 
         this.manifDAO.persist(recManif);
 
-        entran.commit();
-
-        entran = this.daoFactory.getEntityManager().getTransaction();
-        entran.begin();
+        this.txBatcher.commit();
 
         // persist data for report on manif with no works
         if (manifWorkCount == 0) {
 
-            this.manifDAO.reportManifNoWork(recManif,
-                                            marcBibRec.getControlNumber(),
-                                            marcBibRec.getGroup(),
-                                            count.getFileName(),
-                                            count.getRecNum());
+            this.txBatcher.report(ReportRow.manifNoWork(recManif,
+                    marcBibRec.getControlNumber(),
+                    marcBibRec.getGroup(),
+                    count.getFileName(),
+                    count.getRecNum()));
         }
 
-        entran.commit();
         this.count.incrementPersistedManifestations();
     }
 
@@ -253,9 +258,9 @@ public class ManifestationRecordHandler {
         for (MarcDataField personField :
                 marcBibRec.getDataFields("700")) {
             // and no |t and no |4(prf, cnd, lbt, lyr)
-            if (!personField.hasSubfields("t".toCharArray())) {
+            if (!personField.hasSubfields(SUBFIELD_T)) {
                 // and
-                if (personField.hasSubfields("4".toCharArray())) {
+                if (personField.hasSubfields(SUBFIELD_4)) {
                     // has value(s) for |4 (R)
                     for (String relatorCode : personField.getValueList('4')) {
 
@@ -332,9 +337,9 @@ public class ManifestationRecordHandler {
                 producedBy.setRelRole(Roles.getRelatorCodeName(relatorCode));
             }
 
-            // link source and target to relation
-            recManif.getHasProducerPersons().add(producedBy);
-            producerPerson.getIsProducerOfManifestations().add(producedBy);
+            // link source to relation, the target's is left unloaded
+            this.relationWriter.link(recManif.getHasProducerPersons(),
+                                     producedBy);
 
             if (log.isInfoEnabled()) {
                 log.info("    -- producer linked");
@@ -375,9 +380,9 @@ public class ManifestationRecordHandler {
                 producedBy.setRelRole(Roles.getRelatorCodeName(relatorCode));
             }
 
-            // link source and target to relation
-            recManif.getHasProducerCorporateBodies().add(producedBy);
-            producerCorp.getIsProducerOfManifestations().add(producedBy);
+            // link source to relation, the target's is left unloaded
+            this.relationWriter.link(recManif.getHasProducerCorporateBodies(),
+                                     producedBy);
 
             if (log.isInfoEnabled()) {
                 log.info("    -- producer linked");
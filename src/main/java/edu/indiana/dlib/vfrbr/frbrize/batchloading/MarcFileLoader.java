@@ -0,0 +1,380 @@
+/**
+ * Copyright 2009-2011, Trustees of Indiana University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *   Neither the name of Indiana University nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.indiana.dlib.vfrbr.frbrize.batchloading;
+
+import edu.indiana.dlib.vfrbr.frbrize.batchloading.marcDecorators.MarcCollection;
+import edu.indiana.dlib.vfrbr.frbrize.batchloading.marcDecorators.MarcOffsetIndex;
+import edu.indiana.dlib.vfrbr.frbrize.batchloading.marcDecorators.MarcRecord;
+import edu.indiana.dlib.vfrbr.persist.dao.DAOFactory;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import org.apache.log4j.Logger;
+
+import static com.google.common.collect.Sets.newHashSet;
+import static edu.indiana.dlib.vfrbr.frbrize.batchloading.marcDecorators.MarcRecord.OTHER;
+import static edu.indiana.dlib.vfrbr.frbrize.batchloading.marcDecorators.MarcRecord.RECORDING;
+import static edu.indiana.dlib.vfrbr.frbrize.batchloading.marcDecorators.MarcRecord.SCORE;
+
+/**
+ *  FRBRize all the records of a single MARC data file.
+ * Each loader has its own persistence context and Counts,
+ * so that several files can be loaded at once by a worker pool.
+ */
+public class MarcFileLoader implements Callable<Counts> {
+
+    private static final Logger log = Logger.getLogger(MarcFileLoader.class);
+
+    /**
+     * MarcRecord types that are frbrized, others are only registered.
+     */
+    private static final Set<String> FRBRIZED_TYPES =
+            Collections.unmodifiableSet(newHashSet(RECORDING, SCORE, OTHER));
+
+    /**
+     * Directory holding the MARC data file, with trailing separator.
+     */
+    private final String prefix;
+
+    /**
+     * Name of the MARC data file.
+     */
+    private final String fileName;
+
+    /**
+     * First record number to load, 0 for the whole file.
+     */
+    private final int fromRecNum;
+
+    /**
+     * Record number after the last to load.
+     */
+    private final int toRecNum;
+
+    /**
+     * Checkpoint of the load, or null.
+     */
+    private LoadCheckpoint checkpoint;
+
+    /**
+     * Counts of the file up to a resumed checkpoint, or null.
+     */
+    private Counts resumeCounts;
+
+    /**
+     * Content hashes of the last load, for an incremental load, or null.
+     */
+    private DeltaStore deltaStore;
+
+    /**
+     *  Instantiate a loader for one MARC data file.
+     * @param prefix directory of the MARC data file.
+     * @param fileName name of the MARC data file.
+     */
+    public MarcFileLoader(final String prefix,
+                          final String fileName) {
+        this(prefix, fileName, 0, 0);
+    }
+
+    /**
+     *  Instantiate a loader for a range of the records of a MARC data file,
+     * located by the file's MarcOffsetIndex.
+     * @param prefix directory of the MARC data file.
+     * @param fileName name of the MARC data file.
+     * @param fromRecNum first record number, from 1, or 0 for the whole file.
+     * @param toRecNum record number after the last.
+     */
+    public MarcFileLoader(final String prefix,
+                          final String fileName,
+                          final int fromRecNum,
+                          final int toRecNum) {
+        this.prefix = prefix;
+        this.fileName = fileName;
+        this.fromRecNum = fromRecNum;
+        this.toRecNum = toRecNum;
+    }
+
+    /**
+     *  Record the progress of the load in a checkpoint,
+     * after each committed batch.
+     * @param checkpoint the load checkpoint.
+     */
+    public void setCheckpoint(final LoadCheckpoint checkpoint) {
+        this.checkpoint = checkpoint;
+    }
+
+    /**
+     *  Continue the Counts of a resumed file.
+     * @param resumeCounts the Counts of the file up to the checkpoint.
+     */
+    public void setResumeCounts(final Counts resumeCounts) {
+        this.resumeCounts = resumeCounts;
+    }
+
+    /**
+     *  Load incrementally, frbrizing only the records new
+     * since they were last loaded.
+     * @param deltaStore content hashes of the loaded records.
+     */
+    public void setDeltaStore(final DeltaStore deltaStore) {
+        this.deltaStore = deltaStore;
+    }
+
+    /**
+     *  Load the MARC data file.
+     * @return the Counts for the file.
+     * @throws Exception if the file cannot be processed.
+     */
+    @Override
+    public Counts call() throws Exception {
+
+        final String records = (this.fromRecNum > 0)
+                ? " records " + this.fromRecNum + "-" + (this.toRecNum - 1)
+                : "";
+
+        log.warn(" ");
+        log.warn("======= Starting file " + this.fileName + records
+                + " =======");
+
+        System.out.println("======= Starting file " + this.fileName + records
+                + " =======");
+
+        if (LoadSettings.getBoolean("pipeline_enabled", false)) {
+            // staged read / identify / persist
+            final RecordPipeline pipeline =
+                    new RecordPipeline(this.prefix + this.fileName,
+                                       this.fileName,
+                                       this.fromRecNum,
+                                       this.toRecNum);
+            pipeline.setDeltaStore(this.deltaStore);
+            pipeline.setResumeCounts(this.resumeCounts);
+            return pipeline.load();
+        }
+
+        // a DAOFactory for the MARC data file, new or kept for the run
+        final DAOFactory daoFac = PersistenceRuntime.acquire();
+
+        final Counts count =
+                (null != this.resumeCounts) ? this.resumeCounts : new Counts();
+        count.setFileName(this.fileName);
+
+        final TransactionBatcher txBatcher =
+                new TransactionBatcher(daoFac, count);
+        txBatcher.setCheckpoint(this.checkpoint);
+        txBatcher.setDeltaStore(this.deltaStore);
+
+        try {
+            final MarcCollection marcRecs =
+                    openRecords(this.prefix + this.fileName,
+                                this.fromRecNum,
+                                this.toRecNum,
+                                count);
+
+            while (marcRecs.hasNext()) {
+                /*
+                 * ==> a(nother) MARC Record
+                 */
+                count.incrementRecNum();
+                final MarcRecord marcRec = marcRecs.next();
+
+                byte[] contentHash = null;
+                if (this.deltaStore != null) {
+                    contentHash = deltaHash(this.deltaStore, marcRec, count);
+                    if (contentHash == null) {
+                        // not added since last loaded
+                        continue;
+                    }
+                }
+
+                txBatcher.frbrize(marcRec, null, contentHash);
+
+            } // of all the records in this MARC data file
+
+            txBatcher.finish();
+
+            // report file counts
+            log.warn(count.reportCurrentFileCounts());
+
+        } catch (Exception ex) {
+            log.error("\n"
+                    + "============\n"
+                    + " At counts for file: " + count.getFileName() + "\n"
+                    + "   records procesed:        "
+                    + count.getRecNum() + "\n"
+                    + "============\n");
+            throw ex;
+        } finally {
+            // cycle the DAOFactory at the end of the file
+            PersistenceRuntime.release(daoFac);
+        }
+
+        return count;
+    }
+
+    /**
+     *  Open the records of a MARC data file, or a range of them,
+     * numbering them in count from their position in the file.
+     * @param path full path of the MARC data file.
+     * @param fromRecNum first record number, or 0 for the whole file.
+     * @param toRecNum record number after the last.
+     * @param count counts of the record number and skipped records.
+     * @return the records, of the load_record_types.
+     * @throws Exception if the file cannot be opened or indexed.
+     */
+    static MarcCollection openRecords(final String path,
+                                      final int fromRecNum,
+                                      final int toRecNum,
+                                      final Counts count) throws Exception {
+        if (fromRecNum <= 0) {
+            return new MarcCollection(path,
+                                      loadRecordTypes(),
+                                      skipCounter(count));
+        }
+        count.setRecNum(fromRecNum - 1);
+        return new MarcCollection(path,
+                                  MarcOffsetIndex.forFile(path),
+                                  fromRecNum,
+                                  toRecNum,
+                                  loadRecordTypes(),
+                                  skipCounter(count));
+    }
+
+    /**
+     *  Compare a record of an incremental load with the last load,
+     * counting it as added, changed or unchanged.
+     * <p>
+     * Only added records are frbrized.  Frbrizing a changed record again
+     * would leave the entities of its earlier version in place, and add
+     * a second manifestation with its links and report rows, so changed
+     * records are counted and logged, and their stored hash is kept so
+     * they are reported again by the next load.
+     * @param deltaStore content hashes of the loaded records.
+     * @param marcRec the MarcRecord.
+     * @param count counts to increment.
+     * @return the record content hash, to store once the record is
+     *         committed, or null if the record is not to be frbrized.
+     */
+    static byte[] deltaHash(final DeltaStore deltaStore,
+                            final MarcRecord marcRec,
+                            final Counts count) {
+
+        final byte[] contentHash = DeltaStore.contentHash(marcRec);
+        switch (deltaStore.compare(marcRec.getControlNumber(), contentHash)) {
+            case UNCHANGED:
+                count.incrementDeltaUnchanged();
+                return null;
+            case CHANGED:
+                count.incrementDeltaChanged();
+                log.warn("changed since loaded, not frbrized again: ["
+                        + count.getFileName() + ":" + count.getRecNum()
+                        + "] " + marcRec.getControlNumber());
+                return null;
+            default:
+                count.incrementDeltaAdded();
+                return contentHash;
+        }
+    }
+
+    /**
+     *  The leader/06 types of record to load, set by load_record_types.
+     * @return the type of record codes, or null to load all records.
+     */
+    static String loadRecordTypes() {
+        return LoadSettings.getString("load_record_types", null);
+    }
+
+    /**
+     *  Count records skipped for their type of record.
+     * @param count counts to increment.
+     * @return a SkipListener counting into count.
+     */
+    static MarcCollection.SkipListener skipCounter(final Counts count) {
+        return new MarcCollection.SkipListener() {
+
+            @Override
+            public void skipped(final char typeOfRecord) {
+                count.incrementSkipped(typeOfRecord);
+            }
+        };
+    }
+
+    /**
+     *  FRBRize a single MarcRecord, or register it if not a musical type.
+     * @param txBatcher transactions of the persistence context.
+     * @param count counts to increment.
+     * @param marcRec the MarcRecord.
+     * @param workFields already identified WorkFields, or null.
+     * @return false if processing the record failed.
+     */
+    static boolean frbrizeRecord(final TransactionBatcher txBatcher,
+                                 final Counts count,
+                                 final MarcRecord marcRec,
+                                 final List<WorkField> workFields) {
+
+        final MarcRecordHandler recHandler =
+                new MarcRecordHandler(txBatcher, count);
+
+        if (FRBRIZED_TYPES.contains(marcRec.getType())) {
+            /*
+             * ==> a MARC Record of type RECORDING or SCORE
+             */
+            log.info(" ");
+            log.info("===== "
+                    + marcRec.getType()
+                    + " Type Record ["
+                    + count.getFileName() + ":" + count.getRecNum()
+                    + "]"
+                    + " =====");
+            log.info("---- MARC Bib record:\n"
+                    + marcRec.toString()
+                    + "----");
+
+            return recHandler.frbrizeRecord(marcRec, workFields);
+
+        } else {
+            /*
+             * ==> a MARC Record of type OTHER
+             */
+            log.info(" ");
+            log.info("===== OTHER Type Record ["
+                    + count.getFileName() + ":" + count.getRecNum()
+                    + "]"
+                    + " =====");
+            log.info("---- MARC Bib record:\n"
+                    + marcRec.toString()
+                    + "----");
+
+            recHandler.registerOther(marcRec);
+            return true;
+        }
+    }
+}
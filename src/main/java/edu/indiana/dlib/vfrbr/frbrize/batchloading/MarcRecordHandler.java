@@ -30,6 +30,7 @@
  */
 package edu.indiana.dlib.vfrbr.frbrize.batchloading;
 
+import edu.indiana.dlib.vfrbr.frbrize.batchloading.LoadTimings.Timer;
 import edu.indiana.dlib.vfrbr.frbrize.batchloading.mappers.ManifestationMapper;
 import edu.indiana.dlib.vfrbr.frbrize.batchloading.marcDecorators.MarcDataField;
 import edu.indiana.dlib.vfrbr.frbrize.batchloading.marcDecorators.MarcRecord;
@@ -51,16 +52,22 @@ public class MarcRecordHandler {
      */
     private final DAOFactory daoFac;
 
+    /**
+     * Transactions of the persistence context.
+     */
+    private final TransactionBatcher txBatcher;
+
     private final Counts count;
 
     /**
      * Instantiate a new MarcRecordHandler.
      *
-     * @param daoFactory a DAOFactory holding the persistence context.
+     * @param txBatcher transactions of the persistence context.
      */
-    public MarcRecordHandler(DAOFactory daoFactory,
+    public MarcRecordHandler(TransactionBatcher txBatcher,
                              Counts count) {
-        this.daoFac = daoFactory;
+        this.txBatcher = txBatcher;
+        this.daoFac = txBatcher.getDAOFactory();
         this.count = count;
     }
 
@@ -85,22 +92,54 @@ public class MarcRecordHandler {
      */
     public final void frbrizeRecord(final MarcRecord marcRec) {
 
+        frbrizeRecord(marcRec, null);
+    }
+
+    /**
+     * FRBRize a MarcRecord whose work fields may already be identified.
+     *
+     * @param marcRec    the MarcRecord to process.
+     * @param workFields the identified WorkFields of the record,
+     *                   or null to identify them here.
+     * @return false if processing the record failed.
+     */
+    public final boolean frbrizeRecord(final MarcRecord marcRec,
+                                       final List<WorkField> workFields) {
+
         ManifestationJpa marcRecManif;
 
+        boolean succeeded = false;
+
         // how many works / manif
         int manifWorkCount = 0;
 
+        // time the passes into the timings of the counts
+        final LoadTimings timings = this.count.getTimings();
+        final LoadTimings outerTimings = LoadTimings.bind(timings);
+        timings.startRecord();
+        final long recordStart = LoadTimings.start();
+
         try {
 
+            long start = LoadTimings.start();
             responsiblePartiesPass(marcRec);
+            LoadTimings.stop(Timer.RESPONSIBLE_PARTIES, start);
 
+            start = LoadTimings.start();
             marcRecManif = firstManifestationPass(marcRec);
+            LoadTimings.stop(Timer.FIRST_MANIFESTATION, start);
 
-            manifWorkCount = worksPass(marcRec, marcRecManif);
+            start = LoadTimings.start();
+            manifWorkCount = worksPass(marcRec, marcRecManif, workFields);
+            LoadTimings.stop(Timer.WORKS, start);
 
+            start = LoadTimings.start();
             finalManifestationPass(marcRec,
                     marcRecManif,
                     manifWorkCount);
+            LoadTimings.stop(Timer.FINAL_MANIFESTATION, start);
+
+            succeeded = true;
 
         } catch (Exception ex) {
              ex.printStackTrace();
@@ -114,9 +153,27 @@ public class MarcRecordHandler {
                     ex);
 
         } finally {
-            this.daoFac.flushClearEntityManager();
-            this.daoFac.closeEntityManager();
+            try {
+                final boolean batching = this.txBatcher.isBatching();
+                // a failed unbatched record is rolled back, not flushed
+                if (succeeded || batching) {
+                    final long start = LoadTimings.start();
+                    this.daoFac.flushClearEntityManager();
+                    LoadTimings.stop(Timer.FLUSH, start);
+                }
+                if (!batching) {
+                    // a batch keeps its entity manager until batch commit
+                    this.txBatcher.recordDone(succeeded);
+                }
+            } finally {
+                timings.endRecord(this.count.getFileName(),
+                                  this.count.getRecNum(),
+                                  System.nanoTime() - recordStart);
+                LoadTimings.bind(outerTimings);
+            }
         }
+
+        return succeeded;
     }
 
     /**
@@ -141,13 +198,13 @@ public class MarcRecordHandler {
                 marcRec.getDataFields(corporateFieldTags);
 
         //for each person
-        final PersonFieldHandler persHandler = new PersonFieldHandler(this.daoFac, this.count);
+        final PersonFieldHandler persHandler = new PersonFieldHandler(this.txBatcher, this.count);
 
         for (MarcDataField personField : personFields) {
             persHandler.handlePersonField(personField, marcRec.getControlNumber());
         }
         // for each corporateBody
-        final CorporateFieldHandler corpHandler = new CorporateFieldHandler(this.daoFac, this.count);
+        final CorporateFieldHandler corpHandler = new CorporateFieldHandler(this.txBatcher, this.count);
         for (MarcDataField corpBodyField : corpBodyFields) {
             corpHandler.handleCorporateField(corpBodyField, marcRec.getControlNumber());
         }
@@ -183,22 +240,27 @@ public class MarcRecordHandler {
      *
      * @param marcRec      the MarcRecord.
      * @param marcRecManif the ManifestationJpa for this MarcRecord.
-     * @param count        counts to increment.
+     * @param identifiedWorkFields already identified WorkFields, or null.
      */
     private int worksPass(final MarcRecord marcRec,
-                          final ManifestationJpa marcRecManif) {
+                          final ManifestationJpa marcRecManif,
+                          final List<WorkField> identifiedWorkFields) {
 
         log.info("==== Start of work pass");
 
         int workCount = 0;
 
-        //find all work fields
-        if (log.isInfoEnabled()) {
-            log.info(" -- identifying workFields");
-        }
+        final List<WorkField> workFields;
+        if (identifiedWorkFields == null) {
+            //find all work fields
+            if (log.isInfoEnabled()) {
+                log.info(" -- identifying workFields");
+            }
 
-        final List<WorkField> workFields =
-                new WorkIdentification(marcRec).getAllWorkFields();
+            workFields = new WorkIdentification(marcRec).getAllWorkFields();
+        } else {
+            workFields = identifiedWorkFields;
+        }
 
         if (log.isInfoEnabled()) {
             log.info("  "
@@ -208,7 +270,7 @@ public class MarcRecordHandler {
 
         //process work fields
         final WorkFieldHandler workFieldHandler =
-                new WorkFieldHandler(this.daoFac,
+                new WorkFieldHandler(this.txBatcher,
                         marcRec,
                         marcRecManif,
                         this.count);
@@ -239,7 +301,7 @@ public class MarcRecordHandler {
         log.info("==== Start of second manifestation pass");
 
         final ManifestationRecordHandler manifRecHandler =
-                new ManifestationRecordHandler(this.daoFac,
+                new ManifestationRecordHandler(this.txBatcher,
                         this.count);
 
         manifRecHandler.handleManifestationRecord(marcBibRec,
@@ -0,0 +1,178 @@
+/**
+ * Copyright 2009-2011, Trustees of Indiana University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *   Neither the name of Indiana University nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.indiana.dlib.vfrbr.frbrize.batchloading;
+
+import edu.indiana.dlib.vfrbr.persist.dao.DAOFactory;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import org.apache.log4j.Logger;
+
+/**
+ *  Lifecycle of the DAOFactory persistence contexts of a batch load.
+ * <p>
+ * With persistence_lifecycle "file" (the default) every MARC data file,
+ * pipeline persist thread, or partition gets a new DAOFactory, whose
+ * EntityManagerFactory is closed when the file is done, as it always was.
+ * <p>
+ * With persistence_lifecycle "run" a released DAOFactory is kept, its
+ * EntityManager closed, and handed to the next file.  The
+ * EntityManagerFactory, with its metadata, connection pool and shared
+ * cache, is built once per concurrent loader for the whole run, and
+ * closed by shutdown() at the end.
+ * <p>
+ * Either way the time spent building DAOFactories is totalled,
+ * for comparing the two in the run report.
+ */
+public final class PersistenceRuntime {
+
+    private static final Logger log =
+            Logger.getLogger(PersistenceRuntime.class);
+
+    private static final boolean LONG_LIVED =
+            "run".equalsIgnoreCase(
+            LoadSettings.getString("persistence_lifecycle", "file"));
+
+    /**
+     * Idle DAOFactories of a long-lived run.
+     */
+    private static final LinkedList<DAOFactory> idle =
+            new LinkedList<DAOFactory>();
+
+    /**
+     * All DAOFactories of a long-lived run, for shutdown.
+     */
+    private static final List<DAOFactory> created =
+            new ArrayList<DAOFactory>();
+
+    private static int factoriesBuilt = 0;
+
+    private static long buildMillis = 0;
+
+    private static int leases = 0;
+
+    private PersistenceRuntime() {
+    }
+
+    /**
+     * @return whether DAOFactories are kept for the whole run.
+     */
+    public static boolean isLongLived() {
+        return LONG_LIVED;
+    }
+
+    /**
+     *  Get a DAOFactory for one loader thread,
+     * an idle one of a long-lived run, or a new one.
+     * @return the DAOFactory.
+     */
+    public static DAOFactory acquire() {
+
+        synchronized (idle) {
+            leases++;
+            if (LONG_LIVED && !idle.isEmpty()) {
+                return idle.removeFirst();
+            }
+        }
+
+        final long start = System.currentTimeMillis();
+        final DAOFactory daoFac = new DAOFactory();
+        // the factory and its connections are up once a manager is open
+        daoFac.getEntityManager();
+        final long millis = System.currentTimeMillis() - start;
+
+        synchronized (idle) {
+            factoriesBuilt++;
+            buildMillis += millis;
+            if (LONG_LIVED) {
+                created.add(daoFac);
+            }
+        }
+        log.info("==== DAOFactory built in " + millis + " ms");
+
+        return daoFac;
+    }
+
+    /**
+     *  Release a DAOFactory when its loader is done.
+     * Its EntityManager is closed, and its EntityManagerFactory too
+     * unless the run is long-lived.
+     * @param daoFac the DAOFactory from acquire().
+     */
+    public static void release(final DAOFactory daoFac) {
+
+        daoFac.closeEntityManager();
+        if (LONG_LIVED) {
+            synchronized (idle) {
+                idle.addFirst(daoFac);
+            }
+        } else {
+            daoFac.getEntityManagerFactory().close();
+        }
+    }
+
+    /**
+     *  Close the DAOFactories of a long-lived run, at the end of the run.
+     */
+    public static void shutdown() {
+
+        synchronized (idle) {
+            for (DAOFactory daoFac : created) {
+                try {
+                    daoFac.closeEntityManager();
+                    daoFac.getEntityManagerFactory().close();
+                } catch (RuntimeException ex) {
+                    log.error("Error closing DAOFactory", ex);
+                }
+            }
+            created.clear();
+            idle.clear();
+        }
+    }
+
+    /**
+     * @return report of the DAOFactories built and the time it took.
+     */
+    public static String report() {
+
+        synchronized (idle) {
+            return "\n============\n"
+                    + " Persistence lifecycle: "
+                    + (LONG_LIVED ? "run" : "file") + "\n"
+                    + "   persistence contexts used: " + leases + "\n"
+                    + "   DAOFactories built:        " + factoriesBuilt + "\n"
+                    + "   total build ms:            " + buildMillis + "\n"
+                    + "   mean build ms:             "
+                    + ((factoriesBuilt == 0) ? 0 : buildMillis / factoriesBuilt)
+                    + "\n============\n";
+        }
+    }
+}
@@ -38,8 +38,6 @@ import edu.indiana.dlib.vfrbr.persist.dao.PersonDAO;
 import edu.indiana.dlib.vfrbr.persist.entity.responsibleparty.PersonJpa;
 import org.apache.log4j.Logger;
 
-import javax.persistence.EntityTransaction;
-
 /**
  * Handler for person field of a MarcRecord.
  */
@@ -49,6 +47,8 @@ public class PersonFieldHandler {
 
     final private DAOFactory daoFactory;
 
+    final private TransactionBatcher txBatcher;
+
     final private PersonDAO personDAO;
 
     final private Counts count;
@@ -58,15 +58,16 @@ public class PersonFieldHandler {
     /**
      * Instantiate a new PersonFieldHander.
      *
-     * @param daoFactory a DAOFactory holding the persistence context.
+     * @param txBatcher transactions of the persistence context.
      */
-    public PersonFieldHandler(final DAOFactory daoFactory,
+    public PersonFieldHandler(final TransactionBatcher txBatcher,
                               final Counts count) {
 
-        this.daoFactory = daoFactory;
+        this.txBatcher = txBatcher;
+        this.daoFactory = txBatcher.getDAOFactory();
         this.personDAO = daoFactory.newPersonDAO();
         this.count = count;
-        this.findPersisted = new FindPersisted(count);
+        this.findPersisted = new FindPersisted(daoFactory, count);
     }
 
     /**
@@ -78,74 +79,102 @@ public class PersonFieldHandler {
     public final void handlePersonField(final MarcDataField personField,
                                         final String bibRecIdent) {
 
+        final String persAuthIdent = PersonMapper.getAuthIdent(personField);
+
         if (log.isInfoEnabled()) {
-            log.info("Handling person: "
-                    + PersonMapper.getAuthIdent(personField));
+            log.info("Handling person: " + persAuthIdent);
         }
 
-        if (isAlreadyLoadedPerson(personField)) {
-            // already loaded
-            // and said so below, by case
-        } else {
-            final PersonMapper personMapper = new PersonMapper();
-            final AuthorityHandler authHandler = new AuthorityHandler();
-            final MarcRecord authRecord = authHandler.getAuthorityPersonRecord(personField);
-            if (authRecord == null) {
-                // no authority record, build from MarcDataField
-                EntityTransaction entran = this.daoFactory.getEntityManager().getTransaction();
-                entran.begin();
-
-                if (log.isInfoEnabled()) {
-                    log.info("  -- creating from the bib field.");
-                }
-
-                final PersonJpa person = this.personDAO.getNew();
-
-                personMapper.mapFromBibField(personField, person);
-                this.personDAO.persist(person);
-
-                entran.commit();
-                entran = this.daoFactory.getEntityManager().getTransaction();
-                entran.begin();
+        // already persisted, e.g. by an earlier record, needs no lookup
+        if (null != this.findPersisted.person(personField,
+                                              "referenced",
+                                              this.personDAO)) {
+            return;
+        }
 
-                this.personDAO.reportG2Bib(person,
-                        bibRecIdent,
-                        personField.getTag(),
-                        personField.toString());
-                entran.commit();
-                this.count.incrementPersistedPersons();
+        /*
+         * resolve the authority record first, the lookup may wait for a
+         * fetch, which must not happen under the identity monitor
+         */
+        final PersonMapper personMapper = new PersonMapper();
+        final MarcRecord authRecord =
+                new AuthorityHandler().getAuthorityPersonRecord(personField);
+        String lockIdent = persAuthIdent;
+        if (authRecord != null) {
+            final PersonJpa authPerson = new PersonJpa();
+            personMapper.mapFromAuthRecord(authRecord, authPerson);
+            lockIdent = authPerson.getAuthIdent();
+        }
 
+        /*
+         * check and create under the monitor of the resolved identity,
+         * so parallel workers don't both persist the same person,
+         * even from different headings of the same authority record
+         */
+        synchronized (IdentityLocks.forKey(IdentityLocks.PERSON,
+                                           lockIdent)) {
+            if (isAlreadyLoadedPerson(personField, authRecord, lockIdent)) {
+                // already loaded
+                // and said so below, by case
             } else {
-                // authority record, build from
-                EntityTransaction entran =
-                        this.daoFactory.getEntityManager().getTransaction();
-                entran.begin();
-
-                if (log.isInfoEnabled()) {
-                    log.info(
-                            "  -- creating from matching cached authority record.");
-                    log.info("---- MARC Auth record:\n"
-                            + authRecord.toString()
-                            + "----");
-                }
+                if (authRecord == null) {
+                    // no authority record, build from MarcDataField
+                    this.txBatcher.begin();
+
+                    if (log.isInfoEnabled()) {
+                        log.info("  -- creating from the bib field.");
+                    }
+
+                    final PersonJpa person = this.personDAO.getNew();
+
+                    personMapper.mapFromBibField(personField, person);
+                    this.personDAO.persist(person);
+
+                    this.txBatcher.commit();
+                    IdentityCache.PERSONS.persisted(persAuthIdent,
+                            person.getAuthIdent(),
+                            PersonMapper.getNormalName(personField),
+                            person.getId());
+                    this.txBatcher.report(ReportRow.g2Bib(person,
+                            bibRecIdent,
+                            personField.getTag(),
+                            personField.toString()));
+                    this.count.incrementPersistedPersons();
+
+                } else {
+                    // authority record, build from
+                    this.txBatcher.begin();
+
+                    if (log.isInfoEnabled()) {
+                        log.info(
+                                "  -- creating from matching cached authority record.");
+                        log.info("---- MARC Auth record:\n"
+                                + authRecord.toString()
+                                + "----");
+                    }
+
+                    if (log.isDebugEnabled()) {
+                        log.debug("     db person count before creating: "
+                                + this.personDAO.countAll());
+                    }
+
+                    final PersonJpa person = this.personDAO.getNew();
+
+                    personMapper.mapFromAuthRecord(authRecord, person);
+                    this.personDAO.persist(person);
+                    this.txBatcher.commit();
+                    IdentityCache.PERSONS.persistedFromAuthority(
+                            persAuthIdent,
+                            person.getAuthIdent(),
+                            person.getId());
+                    this.count.incrementPersistedPersons();
+
+                    if (log.isDebugEnabled()) {
+                        log.debug("     db person count after creating: "
+                                + this.personDAO.countAll());
+                    }
 
-                if (log.isDebugEnabled()) {
-                    log.debug("     db person count before creating: "
-                            + this.personDAO.countAll());
                 }
-
-                final PersonJpa person = this.personDAO.getNew();
-
-                personMapper.mapFromAuthRecord(authRecord, person);
-                this.personDAO.persist(person);
-                entran.commit();
-                this.count.incrementPersistedPersons();
-
-                if (log.isDebugEnabled()) {
-                    log.debug("     db person count after creating: "
-                            + this.personDAO.countAll());
-                }
-
             }
         }
     }
@@ -154,13 +183,21 @@ public class PersonFieldHandler {
      * Is the Person in a MarcDataField already persisted?
      *
      * @param personField the MarcDataField holding a Person.
+     * @param authRecord the authority record of the person, or null.
+     * @param authIdent the authIdent resolved from authRecord.
      * @return whether the person is already loaded.
      */
-    private boolean isAlreadyLoadedPerson(final MarcDataField personField) {
+    private boolean isAlreadyLoadedPerson(final MarcDataField personField,
+                                          final MarcRecord authRecord,
+                                          final String authIdent) {
 
         boolean alreadyLoaded = false;
 
-        if (null != this.findPersisted.person(personField,
+        if (authRecord != null
+                && null != this.findPersisted.personByAuthIdent(authIdent,
+                                                                this.personDAO)) {
+            alreadyLoaded = true;
+        } else if (null != this.findPersisted.person(personField,
                 "referenced",
                 this.personDAO)) {
             alreadyLoaded = true;
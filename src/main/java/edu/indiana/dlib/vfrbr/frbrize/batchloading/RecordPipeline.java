@@ -0,0 +1,562 @@
+/**
+ * Copyright 2009-2011, Trustees of Indiana University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *   Neither the name of Indiana University nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.indiana.dlib.vfrbr.frbrize.batchloading;
+
+import edu.indiana.dlib.vfrbr.frbrize.batchloading.marcDecorators.MarcCollection;
+import edu.indiana.dlib.vfrbr.frbrize.batchloading.marcDecorators.MarcRecord;
+import edu.indiana.dlib.vfrbr.persist.dao.DAOFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.log4j.Logger;
+
+/**
+ *  Staged producer/consumer loading of a single MARC data file.
+ * <ul>
+ * <li>read: one thread decodes MarcRecords into the decoded queue.</li>
+ * <li>identify: pipeline_identify_threads identify the WorkFields
+ *     of each record, into the identified queue.</li>
+ * <li>persist: pipeline_persist_threads, each with its own persistence
+ *     context and Counts, frbrize the identified records.</li>
+ * </ul>
+ * Both queues are bounded by pipeline_queue_size, so a slow stage
+ * holds back the stages before it.  Queue depths and the number of
+ * times each stage waited on a full or empty queue are logged
+ * every pipeline_report_seconds, and at the end of the file,
+ * to show which stage is the bottleneck.
+ */
+public class RecordPipeline {
+
+    private static final Logger log = Logger.getLogger(RecordPipeline.class);
+
+    /**
+     * Poll interval while waiting on a queue, to notice an abort.
+     */
+    private static final long WAIT_MILLIS = 500;
+
+    /**
+     * End of stream marker, one per consuming thread.
+     */
+    private static final PipelineRecord END = new PipelineRecord(0, null);
+
+    private final String path;
+
+    private final String fileName;
+
+    private final int identifyThreads;
+
+    private final int persistThreads;
+
+    private final int reportSeconds;
+
+    /**
+     * Start authority fetches for the headings of identified records.
+     */
+    private final boolean authPrefetch;
+
+    private final BlockingQueue<PipelineRecord> decodedQueue;
+
+    private final BlockingQueue<PipelineRecord> identifiedQueue;
+
+    /*
+     * stage waits: producer on a full queue, consumer on an empty queue
+     */
+    private final AtomicInteger decodedFullWaits = new AtomicInteger();
+
+    private final AtomicInteger decodedEmptyWaits = new AtomicInteger();
+
+    private final AtomicInteger identifiedFullWaits = new AtomicInteger();
+
+    private final AtomicInteger identifiedEmptyWaits = new AtomicInteger();
+
+    /**
+     * Set when a stage fails outside of record handling.
+     */
+    private volatile boolean aborted = false;
+
+    /**
+     * First record number to read, 0 for the whole file.
+     */
+    private final int fromRecNum;
+
+    /**
+     * Record number after the last to read.
+     */
+    private final int toRecNum;
+
+    /**
+     * Content hashes of the last load, for an incremental load, or null.
+     */
+    private DeltaStore deltaStore;
+
+    /**
+     * Counts of the file up to a resumed checkpoint, or null.
+     */
+    private Counts resumeCounts;
+
+    /**
+     * Records read by the read stage, skipped ones included.
+     */
+    private int recordsRead = 0;
+
+    /**
+     * Record number and skipped records of the read stage.
+     */
+    private final Counts readCount = new Counts();
+
+    /**
+     *  Instantiate a pipeline for one MARC data file,
+     * with the stage settings from batchLoading.properties.
+     * @param path full path of the MARC data file.
+     * @param fileName name of the MARC data file, for Counts.
+     */
+    public RecordPipeline(final String path, final String fileName) {
+        this(path, fileName, 0, 0);
+    }
+
+    /**
+     *  Instantiate a pipeline for a range of the records of a MARC data
+     * file, with the stage settings from batchLoading.properties.
+     * @param path full path of the MARC data file.
+     * @param fileName name of the MARC data file, for Counts.
+     * @param fromRecNum first record number, or 0 for the whole file.
+     * @param toRecNum record number after the last.
+     */
+    public RecordPipeline(final String path,
+                          final String fileName,
+                          final int fromRecNum,
+                          final int toRecNum) {
+        this.path = path;
+        this.fileName = fileName;
+        this.fromRecNum = fromRecNum;
+        this.toRecNum = toRecNum;
+        this.identifyThreads =
+                Math.max(1, LoadSettings.getInt("pipeline_identify_threads", 2));
+        this.persistThreads =
+                Math.max(1, LoadSettings.getInt("pipeline_persist_threads", 1));
+        this.reportSeconds =
+                LoadSettings.getInt("pipeline_report_seconds", 60);
+        this.authPrefetch =
+                LoadSettings.getBoolean("pipeline_auth_prefetch", false);
+
+        final int queueSize =
+                Math.max(1, LoadSettings.getInt("pipeline_queue_size", 256));
+        this.decodedQueue = new ArrayBlockingQueue<PipelineRecord>(queueSize);
+        this.identifiedQueue =
+                new ArrayBlockingQueue<PipelineRecord>(queueSize);
+    }
+
+    /**
+     *  Load incrementally, passing on only the records new
+     * since they were last loaded.
+     * @param deltaStore content hashes of the loaded records, or null.
+     */
+    public void setDeltaStore(final DeltaStore deltaStore) {
+        this.deltaStore = deltaStore;
+    }
+
+    /**
+     *  Continue the Counts of a resumed file.
+     * @param resumeCounts the Counts of the file up to the checkpoint,
+     *                     or null.
+     */
+    public void setResumeCounts(final Counts resumeCounts) {
+        this.resumeCounts = resumeCounts;
+    }
+
+    /**
+     *  Load the MARC data file through the pipeline stages.
+     * @return the Counts for the file, merged from the persist stage.
+     * @throws Exception if a stage fails.
+     */
+    public Counts load() throws Exception {
+
+        final ExecutorService stages =
+                Executors.newFixedThreadPool(
+                1 + this.identifyThreads + this.persistThreads);
+        ScheduledExecutorService reporter = null;
+
+        if (this.reportSeconds > 0) {
+            reporter = Executors.newSingleThreadScheduledExecutor();
+            reporter.scheduleAtFixedRate(new Runnable() {
+
+                @Override
+                public void run() {
+                    log.warn(reportQueueDepths());
+                }
+            }, this.reportSeconds, this.reportSeconds, TimeUnit.SECONDS);
+        }
+
+        final Counts count = new Counts();
+        count.setFileName(this.fileName);
+        if (null != this.resumeCounts) {
+            // the part of the file loaded before the checkpoint
+            count.merge(this.resumeCounts);
+        }
+
+        try {
+            final Future<Integer> reading = stages.submit(new ReadStage());
+
+            final List<Future<Object>> identifying =
+                    new ArrayList<Future<Object>>();
+            for (int idx = 0; idx < this.identifyThreads; idx++) {
+                identifying.add(stages.submit(new IdentifyStage()));
+            }
+
+            final List<Future<Counts>> persisting =
+                    new ArrayList<Future<Counts>>();
+            for (int idx = 0; idx < this.persistThreads; idx++) {
+                persisting.add(stages.submit(new PersistStage()));
+            }
+
+            Exception failure = null;
+
+            try {
+                this.recordsRead = reading.get();
+            } catch (ExecutionException ex) {
+                failure = asException(ex.getCause());
+            }
+            for (Future<Object> identify : identifying) {
+                try {
+                    identify.get();
+                } catch (ExecutionException ex) {
+                    failure = asException(ex.getCause());
+                }
+            }
+
+            // all identified, end the persist stage
+            for (int idx = 0; idx < this.persistThreads; idx++) {
+                put(this.identifiedQueue, END, this.identifiedFullWaits);
+            }
+
+            for (Future<Counts> persist : persisting) {
+                try {
+                    count.merge(persist.get());
+                } catch (ExecutionException ex) {
+                    failure = asException(ex.getCause());
+                }
+            }
+
+            count.merge(this.readCount);
+            count.setRecNum(this.recordsRead);
+
+            log.warn(reportQueueDepths());
+            log.warn(count.reportCurrentFileCounts());
+
+            if (failure != null) {
+                throw failure;
+            }
+
+        } finally {
+            if (reporter != null) {
+                reporter.shutdownNow();
+            }
+            stages.shutdownNow();
+        }
+
+        return count;
+    }
+
+    /**
+     *  Report the current queue depths and stage waits.
+     * @return String report.
+     */
+    public String reportQueueDepths() {
+        StringBuilder strBuff = new StringBuilder();
+
+        strBuff.append("\n------------\n");
+        strBuff.append(" Pipeline for file: ");
+        strBuff.append(this.fileName);
+        strBuff.append("\n   decoded queue depth:    ");
+        strBuff.append(this.decodedQueue.size());
+        strBuff.append("  (read waits on full: ");
+        strBuff.append(this.decodedFullWaits.get());
+        strBuff.append(", identify waits on empty: ");
+        strBuff.append(this.decodedEmptyWaits.get());
+        strBuff.append(")");
+        strBuff.append("\n   identified queue depth: ");
+        strBuff.append(this.identifiedQueue.size());
+        strBuff.append("  (identify waits on full: ");
+        strBuff.append(this.identifiedFullWaits.get());
+        strBuff.append(", persist waits on empty: ");
+        strBuff.append(this.identifiedEmptyWaits.get());
+        strBuff.append(")");
+        strBuff.append("\n------------\n");
+
+        return strBuff.toString();
+    }
+
+    /**
+     * @return the number of decoded records waiting to be identified.
+     */
+    public int getDecodedQueueDepth() {
+        return this.decodedQueue.size();
+    }
+
+    /**
+     * @return the number of identified records waiting to be persisted.
+     */
+    public int getIdentifiedQueueDepth() {
+        return this.identifiedQueue.size();
+    }
+
+    private static Exception asException(final Throwable cause) {
+        if (cause instanceof Exception) {
+            return (Exception) cause;
+        }
+        return new ExecutionException(cause);
+    }
+
+    /**
+     *  Put onto a bounded queue, waiting while it is full.
+     * @return false if the pipeline was aborted while waiting.
+     */
+    private boolean put(final BlockingQueue<PipelineRecord> queue,
+                        final PipelineRecord pipeRec,
+                        final AtomicInteger fullWaits)
+            throws InterruptedException {
+
+        if (queue.offer(pipeRec)) {
+            return true;
+        }
+        fullWaits.incrementAndGet();
+        while (!this.aborted) {
+            if (queue.offer(pipeRec, WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     *  Take from a bounded queue, waiting while it is empty.
+     * @return the next PipelineRecord, or END if the pipeline was aborted.
+     */
+    private PipelineRecord take(final BlockingQueue<PipelineRecord> queue,
+                                final AtomicInteger emptyWaits)
+            throws InterruptedException {
+
+        PipelineRecord pipeRec = queue.poll();
+        if (pipeRec != null) {
+            return pipeRec;
+        }
+        emptyWaits.incrementAndGet();
+        while (!this.aborted) {
+            pipeRec = queue.poll(WAIT_MILLIS, TimeUnit.MILLISECONDS);
+            if (pipeRec != null) {
+                return pipeRec;
+            }
+        }
+        return END;
+    }
+
+    /**
+     *  Read stage, decoding the MARC data file.
+     */
+    private class ReadStage implements Callable<Integer> {
+
+        @Override
+        public Integer call() throws Exception {
+            int recNum = 0;
+            try {
+                final MarcCollection marcRecs = MarcFileLoader.openRecords(
+                        path, fromRecNum, toRecNum, readCount);
+                while (marcRecs.hasNext()) {
+                    readCount.incrementRecNum();
+                    recNum = readCount.getRecNum();
+                    final PipelineRecord pipeRec =
+                            new PipelineRecord(recNum, marcRecs.next());
+                    if (deltaStore != null) {
+                        pipeRec.contentHash = MarcFileLoader.deltaHash(
+                                deltaStore, pipeRec.marcRec, readCount);
+                        if (pipeRec.contentHash == null) {
+                            // not added since last loaded
+                            continue;
+                        }
+                    }
+                    if (!put(decodedQueue, pipeRec, decodedFullWaits)) {
+                        break;
+                    }
+                }
+            } catch (Exception ex) {
+                aborted = true;
+                log.error("Error reading [" + fileName + ":" + recNum + "]",
+                          ex);
+                throw ex;
+            } catch (Error err) {
+                aborted = true;
+                log.error("Error reading [" + fileName + ":" + recNum + "]",
+                          err);
+                throw err;
+            } finally {
+                // end the identify stage
+                for (int idx = 0; idx < identifyThreads && !aborted; idx++) {
+                    put(decodedQueue, END, decodedFullWaits);
+                }
+            }
+            return readCount.getRecNum();
+        }
+    }
+
+    /**
+     *  Identify stage, identifying the WorkFields of decoded records.
+     */
+    private class IdentifyStage implements Callable<Object> {
+
+        @Override
+        public Object call() throws Exception {
+            final AuthorityHandler authHandler =
+                    authPrefetch ? new AuthorityHandler() : null;
+            int recNum = 0;
+            try {
+                PipelineRecord pipeRec = take(decodedQueue, decodedEmptyWaits);
+                while (pipeRec != END) {
+                    recNum = pipeRec.recNum;
+                    if (authHandler != null) {
+                        // fetched by the time the persist stage looks
+                        authHandler.prefetchHeadings(pipeRec.marcRec);
+                    }
+                    try {
+                        pipeRec.workFields =
+                                new WorkIdentification(pipeRec.marcRec).
+                                getAllWorkFields();
+                    } catch (Exception ex) {
+                        // leave it to the persist stage to identify and report
+                        log.warn("Work identification failed at ["
+                                + fileName + ":" + pipeRec.recNum + "]", ex);
+                        pipeRec.workFields = null;
+                    }
+                    if (!put(identifiedQueue, pipeRec, identifiedFullWaits)) {
+                        break;
+                    }
+                    pipeRec = take(decodedQueue, decodedEmptyWaits);
+                }
+            } catch (Exception ex) {
+                aborted = true;
+                log.error("Error identifying [" + fileName + ":" + recNum + "]",
+                          ex);
+                throw ex;
+            } catch (Error err) {
+                aborted = true;
+                log.error("Error identifying [" + fileName + ":" + recNum + "]",
+                          err);
+                throw err;
+            } finally {
+                if (aborted) {
+                    /*
+                     * wake a waiting persist thread at once; the persist
+                     * stage is otherwise ended once all identify threads
+                     * are done, so only an aborted pipeline posts here
+                     */
+                    identifiedQueue.offer(END);
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     *  Persist stage, frbrizing identified records
+     * in its own persistence context.
+     */
+    private class PersistStage implements Callable<Counts> {
+
+        @Override
+        public Counts call() throws Exception {
+            final Counts count = new Counts();
+            count.setFileName(fileName);
+
+            DAOFactory daoFac = null;
+            try {
+                daoFac = PersistenceRuntime.acquire();
+                final TransactionBatcher txBatcher =
+                        new TransactionBatcher(daoFac, count);
+                txBatcher.setDeltaStore(deltaStore);
+
+                PipelineRecord pipeRec =
+                        take(identifiedQueue, identifiedEmptyWaits);
+                while (pipeRec != END) {
+                    // the record number, for logs and report tables
+                    count.setRecNum(pipeRec.recNum);
+                    txBatcher.frbrize(pipeRec.marcRec,
+                                      pipeRec.workFields,
+                                      pipeRec.contentHash);
+                    pipeRec = take(identifiedQueue, identifiedEmptyWaits);
+                }
+                txBatcher.finish();
+            } catch (Exception ex) {
+                aborted = true;
+                log.error("Error persisting file " + fileName, ex);
+                throw ex;
+            } catch (Error err) {
+                aborted = true;
+                log.error("Error persisting file " + fileName, err);
+                throw err;
+            } finally {
+                if (daoFac != null) {
+                    PersistenceRuntime.release(daoFac);
+                }
+            }
+            return count;
+        }
+    }
+
+    /**
+     *  A MarcRecord passing through the pipeline.
+     */
+    private static class PipelineRecord {
+
+        private final int recNum;
+
+        private final MarcRecord marcRec;
+
+        private List<WorkField> workFields;
+
+        /**
+         * Content hash of an incremental load, or null.
+         */
+        private byte[] contentHash;
+
+        PipelineRecord(final int recNum, final MarcRecord marcRec) {
+            this.recNum = recNum;
+            this.marcRec = marcRec;
+        }
+    }
+}
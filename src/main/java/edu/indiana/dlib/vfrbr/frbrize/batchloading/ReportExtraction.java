@@ -0,0 +1,487 @@
+/**
+ * Copyright 2009-2011, Trustees of Indiana University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *   Neither the name of Indiana University nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.indiana.dlib.vfrbr.frbrize.batchloading;
+
+import org.apache.log4j.Logger;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ *  Extracts a set of ReportSpecs from the FRBRization report tables
+ * into CSV files, one per report.
+ * <p>
+ * The reports run in parallel, each on a connection of a pool of
+ * extract_connections, so with at least as many connections as reports
+ * the extraction takes as long as its slowest report.  Rows are
+ * streamed from the server and written through a buffer of
+ * extract_buffer_kb, gzip compressed when extract_gzip.
+ */
+public final class ReportExtraction {
+
+    private static final Logger log = Logger.getLogger(ReportExtraction.class);
+
+    private static final String CSV_SEPR = "\t";
+
+    private static final String LINE_END =
+            System.getProperty("line.separator");
+
+    private static final int CONNECTIONS =
+            Math.max(1, LoadSettings.getInt("extract_connections", 5));
+
+    private static final boolean GZIP =
+            LoadSettings.getBoolean("extract_gzip", false);
+
+    private static final int BUFFER_SIZE =
+            1024 * Math.max(8, LoadSettings.getInt("extract_buffer_kb", 64));
+
+    private final String csvPath;
+
+    private final List<ReportSpec> reports;
+
+    /**
+     * @param csvPath the directory of the CSV files.
+     * @param reports the reports to extract.
+     */
+    public ReportExtraction(final String csvPath,
+                            final List<ReportSpec> reports) {
+        this.csvPath = csvPath;
+        this.reports = reports;
+    }
+
+    /**
+     * What one report extraction came to.
+     */
+    private static final class Outcome {
+
+        private final ReportSpec report;
+
+        private final int lines;
+
+        private final long millis;
+
+        private final boolean ok;
+
+        private Outcome(final ReportSpec report,
+                        final int lines,
+                        final long millis,
+                        final boolean ok) {
+            this.report = report;
+            this.lines = lines;
+            this.millis = millis;
+            this.ok = ok;
+        }
+    }
+
+    public void testStartup() {
+
+        final Properties jdbcProps = loadProps("jdbc.properties");
+        log.info("-- jdbc properties loaded");
+
+        final Connection conn = connect(jdbcProps);
+        if (conn != null) {
+            log.info("-- connected");
+            log.info("   to db with "
+                    + testManifCount(conn)
+                    + " manifestations");
+            disconnect(conn);
+            log.info("-- disconnected");
+        }
+    }
+
+    public void extractReports() {
+
+        final long start = System.currentTimeMillis();
+
+        final Properties jdbcProps = loadProps("jdbc.properties");
+        log.info("-- jdbc properties loaded");
+
+        // open the connection pool
+        final int poolSize = Math.min(CONNECTIONS, this.reports.size());
+        final List<Connection> allConns = new ArrayList<Connection>();
+        for (int idx = 0; idx < poolSize; idx++) {
+            final Connection conn = connect(jdbcProps);
+            if (conn != null) {
+                allConns.add(conn);
+            }
+        }
+        if (allConns.isEmpty()) {
+            log.error("-- no connection, no reports extracted");
+            return;
+        }
+        final BlockingQueue<Connection> conns =
+                new ArrayBlockingQueue<Connection>(allConns.size(),
+                                                   false,
+                                                   allConns);
+        log.info("-- connected, " + allConns.size() + " connections");
+        log.info("   to db with "
+                + testManifCount(allConns.get(0))
+                + " manifestations");
+
+        final ExecutorService extractThreads =
+                Executors.newFixedThreadPool(allConns.size(),
+                new ThreadFactory() {
+
+                    private int threadNum = 0;
+
+                    @Override
+                    public synchronized Thread newThread(final Runnable run) {
+                        return new Thread(run, "report-extract-" + (++threadNum));
+                    }
+                });
+
+        final List<Future<Outcome>> outcomes =
+                new ArrayList<Future<Outcome>>();
+        try {
+            for (final ReportSpec report : this.reports) {
+                outcomes.add(extractThreads.submit(new Callable<Outcome>() {
+
+                    @Override
+                    public Outcome call() throws Exception {
+                        final Connection conn = conns.take();
+                        try {
+                            return extractReport(conn, report);
+                        } finally {
+                            conns.put(conn);
+                        }
+                    }
+                }));
+            }
+
+            // wait for them all, then log them in declaration order
+            log.info(" ------------------");
+            long slowest = 0;
+            for (Future<Outcome> future : outcomes) {
+                try {
+                    final Outcome outcome = future.get();
+                    log.info(" -- " + outcome.report.getName()
+                            + (outcome.ok ? ": " : " FAILED after ")
+                            + outcome.lines + " lines in "
+                            + outcome.millis + " ms");
+                    slowest = Math.max(slowest, outcome.millis);
+                } catch (ExecutionException ex) {
+                    log.error("Exception extracting a report.", ex.getCause());
+                }
+            }
+            log.info(" -- all reports in "
+                    + (System.currentTimeMillis() - start)
+                    + " ms, slowest " + slowest + " ms");
+
+        } catch (InterruptedException ex) {
+            log.warn("Interrupted waiting for the reports.");
+            Thread.currentThread().interrupt();
+        } finally {
+            extractThreads.shutdownNow();
+            for (Connection conn : allConns) {
+                disconnect(conn);
+            }
+            log.info("-- disconnected");
+        }
+    }
+
+    /**
+     *  Extract one report into its CSV file.
+     * Should swallow exceptions, log them, and report the failure.
+     */
+    private Outcome extractReport(final Connection conn,
+                                  final ReportSpec report) {
+
+        final long start = System.currentTimeMillis();
+        final String qryStrRepData = report.dataQuery();
+        final File file = new File(this.csvPath,
+                report.getFileName() + (GZIP ? ".gz" : ""));
+
+        PreparedStatement predStmt = null;
+        ResultSet rs = null;
+        Writer out = null;
+        int lineCount = 0;
+        boolean ok = false;
+
+        try {
+            // the total, only when the sampling depends on it
+            int totalRows = -1;
+            if (report.getSampling().needsTotal()) {
+                predStmt = conn.prepareStatement(report.countQuery());
+                rs = predStmt.executeQuery();
+                rs.next();
+                totalRows = rs.getInt(1);
+                rs.close();
+                predStmt.close();
+            }
+            final int modulus = report.getSampling().modulus(totalRows);
+
+            log.info(" -- " + report.getName() + ":"
+                    + "\n   -- sampling " + report.getSampling()
+                    + ((totalRows < 0) ? "" : " of total " + totalRows)
+                    + ", modulus " + modulus
+                    + "\n   -- columns: " + report.heading(", ")
+                    + "\n   -- query string: \n" + qryStrRepData + "---");
+
+            out = openCsv(file);
+            log.info("    -- writer opened on " + file);
+
+            // stream the sampled resultSet
+            predStmt = prepareStreaming(conn, qryStrRepData);
+            predStmt.setInt(1, modulus);
+            rs = predStmt.executeQuery();
+
+            while (rs.next()) {
+                report.writeRow(rs, out, CSV_SEPR);
+                out.write(LINE_END);
+                lineCount++;
+            }
+
+            out.close();
+            out = null;
+            ok = true;
+
+        } catch (SQLException ex) {
+            log.error("SQLException(s) in " + report.getName());
+            while (ex != null) {
+                log.error("  SQL State: " + ex.getSQLState());
+                log.error("       Code: " + ex.getErrorCode());
+                log.error("    Message: " + ex.getMessage());
+                log.error("  ---------");
+                ex = ex.getNextException();
+            }
+            log.error("----");
+
+        } catch (Exception ex) {
+            log.error("Exception writing " + file, ex);
+
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (Exception ex) {
+                    // ignore
+                }
+            }
+            if (rs != null) {
+                try {
+                    rs.close();
+                } catch (SQLException ex) {
+                    // ignore
+                }
+            }
+            if (predStmt != null) {
+                try {
+                    predStmt.close();
+                } catch (SQLException ex) {
+                    // ignore
+                }
+            }
+        }
+
+        return new Outcome(report,
+                           lineCount,
+                           System.currentTimeMillis() - start,
+                           ok);
+    }
+
+    /**
+     *  Open a buffered UTF-8 writer on a CSV file,
+     * gzip compressed when extract_gzip.
+     */
+    private Writer openCsv(final File file) throws Exception {
+
+        OutputStream stream = new FileOutputStream(file);
+        if (GZIP) {
+            stream = new GZIPOutputStream(stream, BUFFER_SIZE);
+        }
+        return new BufferedWriter(new OutputStreamWriter(stream, "UTF-8"),
+                                  BUFFER_SIZE);
+    }
+
+    /**
+     *  Prepare a query whose rows are streamed from the server one at a
+     * time, rather than the whole result read into memory first, as the
+     * MySQL driver does by default.
+     */
+    private PreparedStatement prepareStreaming(final Connection conn,
+                                               final String qryStr)
+            throws SQLException {
+
+        final PreparedStatement stmt =
+                conn.prepareStatement(qryStr,
+                                      ResultSet.TYPE_FORWARD_ONLY,
+                                      ResultSet.CONCUR_READ_ONLY);
+        // Integer.MIN_VALUE is the MySQL driver's row by row streaming
+        stmt.setFetchSize(Integer.MIN_VALUE);
+
+        return stmt;
+    }
+
+    /**
+     *  Load properties.
+     * Should swallow exceptions, log them, and return empty Properties.
+     * @param propName String name of properties to load.
+     * @return a Properties, of properties loaded, or empty if errors.
+     */
+    private Properties loadProps(final String propName) {
+
+        final Properties props = new Properties();
+
+        try {
+            final ClassLoader loader =
+                    Thread.currentThread().getContextClassLoader();
+            final InputStream inStream =
+                    loader.getResourceAsStream(propName);
+            if (inStream == null) {
+                throw new Exception("Null stream for " + propName);
+            } else {
+                props.load(inStream);
+            }
+        } catch (Exception ex) {
+            log.error("Error loading " + propName, ex);
+        }
+
+        return props;
+    }
+
+    /**
+     * Open an sql connection to the data source, or null if it can't.
+     */
+    private Connection connect(final Properties jdbcProps) {
+
+        Connection connec = null;
+
+        try {
+            // load the DriverManager
+            Class.forName("com.mysql.jdbc.Driver").newInstance();
+
+            // get the connection
+            String url =
+                    jdbcProps.getProperty("javax.persistence.jdbc.url");
+            String user =
+                    jdbcProps.getProperty("javax.persistence.jdbc.user");
+            String password =
+                    System.getProperty("javax.persistence.jdbc.password", jdbcProps.getProperty("javax.persistence.jdbc.password"));
+
+            log.info("-- connecting to: " + url);
+            log.info("              as: " + user);
+
+            StringBuilder param = new StringBuilder();
+            param.append(url);
+            param.append("&user=");
+            param.append(user);
+            param.append("&password=");
+            param.append(password);
+
+            connec = DriverManager.getConnection(param.toString());
+
+        } catch (SQLException ex) {
+            log.error("SQLException in connect(): " + ex.getMessage());
+            log.error("SQLState: " + ex.getSQLState());
+            log.error("VendorError: " + ex.getErrorCode());
+        } catch (Exception ex) {
+            log.error("Exception loading driver manager in connect(): ", ex);
+        }
+
+        return connec;
+    }
+
+    /**
+     * clean up
+     */
+    private void disconnect(final Connection conn) {
+
+        if (conn != null) {
+            try {
+                conn.close();
+            } catch (SQLException ex) {
+                log.error("SQLException in disconnect(): " + ex.getMessage());
+                log.error("SQLState: " + ex.getSQLState());
+                log.error("VendorError: " + ex.getErrorCode());
+            }
+        }
+    }
+
+    private int testManifCount(final Connection conn) {
+
+        Statement stmt = null;
+        ResultSet rs = null;
+        int count = -1;
+        String qryStr = ""
+                + "select count(*) \n"
+                + "from MANIF_ENT";
+        try {
+            stmt = conn.createStatement();
+            rs = stmt.executeQuery(qryStr);
+            rs.next();
+            count = rs.getInt(1);
+        } catch (SQLException ex) {
+            log.error("SQLException in testManifCount(): " + ex.getMessage());
+            log.error("SQLState: " + ex.getSQLState());
+            log.error("VendorError: " + ex.getErrorCode());
+        } finally {
+            if (rs != null) {
+                try {
+                    rs.close();
+                } catch (SQLException ex) {
+                    // ignore
+                }
+            }
+            if (stmt != null) {
+                try {
+                    stmt.close();
+                } catch (SQLException ex) {
+                    // ignore
+                }
+            }
+        }
+
+        return count;
+    }
+}
@@ -0,0 +1,253 @@
+/**
+ * Copyright 2009-2011, Trustees of Indiana University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *   Neither the name of Indiana University nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.indiana.dlib.vfrbr.frbrize.batchloading;
+
+import edu.indiana.dlib.vfrbr.persist.dao.DAOFactory;
+import edu.indiana.dlib.vfrbr.persist.entity.manifestation.ManifestationJpa;
+import edu.indiana.dlib.vfrbr.persist.entity.responsibleparty.CorporateBodyJpa;
+import edu.indiana.dlib.vfrbr.persist.entity.responsibleparty.PersonJpa;
+import edu.indiana.dlib.vfrbr.persist.entity.work.WorkJpa;
+import org.apache.log4j.Logger;
+
+/**
+ *  A row of a FRBRization report table (FIZ_REP_G2BIB, FIZ_REP_WORK,
+ * FIZ_REP_MANIFNOWORK), the arguments of a DAO report call.
+ * <p>
+ * A row is written either at once, in the persistence context of its
+ * entity, or by the ReportSink once the entity is committed.  In the
+ * latter case it is detached first, keeping only the entity id, and
+ * written with the entity as found in the persistence context of the
+ * sink.
+ */
+public abstract class ReportRow {
+
+    private static final Logger log = Logger.getLogger(ReportRow.class);
+
+    private final Class<?> entityClass;
+
+    /**
+     * The reported entity, until detached.
+     */
+    private Object entity;
+
+    /**
+     * The id of the reported entity, once detached.
+     */
+    private Object entityId;
+
+    private ReportRow(final Class<?> entityClass, final Object entity) {
+        this.entityClass = entityClass;
+        this.entity = entity;
+    }
+
+    /**
+     *  Row of FIZ_REP_G2BIB, for a person created from a bib field.
+     * @param person the new PersonJpa.
+     * @param bibRecIdent control number of the bib record.
+     * @param fieldTag tag of the bib field.
+     * @param fieldString the bib field.
+     * @return the ReportRow.
+     */
+    public static ReportRow g2Bib(final PersonJpa person,
+                                  final String bibRecIdent,
+                                  final String fieldTag,
+                                  final String fieldString) {
+
+        return new ReportRow(PersonJpa.class, person) {
+
+            @Override
+            Object idOf(final Object reported) {
+                return ((PersonJpa) reported).getId();
+            }
+
+            @Override
+            void write(final DAOFactory daoFac, final Object reported) {
+                daoFac.newPersonDAO().reportG2Bib((PersonJpa) reported,
+                                                  bibRecIdent,
+                                                  fieldTag,
+                                                  fieldString);
+            }
+        };
+    }
+
+    /**
+     *  Row of FIZ_REP_G2BIB, for a corporateBody created from a bib field.
+     * @param corpBody the new CorporateBodyJpa.
+     * @param bibRecIdent control number of the bib record.
+     * @param fieldTag tag of the bib field.
+     * @param fieldString the bib field.
+     * @return the ReportRow.
+     */
+    public static ReportRow g2Bib(final CorporateBodyJpa corpBody,
+                                  final String bibRecIdent,
+                                  final String fieldTag,
+                                  final String fieldString) {
+
+        return new ReportRow(CorporateBodyJpa.class, corpBody) {
+
+            @Override
+            Object idOf(final Object reported) {
+                return ((CorporateBodyJpa) reported).getId();
+            }
+
+            @Override
+            void write(final DAOFactory daoFac, final Object reported) {
+                daoFac.newCorporateBodyDAO().reportG2Bib(
+                        (CorporateBodyJpa) reported,
+                        bibRecIdent,
+                        fieldTag,
+                        fieldString);
+            }
+        };
+    }
+
+    /**
+     *  Row of FIZ_REP_WORK, for a new work.
+     * @param work the new WorkJpa.
+     * @param group group of the bib record.
+     * @param identAlgorithm the work identification algorithm.
+     * @param bibRecId control number of the bib record.
+     * @param fieldTag tag of the work field.
+     * @param workAuthRecId control number of the work authority record,
+     *                      or null.
+     * @param fileName the MARC data file name.
+     * @param recNum the record number in the file.
+     * @return the ReportRow.
+     */
+    public static ReportRow works(final WorkJpa work,
+                                  final String group,
+                                  final String identAlgorithm,
+                                  final String bibRecId,
+                                  final String fieldTag,
+                                  final String workAuthRecId,
+                                  final String fileName,
+                                  final int recNum) {
+
+        return new ReportRow(WorkJpa.class, work) {
+
+            @Override
+            Object idOf(final Object reported) {
+                return ((WorkJpa) reported).getId();
+            }
+
+            @Override
+            void write(final DAOFactory daoFac, final Object reported) {
+                daoFac.newWorkDAO().reportWorks((WorkJpa) reported,
+                                                group,
+                                                identAlgorithm,
+                                                bibRecId,
+                                                fieldTag,
+                                                workAuthRecId,
+                                                fileName,
+                                                recNum);
+            }
+        };
+    }
+
+    /**
+     *  Row of FIZ_REP_MANIFNOWORK, for a manifestation with no works.
+     * @param manif the new ManifestationJpa.
+     * @param bibRecId control number of the bib record.
+     * @param group group of the bib record.
+     * @param fileName the MARC data file name.
+     * @param recNum the record number in the file.
+     * @return the ReportRow.
+     */
+    public static ReportRow manifNoWork(final ManifestationJpa manif,
+                                        final String bibRecId,
+                                        final String group,
+                                        final String fileName,
+                                        final int recNum) {
+
+        return new ReportRow(ManifestationJpa.class, manif) {
+
+            @Override
+            Object idOf(final Object reported) {
+                return ((ManifestationJpa) reported).getId();
+            }
+
+            @Override
+            void write(final DAOFactory daoFac, final Object reported) {
+                daoFac.newManifestationDAO().reportManifNoWork(
+                        (ManifestationJpa) reported,
+                        bibRecId,
+                        group,
+                        fileName,
+                        recNum);
+            }
+        };
+    }
+
+    /**
+     * @param reported the reported entity.
+     * @return its id.
+     */
+    abstract Object idOf(Object reported);
+
+    /**
+     *  Make the DAO report call.
+     * @param daoFac DAOFactory of the persistence context to write in.
+     * @param reported the reported entity, of that persistence context.
+     */
+    abstract void write(DAOFactory daoFac, Object reported);
+
+    /**
+     *  Keep only the id of the entity, once it is committed.
+     */
+    final void detach() {
+        if (this.entity != null) {
+            this.entityId = idOf(this.entity);
+            this.entity = null;
+        }
+    }
+
+    /**
+     *  Write the row, inside an open transaction.
+     * @param daoFac DAOFactory of the persistence context to write in.
+     * @return false if the detached entity is no longer persisted.
+     */
+    final boolean write(final DAOFactory daoFac) {
+
+        Object reported = this.entity;
+        if (reported == null) {
+            reported = daoFac.getEntityManager().find(this.entityClass,
+                                                      this.entityId);
+            if (reported == null) {
+                log.warn("report row for missing "
+                        + this.entityClass.getSimpleName()
+                        + " " + this.entityId + " dropped");
+                return false;
+            }
+        }
+        write(daoFac, reported);
+        return true;
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ * Copyright 2009-2011, Trustees of Indiana University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *   Neither the name of Indiana University nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.indiana.dlib.vfrbr.frbrize.batchloading;
+
+/**
+ *  Which rows of a report are extracted.
+ * <p>
+ * A sampled row is one whose DB_ID hashes to 0 modulo round(1 / fraction),
+ * selected by the database in the report query.  Keyed on the row id,
+ * the sample is the same from one run to the next.
+ */
+public final class ReportSampling {
+
+    /**
+     * Where clause term of the sample, with the modulus as parameter.
+     * Hashing keeps the sample even when ids come in regular strides.
+     */
+    static final String PREDICATE = "MOD(CRC32(DB_ID), ?) = 0";
+
+    private final double fraction;
+
+    private final int minRows;
+
+    private ReportSampling(final double fraction, final int minRows) {
+        this.fraction = fraction;
+        this.minRows = minRows;
+    }
+
+    /**
+     * @return a policy extracting every row.
+     */
+    public static ReportSampling all() {
+        return new ReportSampling(1.0, 0);
+    }
+
+    /**
+     * @param fraction the share of rows to extract, 0 to 1.
+     * @return a policy extracting about fraction of the rows.
+     */
+    public static ReportSampling hashed(final double fraction) {
+        return new ReportSampling(fraction, 0);
+    }
+
+    /**
+     * @param fraction the share of rows to extract, 0 to 1.
+     * @param minRows below this many rows in all, extract every row.
+     * @return a policy extracting about fraction of the rows,
+     *         or all of them for a small report.
+     */
+    public static ReportSampling hashed(final double fraction,
+                                        final int minRows) {
+        return new ReportSampling(fraction, minRows);
+    }
+
+    /**
+     * @return whether modulus() needs the total number of rows,
+     *         costing a count query.
+     */
+    boolean needsTotal() {
+        return this.minRows > 0;
+    }
+
+    /**
+     * @param totalRows the rows in the report, or -1 if not counted.
+     * @return the modulus of the sample, 1 for every row.
+     */
+    int modulus(final int totalRows) {
+        if (totalRows >= 0 && totalRows < this.minRows) {
+            return 1;
+        }
+        return Math.max(1, (int) Math.round(1 / this.fraction));
+    }
+
+    @Override
+    public String toString() {
+        return (this.minRows > 0)
+                ? this.fraction + " of rows, all below " + this.minRows
+                : this.fraction + " of rows";
+    }
+}
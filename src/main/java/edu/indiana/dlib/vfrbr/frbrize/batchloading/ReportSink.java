@@ -0,0 +1,383 @@
+/**
+ * Copyright 2009-2011, Trustees of Indiana University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *   Neither the name of Indiana University nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.indiana.dlib.vfrbr.frbrize.batchloading;
+
+import edu.indiana.dlib.vfrbr.persist.dao.DAOFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import javax.persistence.EntityTransaction;
+import org.apache.log4j.Logger;
+
+/**
+ *  Writes the FRBRization report rows off the loading threads.
+ * <p>
+ * The TransactionBatcher hands over the report rows of each committed
+ * transaction.  A writer thread, with a persistence context of its own,
+ * writes them report_flush_rows rows (or report_flush_millis
+ * milliseconds) per transaction, instead of one transaction per row on
+ * the loading thread.  A flush that fails is retried one row per
+ * transaction, and the failing rows logged and dropped.
+ * <p>
+ * The queue holds report_queue_size rows; when the writer falls that
+ * far behind, the loading threads wait for it.  shutdown() writes the
+ * rows still queued, at the end of the run.  Rows still queued when the
+ * process dies are lost, and are not replayed by a --resume.
+ * <p>
+ * If the writer thread fails, the sink is marked dead, the rows it
+ * held are written from the failing thread, and later rows are written
+ * inline by the loading threads, each in a persistence context of its
+ * own.
+ */
+public final class ReportSink {
+
+    private static final Logger log = Logger.getLogger(ReportSink.class);
+
+    private static final boolean ENABLED =
+            LoadSettings.getBoolean("report_async", true);
+
+    private static final int FLUSH_ROWS =
+            Math.max(1, LoadSettings.getInt("report_flush_rows", 500));
+
+    private static final long FLUSH_MILLIS =
+            LoadSettings.getInt("report_flush_millis", 1000);
+
+    private static final int QUEUE_SIZE =
+            Math.max(FLUSH_ROWS, LoadSettings.getInt("report_queue_size", 10000));
+
+    /**
+     * Milliseconds to wait on a full queue before checking the writer.
+     */
+    private static final long OFFER_MILLIS = 1000;
+
+    /**
+     * Queued after the last row by shutdown().
+     */
+    private static final Object STOP = new Object();
+
+    private static final BlockingQueue<Object> queue =
+            new ArrayBlockingQueue<Object>(QUEUE_SIZE);
+
+    private static Thread writer;
+
+    /**
+     * Set when the writer thread failed, rows are then written inline.
+     */
+    private static volatile boolean dead = false;
+
+    private static long submitted = 0;
+
+    private static long written = 0;
+
+    private static long dropped = 0;
+
+    private static long flushes = 0;
+
+    private static long flushMillis = 0;
+
+    private static long waitMillis = 0;
+
+    private ReportSink() {
+    }
+
+    /**
+     * @return whether report rows are written by the sink,
+     *         the report_async setting.
+     */
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     *  Queue the report rows of a committed transaction.
+     * @param rows the ReportRows, already detached.
+     */
+    public static void submit(final List<ReportRow> rows) {
+
+        startWriter();
+
+        final long start = System.currentTimeMillis();
+        int queued = 0;
+        try {
+            while (queued < rows.size() && !dead) {
+                if (queue.offer(rows.get(queued),
+                                OFFER_MILLIS, TimeUnit.MILLISECONDS)) {
+                    queued++;
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            log.error("Interrupted queueing report rows", ex);
+        }
+        final long waited = System.currentTimeMillis() - start;
+
+        synchronized (ReportSink.class) {
+            submitted += rows.size();
+            waitMillis += waited;
+        }
+
+        if (dead) {
+            // the rows not queued, and any queued after the writer failed
+            final List<ReportRow> inline = new ArrayList<ReportRow>(
+                    rows.subList(queued, rows.size()));
+            inline.addAll(drainRows());
+            writeInline(inline);
+        }
+    }
+
+    private static synchronized void startWriter() {
+
+        if (writer == null && !dead) {
+            writer = new Thread(new Runnable() {
+
+                public void run() {
+                    writeRows();
+                }
+            }, "report-sink");
+            writer.setDaemon(true);
+            writer.start();
+        }
+    }
+
+    /**
+     *  Write all the queued rows, and stop the writer.
+     */
+    public static void shutdown() {
+
+        final Thread stopping;
+        synchronized (ReportSink.class) {
+            stopping = writer;
+            writer = null;
+        }
+        if (stopping == null) {
+            return;
+        }
+
+        try {
+            while (stopping.isAlive()
+                    && !queue.offer(STOP, OFFER_MILLIS, TimeUnit.MILLISECONDS)) {
+                // the writer is still taking rows
+            }
+            stopping.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            log.error("Interrupted writing the queued report rows", ex);
+        }
+        if (dead) {
+            writeInline(drainRows());
+        }
+    }
+
+    /**
+     *  The writer thread: take rows until STOP, flushing every FLUSH_ROWS
+     * rows, or FLUSH_MILLIS after the first row of a flush.
+     */
+    private static void writeRows() {
+
+        DAOFactory daoFac = null;
+        final List<ReportRow> rows = new ArrayList<ReportRow>(FLUSH_ROWS);
+        try {
+            daoFac = PersistenceRuntime.acquire();
+            boolean stopping = false;
+            while (!stopping) {
+                Object next = queue.take();
+                final long deadline = System.currentTimeMillis() + FLUSH_MILLIS;
+                while (next != null) {
+                    if (next == STOP) {
+                        stopping = true;
+                        break;
+                    }
+                    rows.add((ReportRow) next);
+                    if (rows.size() >= FLUSH_ROWS) {
+                        break;
+                    }
+                    next = queue.poll(
+                            Math.max(0, deadline - System.currentTimeMillis()),
+                            TimeUnit.MILLISECONDS);
+                }
+                if (!rows.isEmpty()) {
+                    flush(daoFac, rows);
+                    rows.clear();
+                }
+            }
+        } catch (InterruptedException ex) {
+            log.error("Report sink interrupted, "
+                    + (rows.size() + queue.size()) + " rows not written", ex);
+        } catch (Throwable th) {
+            log.error("Report sink writer failed, "
+                    + "writing report rows inline from now on", th);
+            synchronized (ReportSink.class) {
+                dead = true;
+                writer = null;
+            }
+            // the rows held, in a persistence context of their own
+            rows.addAll(drainRows());
+            writeInline(rows);
+        } finally {
+            if (daoFac != null) {
+                PersistenceRuntime.release(daoFac);
+            }
+        }
+    }
+
+    /**
+     * @return the rows queued, taken off the queue.
+     */
+    private static List<ReportRow> drainRows() {
+        final List<Object> queued = new ArrayList<Object>();
+        queue.drainTo(queued);
+        final List<ReportRow> rows = new ArrayList<ReportRow>(queued.size());
+        for (Object next : queued) {
+            if (next != STOP) {
+                rows.add((ReportRow) next);
+            }
+        }
+        return rows;
+    }
+
+    /**
+     *  Write rows on the calling thread, once the writer has failed.
+     * Rows that can't be written are counted as dropped.
+     */
+    private static void writeInline(final List<ReportRow> rows) {
+
+        if (rows.isEmpty()) {
+            return;
+        }
+        DAOFactory daoFac = null;
+        try {
+            daoFac = PersistenceRuntime.acquire();
+            flush(daoFac, rows);
+        } catch (Throwable th) {
+            log.error(rows.size() + " report rows could not be written inline"
+                    + " and were dropped", th);
+            synchronized (ReportSink.class) {
+                dropped += rows.size();
+            }
+        } finally {
+            if (daoFac != null) {
+                PersistenceRuntime.release(daoFac);
+            }
+        }
+    }
+
+    /**
+     *  Write rows in one transaction, or if that fails,
+     * one transaction per row.
+     */
+    private static void flush(final DAOFactory daoFac,
+                              final List<ReportRow> rows) {
+
+        final long start = System.currentTimeMillis();
+
+        int flushed = writeInTransaction(daoFac, rows);
+        int failed = 0;
+        if (flushed < 0) {
+            log.warn("Report flush of " + rows.size()
+                    + " rows failed, writing one row at a time");
+            flushed = 0;
+            for (ReportRow row : rows) {
+                final int rowWritten = writeInTransaction(
+                        daoFac, Collections.singletonList(row));
+                if (rowWritten < 0) {
+                    failed++;
+                } else {
+                    flushed += rowWritten;
+                }
+            }
+        }
+
+        synchronized (ReportSink.class) {
+            flushes++;
+            written += flushed;
+            dropped += rows.size() - flushed;
+            flushMillis += System.currentTimeMillis() - start;
+        }
+        if (failed > 0) {
+            log.error(failed + " report rows failed and were dropped");
+        }
+    }
+
+    /**
+     * @return rows written, or -1 if the transaction failed.
+     */
+    private static int writeInTransaction(final DAOFactory daoFac,
+                                          final List<ReportRow> rows) {
+        int rowsWritten = 0;
+        try {
+            final EntityTransaction entran =
+                    daoFac.getEntityManager().getTransaction();
+            entran.begin();
+            for (ReportRow row : rows) {
+                if (row.write(daoFac)) {
+                    rowsWritten++;
+                }
+            }
+            entran.commit();
+            return rowsWritten;
+        } catch (RuntimeException ex) {
+            log.error("Report row write failed", ex);
+            try {
+                final EntityTransaction entran =
+                        daoFac.getEntityManager().getTransaction();
+                if (entran.isActive()) {
+                    entran.rollback();
+                }
+            } catch (RuntimeException rollbackEx) {
+                log.error("Report row rollback failed", rollbackEx);
+            }
+            return -1;
+        } finally {
+            // the found entities are not needed again
+            daoFac.closeEntityManager();
+        }
+    }
+
+    /**
+     * @return report of the rows written and the time it took.
+     */
+    public static synchronized String report() {
+        return "\n------------\n"
+                + " Report rows"
+                + (ENABLED ? "" : " (written inline)")
+                + (dead ? " (writer failed, then written inline)" : "") + "\n"
+                + "   queued:                  " + submitted + "\n"
+                + "   written:                 " + written + "\n"
+                + "   dropped:                 " + dropped + "\n"
+                + "   flushes:                 " + flushes + "\n"
+                + "   total flush ms:          " + flushMillis + "\n"
+                + "   loader wait ms:          " + waitMillis
+                + "\n------------\n";
+    }
+}
@@ -0,0 +1,200 @@
+/**
+ * Copyright 2009-2011, Trustees of Indiana University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *   Neither the name of Indiana University nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.indiana.dlib.vfrbr.frbrize.batchloading;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ *  Declaration of one extracted report: the rows it is drawn from, the
+ * columns of its CSV lines, and its sampling.
+ * <p>
+ * Each CSV column is made of none, one or several of the selected
+ * columns, several joined by ':' as in MARC_FILENAME:MARC_RECNUM.
+ * A column made of none is left blank, for the reviewer to fill in.
+ */
+public final class ReportSpec {
+
+    private final String name;
+
+    private final String fileName;
+
+    private final String from;
+
+    private final String filter;
+
+    private final ReportSampling sampling;
+
+    /**
+     * CSV column labels, for the log.
+     */
+    private final List<String> labels = new ArrayList<String>();
+
+    /**
+     * Per CSV column, the 1-based positions of its selected columns.
+     */
+    private final List<int[]> columns = new ArrayList<int[]>();
+
+    /**
+     * Distinct selected columns, in order of first use.
+     */
+    private final List<String> selected = new ArrayList<String>();
+
+    /**
+     * @param name the report name, for the log.
+     * @param fileName the CSV file name.
+     * @param from the from clause of the report queries.
+     * @param filter the where clause of the report rows, or null for all.
+     * @param sampling the rows of the report extracted.
+     */
+    public ReportSpec(final String name,
+                      final String fileName,
+                      final String from,
+                      final String filter,
+                      final ReportSampling sampling) {
+        this.name = name;
+        this.fileName = fileName;
+        this.from = from;
+        this.filter = filter;
+        this.sampling = sampling;
+    }
+
+    /**
+     *  Add the next CSV column.
+     * @param label the column heading, for the log.
+     * @param sqlColumns the selected columns it is made of,
+     *        none for a blank column.
+     * @return this ReportSpec.
+     */
+    public ReportSpec column(final String label,
+                             final String... sqlColumns) {
+        final int[] positions = new int[sqlColumns.length];
+        for (int idx = 0; idx < sqlColumns.length; idx++) {
+            int pos = this.selected.indexOf(sqlColumns[idx]);
+            if (pos < 0) {
+                this.selected.add(sqlColumns[idx]);
+                pos = this.selected.size() - 1;
+            }
+            positions[idx] = pos + 1;
+        }
+        this.labels.add(label);
+        this.columns.add(positions);
+        return this;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public String getFileName() {
+        return this.fileName;
+    }
+
+    public ReportSampling getSampling() {
+        return this.sampling;
+    }
+
+    /**
+     * @return the count of the report rows, before sampling.
+     */
+    String countQuery() {
+        final StringBuilder qry = new StringBuilder();
+        qry.append("select count(*) \n");
+        qry.append("from ").append(this.from).append(" \n");
+        if (this.filter != null) {
+            qry.append("where ").append(this.filter).append(" \n");
+        }
+        return qry.toString();
+    }
+
+    /**
+     * @return the sampled report rows,
+     *         with the sample modulus as parameter 1.
+     */
+    String dataQuery() {
+        final StringBuilder qry = new StringBuilder();
+        qry.append("select \n");
+        for (int idx = 0; idx < this.selected.size(); idx++) {
+            qry.append("  ").append(this.selected.get(idx));
+            qry.append((idx < this.selected.size() - 1) ? ", \n" : " \n");
+        }
+        qry.append("from ").append(this.from).append(" \n");
+        if (this.filter != null) {
+            qry.append("where ").append(this.filter).append(" \n");
+            qry.append("  and ");
+        } else {
+            qry.append("where ");
+        }
+        qry.append(ReportSampling.PREDICATE).append(" \n");
+        return qry.toString();
+    }
+
+    /**
+     * @return the CSV column labels, separated by separator.
+     */
+    String heading(final String separator) {
+        final StringBuilder heading = new StringBuilder();
+        for (String label : this.labels) {
+            if (heading.length() > 0) {
+                heading.append(separator);
+            }
+            heading.append(label);
+        }
+        return heading.toString();
+    }
+
+    /**
+     *  Write the current row of the data query as a CSV line,
+     * without the line end.  Null values are written as "null".
+     */
+    void writeRow(final ResultSet rs,
+                  final Writer out,
+                  final String separator)
+            throws SQLException, IOException {
+
+        for (int col = 0; col < this.columns.size(); col++) {
+            if (col > 0) {
+                out.write(separator);
+            }
+            final int[] positions = this.columns.get(col);
+            for (int idx = 0; idx < positions.length; idx++) {
+                if (idx > 0) {
+                    out.write(':');
+                }
+                out.write(String.valueOf(rs.getString(positions[idx])));
+            }
+        }
+    }
+}
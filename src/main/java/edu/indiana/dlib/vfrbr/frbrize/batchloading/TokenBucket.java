@@ -0,0 +1,95 @@
+/**
+ * Copyright 2009-2011, Trustees of Indiana University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *   Neither the name of Indiana University nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.indiana.dlib.vfrbr.frbrize.batchloading;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  Token bucket rate limiter.
+ * Tokens accrue at a steady rate up to the bucket capacity, and each
+ * acquire takes one, waiting for it if the bucket is empty.  Waiting
+ * callers reserve their token in arrival order.
+ */
+public class TokenBucket {
+
+    /**
+     * Tokens per nanosecond, 0 for no limit.
+     */
+    private final double ratePerNano;
+
+    private final double capacity;
+
+    /**
+     * Tokens in the bucket, negative when reserved ahead.
+     */
+    private double tokens;
+
+    private long lastRefill;
+
+    /**
+     *  Instantiate a full bucket.
+     * @param perSecond tokens per second, 0 or less for no limit.
+     * @param capacity burst size, at least 1.
+     */
+    public TokenBucket(final double perSecond, final int capacity) {
+        this.ratePerNano = (perSecond > 0) ? perSecond / 1e9 : 0;
+        this.capacity = Math.max(1, capacity);
+        this.tokens = this.capacity;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     *  Take a token, waiting until one is due.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public void acquire() throws InterruptedException {
+
+        if (this.ratePerNano == 0) {
+            return;
+        }
+
+        final long waitNanos;
+        synchronized (this) {
+            final long now = System.nanoTime();
+            this.tokens = Math.min(this.capacity,
+                    this.tokens + (now - this.lastRefill) * this.ratePerNano);
+            this.lastRefill = now;
+
+            this.tokens -= 1;
+            waitNanos = (this.tokens >= 0)
+                    ? 0 : (long) (-this.tokens / this.ratePerNano);
+        }
+
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+}
@@ -0,0 +1,502 @@
+/**
+ * Copyright 2009-2011, Trustees of Indiana University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *   Neither the name of Indiana University nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.indiana.dlib.vfrbr.frbrize.batchloading;
+
+import edu.indiana.dlib.vfrbr.frbrize.batchloading.marcDecorators.MarcRecord;
+import edu.indiana.dlib.vfrbr.persist.dao.DAOFactory;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import javax.persistence.EntityTransaction;
+import org.apache.log4j.Logger;
+
+/**
+ *  Transaction demarcation for the field and record handlers.
+ * <p>
+ * With tx_batch_size of 1 (the default) every handler begin/commit
+ * is its own database transaction, as it always was.
+ * With a larger tx_batch_size the handler begin/commit pairs join
+ * one transaction, committed every tx_batch_size records or
+ * tx_batch_millis milliseconds, whichever comes first.
+ * <p>
+ * If a record fails inside a batch, the whole batch is rolled back,
+ * the counts are restored, and the records of the batch are replayed
+ * with one transaction per handler step, as in the unbatched load.
+ * The failing record is retried once that way, and if it fails again
+ * it is logged and skipped like any other failing record.
+ * <p>
+ * New entities of a batch only become visible to other persistence
+ * contexts at batch commit, so batching is for single-writer loads.
+ * <p>
+ * Report rows of the handlers are handed to the ReportSink once their
+ * transaction (step or batch) commits, and dropped with a rolled back
+ * batch, whose replay reports them again.
+ */
+public class TransactionBatcher {
+
+    private static final Logger log =
+            Logger.getLogger(TransactionBatcher.class);
+
+    private final DAOFactory daoFactory;
+
+    private final Counts count;
+
+    private final int batchSize;
+
+    private final long batchMillis;
+
+    /**
+     * Unbatched records an EntityManager serves before it is closed.
+     */
+    private final int emRecycleRecords;
+
+    /**
+     * Unbatched records since the EntityManager was last closed.
+     */
+    private int recordsSinceClose;
+
+    /**
+     * Records of the open batch, for replay.
+     */
+    private final List<BatchedRecord> batch = new ArrayList<BatchedRecord>();
+
+    /**
+     * Report rows of the open batch, for the ReportSink at commit.
+     */
+    private final List<ReportRow> batchReports = new ArrayList<ReportRow>();
+
+    /**
+     * Counts at the start of the open batch.
+     */
+    private Counts batchStartCounts;
+
+    /**
+     * Start of the open batch, System.currentTimeMillis().
+     */
+    private long batchStart;
+
+    /**
+     * Committing every handler step, unbatched or replaying.
+     */
+    private boolean perStep;
+
+    /**
+     * Told of the last committed record, or null.
+     */
+    private LoadCheckpoint checkpoint;
+
+    /**
+     * Content hashes of committed records, for incremental loads, or null.
+     */
+    private DeltaStore deltaStore;
+
+    /**
+     *  Instantiate for a persistence context,
+     * with tx_batch_size and tx_batch_millis from batchLoading.properties.
+     * @param daoFactory the DAOFactory holding the persistence context.
+     * @param count counts of the records being loaded.
+     */
+    public TransactionBatcher(final DAOFactory daoFactory,
+                              final Counts count) {
+
+        this(daoFactory,
+             count,
+             configuredBatchSize(),
+             LoadSettings.getInt("tx_batch_millis", 5000));
+    }
+
+    /**
+     *  The tx_batch_size setting, or 1 if more than one
+     * persistence context writes at once.
+     * @return records per transaction.
+     */
+    private static int configuredBatchSize() {
+
+        final int batchSize = LoadSettings.getInt("tx_batch_size", 1);
+
+        final boolean multiWriter =
+                LoadSettings.getInt("worker_threads", 1) > 1
+                || (LoadSettings.getBoolean("pipeline_enabled", false)
+                    && LoadSettings.getInt("pipeline_persist_threads", 1) > 1);
+
+        if (batchSize > 1 && multiWriter) {
+            log.warn("tx_batch_size " + batchSize
+                    + " ignored with more than one writer thread,"
+                    + " committing every handler step");
+            return 1;
+        }
+
+        return batchSize;
+    }
+
+    /**
+     *  Instantiate for a persistence context.
+     * @param daoFactory the DAOFactory holding the persistence context.
+     * @param count counts of the records being loaded.
+     * @param batchSize records per transaction, 1 for no batching.
+     * @param batchMillis maximum milliseconds a batch stays open.
+     */
+    public TransactionBatcher(final DAOFactory daoFactory,
+                              final Counts count,
+                              final int batchSize,
+                              final long batchMillis) {
+
+        this.daoFactory = daoFactory;
+        this.count = count;
+        this.batchSize = batchSize;
+        this.batchMillis = batchMillis;
+        this.perStep = (batchSize <= 1);
+        // only a long-lived run keeps an EntityManager across records
+        this.emRecycleRecords = PersistenceRuntime.isLongLived()
+                ? Math.max(1, LoadSettings.getInt("em_recycle_records", 1))
+                : 1;
+    }
+
+    /**
+     * @return the DAOFactory holding the persistence context.
+     */
+    public DAOFactory getDAOFactory() {
+        return this.daoFactory;
+    }
+
+    /**
+     *  Record progress in a checkpoint after each commit.
+     * @param checkpoint the load checkpoint, or null for none.
+     */
+    public void setCheckpoint(final LoadCheckpoint checkpoint) {
+        this.checkpoint = checkpoint;
+    }
+
+    /**
+     *  Record the content hash of each record once committed.
+     * @param deltaStore the store of an incremental load, or null.
+     */
+    public void setDeltaStore(final DeltaStore deltaStore) {
+        this.deltaStore = deltaStore;
+    }
+
+    /**
+     * @return whether records are currently joined into a batch.
+     */
+    public boolean isBatching() {
+        return !this.perStep;
+    }
+
+    /**
+     *  Begin a handler step.
+     * Unbatched, begins a new transaction,
+     * batched, joins the open batch transaction.
+     */
+    public void begin() {
+        final EntityTransaction entran =
+                this.daoFactory.getEntityManager().getTransaction();
+        if (this.perStep || !entran.isActive()) {
+            entran.begin();
+        }
+    }
+
+    /**
+     *  Commit a handler step.
+     * Unbatched, commits the transaction,
+     * batched, leaves it to the batch commit.
+     */
+    public void commit() {
+        if (this.perStep) {
+            final long start = System.nanoTime();
+            this.daoFactory.getEntityManager().getTransaction().commit();
+            this.count.getTimings().record(LoadTimings.Timer.COMMIT,
+                                           System.nanoTime() - start);
+        }
+    }
+
+    /**
+     *  Write a FRBRization report row, after the step that persisted
+     * its entity.  With report_async set the row goes to the ReportSink,
+     * at once if that step is committed, otherwise with the batch commit.
+     * Without, it is written in its own handler step, as it always was.
+     * @param row the ReportRow.
+     */
+    public void report(final ReportRow row) {
+
+        if (!ReportSink.isEnabled()) {
+            begin();
+            row.write(this.daoFactory);
+            commit();
+        } else if (this.perStep) {
+            row.detach();
+            ReportSink.submit(Collections.singletonList(row));
+        } else {
+            this.batchReports.add(row);
+        }
+    }
+
+    /**
+     *  End an unbatched record.  The persistence context of a record
+     * that succeeded was flushed and cleared, and its EntityManager is
+     * closed every em_recycle_records records, by default after every
+     * record.  A failed record may have left its step's transaction
+     * open, so that is rolled back and the EntityManager closed at once.
+     * @param succeeded whether the record was frbrized.
+     */
+    public void recordDone(final boolean succeeded) {
+        if (!succeeded) {
+            try {
+                final EntityTransaction entran =
+                        this.daoFactory.getEntityManager().getTransaction();
+                if (entran.isActive()) {
+                    entran.rollback();
+                }
+            } catch (RuntimeException ex) {
+                log.error("Rollback of the failed record failed", ex);
+            }
+            // its uncommitted expressions may be indexed
+            ExpressionMatchIndex.clearAll();
+        }
+        if (!succeeded
+                || ++this.recordsSinceClose >= this.emRecycleRecords) {
+            this.daoFactory.closeEntityManager();
+            this.recordsSinceClose = 0;
+        }
+    }
+
+    /**
+     *  FRBRize a record, committing the batch when it is full or old.
+     * @param marcRec the MarcRecord.
+     * @param workFields already identified WorkFields, or null.
+     */
+    public void frbrize(final MarcRecord marcRec,
+                        final List<WorkField> workFields) {
+
+        frbrize(marcRec, workFields, null);
+    }
+
+    /**
+     *  FRBRize a record of an incremental load,
+     * committing the batch when it is full or old.
+     * @param marcRec the MarcRecord.
+     * @param workFields already identified WorkFields, or null.
+     * @param contentHash the record content hash, stored once the record
+     *                    is committed, or null.
+     */
+    public void frbrize(final MarcRecord marcRec,
+                        final List<WorkField> workFields,
+                        final byte[] contentHash) {
+
+        if (this.perStep) {
+            if (MarcFileLoader.frbrizeRecord(
+                    this, this.count, marcRec, workFields)) {
+                loaded(marcRec, contentHash);
+            }
+            // each handler step committed on its own
+            checkpoint();
+            return;
+        }
+
+        if (this.batch.isEmpty()) {
+            this.batchStartCounts = this.count.snapshot();
+            this.batchStart = System.currentTimeMillis();
+        }
+        this.batch.add(new BatchedRecord(this.count.getRecNum(),
+                                         marcRec,
+                                         workFields,
+                                         contentHash));
+
+        boolean succeeded;
+        try {
+            succeeded = MarcFileLoader.frbrizeRecord(this,
+                                                     this.count,
+                                                     marcRec,
+                                                     workFields);
+        } catch (RuntimeException ex) {
+            log.error("Exception flushing record ["
+                    + this.count.getFileName() + ":"
+                    + this.count.getRecNum() + "]", ex);
+            succeeded = false;
+        }
+
+        if (!succeeded) {
+            rollbackAndReplay();
+        } else if (this.batch.size() >= this.batchSize
+                || (System.currentTimeMillis() - this.batchStart)
+                >= this.batchMillis) {
+            commitBatch();
+        }
+    }
+
+    /**
+     *  Commit any open batch, at the end of the records.
+     */
+    public void finish() {
+        if (!this.batch.isEmpty()) {
+            commitBatch();
+        }
+    }
+
+    private void commitBatch() {
+        try {
+            final EntityTransaction entran =
+                    this.daoFactory.getEntityManager().getTransaction();
+            if (entran.isActive()) {
+                final long start = System.nanoTime();
+                entran.commit();
+                this.count.getTimings().record(LoadTimings.Timer.COMMIT,
+                                               System.nanoTime() - start);
+            }
+            if (log.isInfoEnabled()) {
+                log.info("==== committed batch of " + this.batch.size()
+                        + " records to ["
+                        + this.count.getFileName() + ":"
+                        + this.count.getRecNum() + "]");
+            }
+            for (BatchedRecord batched : this.batch) {
+                loaded(batched.marcRec, batched.contentHash);
+            }
+            this.batch.clear();
+            submitReports();
+            this.daoFactory.closeEntityManager();
+            checkpoint();
+        } catch (RuntimeException ex) {
+            log.error("Batch commit failed at ["
+                    + this.count.getFileName() + ":"
+                    + this.count.getRecNum() + "]", ex);
+            rollbackAndReplay();
+        }
+    }
+
+    /**
+     *  Roll back the open batch and replay its records
+     * one handler step per transaction.
+     */
+    private void rollbackAndReplay() {
+
+        log.warn("==== rolling back batch of " + this.batch.size()
+                + " records at ["
+                + this.count.getFileName() + ":"
+                + this.count.getRecNum() + "]"
+                + ", replaying unbatched");
+
+        try {
+            final EntityTransaction entran =
+                    this.daoFactory.getEntityManager().getTransaction();
+            if (entran.isActive()) {
+                entran.rollback();
+            }
+        } catch (RuntimeException ex) {
+            log.error("Batch rollback failed", ex);
+        }
+        // discard the rolled back entities, their cached ids and reports
+        this.batchReports.clear();
+        this.daoFactory.closeEntityManager();
+        IdentityCache.clearAll();
+        ExpressionMatchIndex.clearAll();
+        this.count.restore(this.batchStartCounts);
+
+        final int currentRecNum = this.count.getRecNum();
+        this.perStep = true;
+        try {
+            for (BatchedRecord batched : this.batch) {
+                this.count.setRecNum(batched.recNum);
+                if (MarcFileLoader.frbrizeRecord(this,
+                                                 this.count,
+                                                 batched.marcRec,
+                                                 batched.workFields)) {
+                    loaded(batched.marcRec, batched.contentHash);
+                }
+            }
+        } finally {
+            this.perStep = false;
+            this.count.setRecNum(currentRecNum);
+            this.batch.clear();
+        }
+        checkpoint();
+    }
+
+    /**
+     *  Store the content hash of a committed record.
+     * A record failing to frbrize is not stored, so it is tried again
+     * by the next incremental load.
+     */
+    private void loaded(final MarcRecord marcRec, final byte[] contentHash) {
+        if (this.deltaStore != null && contentHash != null) {
+            try {
+                this.deltaStore.put(marcRec.getControlNumber(), contentHash);
+            } catch (IOException ex) {
+                log.error("Delta store write failed at ["
+                        + this.count.getFileName() + ":"
+                        + this.count.getRecNum() + "]", ex);
+            }
+        }
+    }
+
+    /**
+     *  Hand the report rows of the committed batch to the ReportSink.
+     */
+    private void submitReports() {
+        if (!this.batchReports.isEmpty()) {
+            for (ReportRow row : this.batchReports) {
+                row.detach();
+            }
+            ReportSink.submit(this.batchReports);
+            this.batchReports.clear();
+        }
+    }
+
+    private void checkpoint() {
+        if (this.checkpoint != null) {
+            this.checkpoint.committed(this.count);
+        }
+    }
+
+    /**
+     *  A record of the open batch.
+     */
+    private static class BatchedRecord {
+
+        private final int recNum;
+
+        private final MarcRecord marcRec;
+
+        private final List<WorkField> workFields;
+
+        private final byte[] contentHash;
+
+        BatchedRecord(final int recNum,
+                      final MarcRecord marcRec,
+                      final List<WorkField> workFields,
+                      final byte[] contentHash) {
+            this.recNum = recNum;
+            this.marcRec = marcRec;
+            this.workFields = workFields;
+            this.contentHash = contentHash;
+        }
+    }
+}
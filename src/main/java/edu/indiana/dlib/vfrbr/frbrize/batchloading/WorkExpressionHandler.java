@@ -31,6 +31,7 @@
 package edu.indiana.dlib.vfrbr.frbrize.batchloading;
 
 import edu.indiana.dlib.vfrbr.frbrize.batchloading.mappers.ExpressionMapper;
+import edu.indiana.dlib.vfrbr.frbrize.batchloading.mappers.ExpressionMatchKeys;
 import edu.indiana.dlib.vfrbr.frbrize.batchloading.marcDecorators.MarcDataField;
 import edu.indiana.dlib.vfrbr.frbrize.batchloading.marcDecorators.MarcRecord;
 
@@ -49,7 +50,6 @@ import edu.indiana.dlib.vfrbr.persist.relation.ExpressionToManifestation;
 import edu.indiana.dlib.vfrbr.persist.relation.ExpressionToResponsibleParty;
 import edu.indiana.dlib.vfrbr.persist.relation.WorkToExpression;
 
-import java.util.ArrayList;
 import java.util.List;
 import org.apache.log4j.Logger;
 
@@ -60,6 +60,8 @@ public class WorkExpressionHandler {
 
     private static Logger log = Logger.getLogger(WorkExpressionHandler.class);
 
+    private final DAOFactory daoFactory;
+
     private final ExpressionDAO expressionDAO;
 
     private final PersonDAO personDAO;
@@ -70,10 +72,22 @@ public class WorkExpressionHandler {
 
     private final FindPersisted findPersisted;
 
+    private final RelationWriter relationWriter;
+
     private int persRealizerListOrder = 0;
 
     private int corpRealizerListOrder = 0;
 
+    /**
+     * The MarcRecord of the recordKeys.
+     */
+    private MarcRecord keysRecord;
+
+    /**
+     * Expression match keys of the keysRecord.
+     */
+    private ExpressionMatchKeys recordKeys;
+
 
     /**
      *  Instantiate a new WorkExpressionHandler.
@@ -82,11 +96,13 @@ public class WorkExpressionHandler {
     public WorkExpressionHandler(final DAOFactory daoFactory,
                                  final Counts count) {
 
+        this.daoFactory = daoFactory;
         this.expressionDAO = daoFactory.newExpressionDAO();
         this.personDAO = daoFactory.newPersonDAO();
         this.corporateBodyDAO = daoFactory.newCorporateBodyDAO();
         this.count = count;
-        this.findPersisted = new FindPersisted(count);
+        this.findPersisted = new FindPersisted(daoFactory, count);
+        this.relationWriter = new RelationWriter(daoFactory);
     }
 
     /**
@@ -100,44 +116,32 @@ public class WorkExpressionHandler {
                                            final WorkJpa work,
                                            final ManifestationJpa marcRecManif) {
 
+        // match keys of the bibRec, computed once for all its works
+        if (marcBibRec != this.keysRecord) {
+            this.keysRecord = marcBibRec;
+            this.recordKeys = ExpressionMatchKeys.forRecord(marcBibRec);
+        }
+
         // check the candidate expression from the bibRec
         final ExpressionMapper exprMapper =
-                new ExpressionMapper(marcBibRec, work);
+                new ExpressionMapper(marcBibRec, work, this.recordKeys);
 
         // expressionMapper uses work titles, so...
         log.info("Handle expression \""
                 + work.getTitles().get(0).getText()
                 + "\"");
 
-        // get any matching persisted expressions
-        final List<ExpressionJpa> matchingExprs =
-                new ArrayList<ExpressionJpa>();
-
-        // for all the work.hasRealizations expressions
-        for (int idx = 0;
-                idx < work.getHasRealizations().size();
-                idx++) {
-            WorkToExpression realizedBy = work.getHasRealizations().get(idx);
-
-            // test for null realizedBy
-            if (null == realizedBy) {
-                log.warn("****** WARNING ******");
-                log.warn("* null realizedBy from work.getHasRealizations() ");
-                log.warn("* for work.uniformTitle: \""
-                        + work.getUniformTitle() + "\"");
-                log.warn("* hasRealizations List size: "
-                        + work.getHasRealizations().size());
-                log.warn("* this element index: " + idx);
-                log.warn("* skipping this element");
-                log.warn("*******");
-            } else {
-                // if the target expression is a match
-                if (exprMapper.isMatchingExpression(
-                        realizedBy.getTargetExpression())) {
-                    // add it to the list
-                    matchingExprs.add(realizedBy.getTargetExpression());
-                }
-            }
+        // get any matching persisted expressions,
+        // from the work.hasRealizations expressions sharing a realizer
+        ExpressionMatchIndex exprIndex =
+                ExpressionMatchIndex.forWork(this.daoFactory, work);
+        List<ExpressionJpa> matchingExprs =
+                exprIndex.match(this.daoFactory, this.recordKeys);
+        if (null == matchingExprs) {
+            // an indexed expression is gone, index the work again
+            ExpressionMatchIndex.forget(work);
+            exprIndex = ExpressionMatchIndex.forWork(this.daoFactory, work);
+            matchingExprs = exprIndex.match(this.daoFactory, this.recordKeys);
         }
 
         // the ExpressionJpa to use, either matched or new
@@ -312,12 +316,18 @@ public class WorkExpressionHandler {
                                          0,
                                          "realizedThrough");
 
-            work.getHasRealizations().add(realization);     // source end
-            expr.getIsRealization().add(realization);        // target end
+            // target end, and the source end only for a work not yet
+            // flushed, otherwise its realizations are left unloaded
+            expr.getIsRealization().add(realization);
+            if (null == work.getId()) {
+                work.getHasRealizations().add(realization);
+            }
             log.info("    -- realization linked between work and expression");
 
             this.expressionDAO.persist(expr);
+            this.relationWriter.link(realization);
             log.info("    -- Expression persisted");
+            exprIndex.add(expr);
 
             this.count.incrementPersistedExpressions();
 
@@ -338,8 +348,9 @@ public class WorkExpressionHandler {
                                               0,
                                               "embodiedIn");
 
-        expr.getHasEmbodiments().add(exemplification);
-        marcRecManif.getIsEmbodiment().add(exemplification);
+        // target end only, a matched expression may have many embodiments
+        this.relationWriter.link(marcRecManif.getIsEmbodiment(),
+                                 exemplification);
         log.info(
                 "      -- exemplification linked between expression and manifestation");
 
@@ -363,10 +374,8 @@ public class WorkExpressionHandler {
             exprHasRealizer.setTargetResponsibleParty(personRealizer);
             exprHasRealizer.setListOrder(this.persRealizerListOrder++);
             exprHasRealizer.setRelRole(role);
-            // source backlink
-            expr.getHasRealizers().add(exprHasRealizer);
-            // target backlink
-            personRealizer.getIsRealizerOfExpressions().add(exprHasRealizer);
+            // source backlink, the target's is left unloaded
+            this.relationWriter.link(expr.getHasRealizers(), exprHasRealizer);
 
             if (log.isInfoEnabled()) {
                 log.info("      -- realizer linked");
@@ -398,11 +407,8 @@ public class WorkExpressionHandler {
             exprHasRealizer.setTargetResponsibleParty(corporateRealizer);
             exprHasRealizer.setListOrder(this.corpRealizerListOrder++);
             exprHasRealizer.setRelRole(role);
-            // source backlink
-            expr.getHasRealizers().add(exprHasRealizer);
-            // target backlink
-            corporateRealizer.getIsRealizerOfExpressions().add(
-                    exprHasRealizer);
+            // source backlink, the target's is left unloaded
+            this.relationWriter.link(expr.getHasRealizers(), exprHasRealizer);
 
             if (log.isInfoEnabled()) {
                 log.info("      -- realizer linked");
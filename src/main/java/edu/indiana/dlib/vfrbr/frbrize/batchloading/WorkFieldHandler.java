@@ -46,8 +46,8 @@ import edu.indiana.dlib.vfrbr.persist.entity.responsibleparty.PersonJpa;
 import edu.indiana.dlib.vfrbr.persist.entity.work.WorkJpa;
 import edu.indiana.dlib.vfrbr.persist.relation.WorkHasComposer;
 import edu.indiana.dlib.vfrbr.persist.relation.WorkHasCreator;
+import java.util.List;
 
-import javax.persistence.EntityTransaction;
 import org.apache.log4j.Logger;
 
 /**
@@ -59,6 +59,8 @@ public class WorkFieldHandler {
 
     private final DAOFactory daoFactory;
 
+    private final TransactionBatcher txBatcher;
+
     private final WorkDAO workDAO;
 
     private final ResponsiblePartyDAO responsiblePartyDAO;
@@ -77,17 +79,19 @@ public class WorkFieldHandler {
 
     private final ManifestationJpa marcRecManif;
 
+    private final RelationWriter relationWriter;
+
     /**
      *  Instantiate a WorkFieldHandler
      * for the context of repeated invocations of handleWorkField().
      *
-     * @param daoFactory a DAOFactory holding the persistence context.
+     * @param txBatcher transactions of the persistence context.
      * @param marcRecord the current MarcRecord being processed.
      * Source of the MarcDataField work fields to be processed
      * by handleWorkField().
      * @param marcRecManifestation the ManifestationJpa for this MarcRecord.
      */
-    public WorkFieldHandler(final DAOFactory daoFactory,
+    public WorkFieldHandler(final TransactionBatcher txBatcher,
                             final MarcRecord marcBibRecord,
                             final ManifestationJpa marcRecManifestation,
                             final Counts count) {
@@ -96,19 +100,22 @@ public class WorkFieldHandler {
          * by repeated invocations of handleWorkField().
          */
 
-        this.daoFactory = daoFactory;
+        this.txBatcher = txBatcher;
+        this.daoFactory = txBatcher.getDAOFactory();
         this.workDAO = daoFactory.newWorkDAO();
         this.responsiblePartyDAO = daoFactory.newResponsiblePartyDAO();
         this.personDAO = daoFactory.newPersonDAO();
         this.corporateDAO = daoFactory.newCorporateBodyDAO();
         this.count = count;
-        this.findPersisted = new FindPersisted(count);
+        this.findPersisted = new FindPersisted(daoFactory, count);
 
         this.marcBibRec = marcBibRecord;
 
         this.workExprHandler = new WorkExpressionHandler(daoFactory, count);
 
         this.marcRecManif = marcRecManifestation;
+
+        this.relationWriter = new RelationWriter(daoFactory);
     }
 
     /**
@@ -117,13 +124,32 @@ public class WorkFieldHandler {
      * @param count counts to increment.
      */
     public final void handleWorkField(final WorkField workField) {
-        WorkJpa work;
 
         final MarcDataField marcWorkField = workField.getWorkDataField();
 
         final WorkMapper workMapper =
                 new WorkMapper(marcWorkField, this.marcBibRec);
 
+        /*
+         * first try the work key of the bib field, computed without
+         * an authority lookup: a work already persisted needs no mapping
+         */
+        final String bibWorkKey = workMapper.getBibWorkKey();
+
+        final WorkJpa knownWork = findByBibWorkKey(bibWorkKey);
+
+        if (knownWork != null) {
+            if (log.isInfoEnabled()) {
+                log.info("Handling work: " + knownWork.getAuthIdent()
+                        + " found by bib work key");
+            }
+            synchronized (IdentityLocks.forKey(IdentityLocks.WORK,
+                                               knownWork.getAuthIdent())) {
+                handleWorkExpression(knownWork);
+            }
+            return;
+        }
+
         /*
          * to truly match against persisted work instances,
          * use a fully mapped work
@@ -138,27 +164,128 @@ public class WorkFieldHandler {
             log.info("Handling work: " + candidateWork.getAuthIdent());
         }
 
-        final int alreadyLoadedWorks =
-                this.workDAO.countByAuthIdent(candidateWork.getAuthIdent());
+        /*
+         * match or create, and add the expression, under the identity
+         * monitor, so parallel workers don't both persist the same work
+         * or the same expression of it
+         */
+        synchronized (IdentityLocks.forKey(IdentityLocks.WORK,
+                                           candidateWork.getAuthIdent())) {
+            handleCandidateWork(workField,
+                                candidateWork,
+                                workAuthRec,
+                                bibWorkKey);
+        }
+    }
+
+    /**
+     *  Find the persisted work of a bib work key, by the work identities
+     * of this run, and then by authIdent.
+     * @param bibWorkKey the work key of the bib field.
+     * @return the persisted WorkJpa, or null if not found.
+     */
+    private WorkJpa findByBibWorkKey(final String bibWorkKey) {
+
+        final Object cachedId =
+                IdentityCache.WORKS.get(IdentityCache.WORK_KEY, bibWorkKey);
+
+        if (cachedId != null && cachedId != IdentityCache.NONE) {
+            final WorkJpa work = IdentityCache.WORKS.find(this.daoFactory,
+                    WorkJpa.class,
+                    IdentityCache.WORK_KEY,
+                    bibWorkKey,
+                    cachedId);
+            if (work != null) {
+                return work;
+            }
+        }
+
+        // without an authority record, the key is the authIdent
+        return findByAuthIdent(bibWorkKey);
+    }
+
+    /**
+     *  Find a persisted work by authIdent, through the identity cache,
+     * otherwise with a single query.
+     * @param workAuthIdent the work authIdent.
+     * @return the persisted WorkJpa, or null if not found.
+     */
+    private WorkJpa findByAuthIdent(final String workAuthIdent) {
+
+        WorkJpa work = null;
 
-        if (alreadyLoadedWorks > 0) {
+        final Object cachedId =
+                IdentityCache.WORKS.get(IdentityCache.AUTH_IDENT,
+                                        workAuthIdent);
+
+        if (cachedId == IdentityCache.NONE) {
+            return null;
+        }
+        if (cachedId != null) {
+            work = IdentityCache.WORKS.find(this.daoFactory,
+                                            WorkJpa.class,
+                                            IdentityCache.AUTH_IDENT,
+                                            workAuthIdent,
+                                            cachedId);
+            if (work != null) {
+                if (log.isInfoEnabled()) {
+                    log.info(" -- found already persisted by identity cache");
+                }
+                return work;
+            }
+        }
+
+        // stamped before the query, a miss may not outlive a persist
+        final IdentityCache.Stamp stamp =
+                IdentityCache.WORKS.stamp(IdentityCache.AUTH_IDENT,
+                                          workAuthIdent);
+        final long start = LoadTimings.start();
+        final List<WorkJpa> matchingWorks =
+                this.workDAO.getByAuthIdent(workAuthIdent);
+        LoadTimings.stop(LoadTimings.Timer.DAO_QUERY, start);
+
+        if (!matchingWorks.isEmpty()) {
             if (log.isInfoEnabled()) {
                 log.info(" -- found already persisted by workAuthIdent");
             }
 
-            if (alreadyLoadedWorks > 1) {
+            if (matchingWorks.size() > 1) {
                 log.warn("  *** Multiple persisted matches for work: "
-                        + candidateWork.getAuthIdent());
+                        + workAuthIdent);
             }
             // use first one in list
-            work = this.workDAO.getByAuthIdent(candidateWork.getAuthIdent()).
-                    get(0);
+            work = matchingWorks.get(0);
+        }
+        IdentityCache.WORKS.put(IdentityCache.AUTH_IDENT,
+                workAuthIdent,
+                (work == null) ? null : work.getId(),
+                stamp);
 
-        } else {
+        return work;
+    }
+
+    /**
+     *  Match a mapped candidate work against the persisted works,
+     * persisting it if new, and handle its expression.
+     * @param workField the WorkField being handled.
+     * @param candidateWork the fully mapped candidate WorkJpa.
+     * @param workAuthRec the authority MarcRecord of the work, or null.
+     * @param bibWorkKey the work key of the bib field.
+     */
+    private void handleCandidateWork(final WorkField workField,
+                                     final WorkJpa candidateWork,
+                                     final MarcRecord workAuthRec,
+                                     final String bibWorkKey) {
 
-            EntityTransaction entran =
-                    this.daoFactory.getEntityManager().getTransaction();
-            entran.begin();
+        final MarcDataField marcWorkField = workField.getWorkDataField();
+
+        final String workAuthIdent = candidateWork.getAuthIdent();
+
+        WorkJpa work = findByAuthIdent(workAuthIdent);
+
+        if (work == null) {
+
+            this.txBatcher.begin();
 
             if (log.isInfoEnabled()) {
                 log.info(" -- not found persisted, persisting new work");
@@ -345,33 +472,48 @@ public class WorkFieldHandler {
             // persist work for db id
             this.workDAO.persist(work);
 
-            entran.commit();
-
-            entran = this.daoFactory.getEntityManager().getTransaction();
-            entran.begin();
+            this.txBatcher.commit();
+            // works are only found by authIdent
+            IdentityCache.WORKS.persisted(workAuthIdent,
+                    work.getAuthIdent(),
+                    null,
+                    work.getId());
 
             // persist data for frbrization reports for Work
-            this.workDAO.reportWorks(work,
-                                     this.marcBibRec.getGroup().toString(),
-                                     workField.getWorkIdentAlgorithm(),
-                                     this.marcBibRec.getControlNumber(),
-                                     marcWorkField.getTag(),
-                                     workAuthRecId,
-                                     count.getFileName(),
-                                     count.getRecNum());
-
-            entran.commit();
+            this.txBatcher.report(ReportRow.works(work,
+                    this.marcBibRec.getGroup().toString(),
+                    workField.getWorkIdentAlgorithm(),
+                    this.marcBibRec.getControlNumber(),
+                    marcWorkField.getTag(),
+                    workAuthRecId,
+                    count.getFileName(),
+                    count.getRecNum()));
             this.count.incrementPersistedWorks();
         }
 
+        // later fields with this bib work key need no mapping
+        final Object workId = work.getId();
+        if (workId != null) {
+            IdentityCache.WORKS.put(IdentityCache.WORK_KEY,
+                                    bibWorkKey,
+                                    workId);
+        }
+
         /*
          * now have work, either pre-existing or newly created
          * for either case,
          *   process for adding expression and manifestation
          */
-        EntityTransaction entran =
-                this.daoFactory.getEntityManager().getTransaction();
-        entran.begin();
+        handleWorkExpression(work);
+    }
+
+    /**
+     *  Add the expression and manifestation of this record to a work.
+     * @param work the pre-existing or newly created WorkJpa.
+     */
+    private void handleWorkExpression(final WorkJpa work) {
+
+        this.txBatcher.begin();
 
         this.workExprHandler.handleWorkExpression(this.marcBibRec,
                                                   work,
@@ -386,7 +528,7 @@ public class WorkFieldHandler {
 
         // persist updates
         this.workDAO.persist(work);
-        entran.commit();
+        this.txBatcher.commit();
     }
 
     /**
@@ -412,10 +554,9 @@ public class WorkFieldHandler {
                     new WorkHasComposer();
             workHasComposer.setSourceWork(work);
             workHasComposer.setTargetResponsibleParty(personComposer);
-            // source backlink
-            work.getHasComposerPersons().add(workHasComposer);
-            // target backlink
-            personComposer.getIsComposerOfWorks().add(workHasComposer);
+            // source backlink, the target's is left unloaded
+            this.relationWriter.link(work.getHasComposerPersons(),
+                                     workHasComposer);
 
             if (log.isInfoEnabled()) {
                 log.info("      -- composer linked");
@@ -448,10 +589,9 @@ public class WorkFieldHandler {
             workHasCreator.setSourceWork(work);
             workHasCreator.setTargetResponsibleParty(personCreator);
             workHasCreator.setRelRole(role);
-            // source backlink
-            work.getHasCreatorPersons().add(workHasCreator);
-            // target backlink
-            personCreator.getIsComposerOfWorks().add(workHasCreator);
+            // source backlink, the target's is left unloaded
+            this.relationWriter.link(work.getHasCreatorPersons(),
+                                     workHasCreator);
 
             if (log.isInfoEnabled()) {
                 log.info("      -- creator linked");
@@ -489,10 +629,9 @@ public class WorkFieldHandler {
                     new WorkHasComposer();
             workHasComposer.setSourceWork(work);
             workHasComposer.setTargetResponsibleParty(corporateComposer);
-            // source backlink
-            work.getHasComposerCorporations().add(workHasComposer);
-            // target backlink
-            corporateComposer.getIsComposerOfWorks().add(workHasComposer);
+            // source backlink, the target's is left unloaded
+            this.relationWriter.link(work.getHasComposerCorporations(),
+                                     workHasComposer);
 
             if (log.isInfoEnabled()) {
                 log.info("      -- composer  linked");
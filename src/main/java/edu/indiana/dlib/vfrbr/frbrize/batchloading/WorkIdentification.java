@@ -32,6 +32,7 @@ package edu.indiana.dlib.vfrbr.frbrize.batchloading;
 
 import edu.indiana.dlib.vfrbr.frbrize.batchloading.marcDecorators.MarcDataField;
 import edu.indiana.dlib.vfrbr.frbrize.batchloading.marcDecorators.MarcRecord;
+import edu.indiana.dlib.vfrbr.frbrize.batchloading.marcDecorators.SubfieldCodes;
 import java.util.ArrayList;
 import java.util.List;
 import org.apache.log4j.Logger;
@@ -44,6 +45,18 @@ public class WorkIdentification {
 
     private static Logger log = Logger.getLogger(WorkIdentification.class);
 
+    private static final SubfieldCodes SUBFIELD_A = SubfieldCodes.of("a");
+
+    private static final SubfieldCodes SUBFIELD_M = SubfieldCodes.of("m");
+
+    private static final SubfieldCodes SUBFIELD_T = SubfieldCodes.of("t");
+
+    private static final SubfieldCodes SUBFIELD_4 = SubfieldCodes.of("4");
+
+    private static final SubfieldCodes SUBFIELDS_NPR = SubfieldCodes.of("npr");
+
+    private static final SubfieldCodes SUBFIELDS_MNPR = SubfieldCodes.of("mnpr");
+
     final private MarcRecord marcRec;
 
     final private List<WorkField> workFields;
@@ -88,11 +101,7 @@ public class WorkIdentification {
     private void handleGroup1a() {
 
         MarcDataField field240 = this.marcRec.getDataField("240");
-        char[] a = {'a'};
-        char[] m = {'m'};
-        char[] npr = {'n', 'p', 'r'};
-        char[] mnpr = {'m', 'n', 'p', 'r'};
-        String value240a = field240.concatSubfields(a);
+        String value240a = field240.concatSubfields(SUBFIELD_A);
 
         for (String collectiveTitle :
                 BatchLoading.COLLECTIVE_TITLES_BLACK_LIST) {
@@ -109,12 +118,12 @@ public class WorkIdentification {
             if (value240a.trim().toLowerCase().equals(form.toLowerCase())) {
                 // (1.1.2)
 
-                if (!field240.hasSubfields(mnpr)) {
+                if (!field240.hasSubfields(SUBFIELDS_MNPR)) {
 
                     return; //Not work (1.1.2.1)
 
-                } else if (field240.hasSubfields(m)
-                        && !field240.hasSubfields(npr)) {
+                } else if (field240.hasSubfields(SUBFIELD_M)
+                        && !field240.hasSubfields(SUBFIELDS_NPR)) {
 
                     WorkField workField = new WorkField();
                     workField.setWorkDataField(field240);
@@ -186,9 +195,9 @@ public class WorkIdentification {
 
     private void handle245Group1b() {
 
-        if (!this.marcRec.getDataField("100").hasSubfields("4".toCharArray())
+        if (!this.marcRec.getDataField("100").hasSubfields(SUBFIELD_4)
                 || this.marcRec.getDataField("100").
-                concatSubfields("4".toCharArray()).equals("cmp")) {
+                concatSubfields(SUBFIELD_4).equals("cmp")) {
 
             if (this.marcRec.hasField("740")) {
                 // (2.1.2.1.1)
@@ -272,11 +281,7 @@ public class WorkIdentification {
         }
 
         MarcDataField field240 = this.marcRec.getDataField("240");
-        char[] a = {'a'};
-        char[] m = {'m'};
-        char[] npr = {'n', 'p', 'r'};
-        char[] mnpr = {'m', 'n', 'p', 'r'};
-        String value240a = field240.concatSubfields(a);
+        String value240a = field240.concatSubfields(SUBFIELD_A);
 
         // (4.1.1)
         for (String collectiveTitle :
@@ -295,17 +300,17 @@ public class WorkIdentification {
             if (value240a.trim().toLowerCase().equals(form.toLowerCase())) {
 
                 // (4.1.2.1)
-                if (!field240.hasSubfields(mnpr)) {
+                if (!field240.hasSubfields(SUBFIELDS_MNPR)) {
 
                     return;
 
 
-                } else if (field240.hasSubfields(m)
-                        && !field240.hasSubfields(npr)) {
+                } else if (field240.hasSubfields(SUBFIELD_M)
+                        && !field240.hasSubfields(SUBFIELDS_NPR)) {
                     // (4.1.2.2)
                     return;
 
-                } else if (field240.hasSubfields(npr)) {
+                } else if (field240.hasSubfields(SUBFIELDS_NPR)) {
 
                     WorkField workField = new WorkField();
                     workField.setWorkDataField(field240);
@@ -350,8 +355,6 @@ public class WorkIdentification {
 
     private void handle245Group2() {
 
-        char[] subfield4 = {'4'};
-
         if (this.marcRec.hasField("240")) {
             return;
         }
@@ -367,10 +370,10 @@ public class WorkIdentification {
 
         MarcDataField field100 = this.marcRec.getDataField("100");
 
-        if (!field100.hasSubfields(subfield4)
-                || field100.concatSubfields(subfield4).trim().equals("cmp")
-                || field100.concatSubfields(subfield4).trim().equals("lbt")
-                || field100.concatSubfields(subfield4).trim().equals("lyr")) {
+        if (!field100.hasSubfields(SUBFIELD_4)
+                || field100.concatSubfields(SUBFIELD_4).trim().equals("cmp")
+                || field100.concatSubfields(SUBFIELD_4).trim().equals("lbt")
+                || field100.concatSubfields(SUBFIELD_4).trim().equals("lyr")) {
 
             WorkField workField = new WorkField();
             workField.setWorkDataField(field245);
@@ -413,13 +416,7 @@ public class WorkIdentification {
 
     private void handleSingle700Group2(MarcDataField field700,
                                        String group) {
-        char[] t = {'t'};
-        char[] m = {'m'};
-        char[] k = {'k'};
-        char[] npr = {'n', 'p', 'r'};
-        char[] mnpr = {'m', 'n', 'p', 'r'};
-
-        String value700t = field700.concatSubfields(t);
+        String value700t = field700.concatSubfields(SUBFIELD_T);
 
         if (value700t == null || value700t.equals("")) {
             return;
@@ -445,16 +442,16 @@ public class WorkIdentification {
 
             if (value700t.trim().toLowerCase().equals(form.toLowerCase())) {
 
-                if (!field700.hasSubfields(mnpr)) {
+                if (!field700.hasSubfields(SUBFIELDS_MNPR)) {
                     // (4.3.3.2.1)
                     return;
 
-                } else if (field700.hasSubfields(m)
-                        && !field700.hasSubfields(npr)) {
+                } else if (field700.hasSubfields(SUBFIELD_M)
+                        && !field700.hasSubfields(SUBFIELDS_NPR)) {
                     // (4.3.3.2.2)
                     return;
 
-                } else if (field700.hasSubfields(npr)) {
+                } else if (field700.hasSubfields(SUBFIELDS_NPR)) {
 
                     WorkField workField = new WorkField();
                     workField.setWorkDataField(field700);
@@ -0,0 +1,121 @@
+/**
+ * Copyright 2009-2011, Trustees of Indiana University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *   Neither the name of Indiana University nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.indiana.dlib.vfrbr.frbrize.batchloading;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Properties;
+import org.apache.log4j.Logger;
+import org.yaz4j.Connection;
+import org.yaz4j.ResultSet;
+
+/**
+ *  AuthorityFetcher searching the Z39.50 authority server of
+ * authCache.properties, over a connection kept open between searches.
+ */
+public class Z3950AuthorityFetcher implements AuthorityFetcher {
+
+    private static final Logger log =
+            Logger.getLogger(Z3950AuthorityFetcher.class);
+
+    private final String host;
+
+    private final int port;
+
+    private final String database;
+
+    private final String username;
+
+    private final String password;
+
+    /**
+     * Open connection, or null.
+     */
+    private Connection con;
+
+    /**
+     *  Instantiate for the server of the authCache properties.
+     * @param authCacheProps the authCache properties.
+     */
+    public Z3950AuthorityFetcher(final Properties authCacheProps) {
+
+        this.host = authCacheProps.getProperty("authority_host");
+        this.database = authCacheProps.getProperty("authority_database");
+        this.username = authCacheProps.getProperty("authority_username");
+        this.password = authCacheProps.getProperty("authority_password");
+
+        int portNum = 0;
+        final String portValue = authCacheProps.getProperty("authority_port");
+        try {
+            portNum = Integer.parseInt(portValue.trim());
+        } catch (Exception ex) {
+            log.error("==*!!*== bad authority_port: " + portValue);
+        }
+        this.port = portNum;
+    }
+
+    @Override
+    public byte[] search(final String query) throws Exception {
+
+        if (this.con == null) {
+            final Connection newCon = new Connection(this.host, this.port);
+            newCon.setUsername(this.username);
+            newCon.setPassword(this.password);
+            newCon.setDatabaseName(this.database);
+            newCon.connect();
+            this.con = newCon;
+        }
+
+        log.info("searching: " + query);
+
+        final ResultSet set =
+                this.con.search(query, Connection.QueryType.PrefixQuery);
+        log.info("Found:" + set.getHitCount());
+
+        final ByteArrayOutputStream records = new ByteArrayOutputStream();
+        for (int i = 0; i < set.getHitCount(); i++) {
+            records.write(set.getRecord(i).getContent());
+        }
+
+        return records.toByteArray();
+    }
+
+    @Override
+    public void close() {
+        if (this.con != null) {
+            try {
+                this.con.close();
+            } catch (Exception ex) {
+                log.warn("Error closing authority connection", ex);
+            }
+            this.con = null;
+        }
+    }
+}
@@ -32,6 +32,7 @@ package edu.indiana.dlib.vfrbr.frbrize.batchloading.mappers;
 
 import edu.indiana.dlib.vfrbr.frbrize.batchloading.marcDecorators.MarcDataField;
 import edu.indiana.dlib.vfrbr.frbrize.batchloading.marcDecorators.MarcRecord;
+import edu.indiana.dlib.vfrbr.frbrize.batchloading.marcDecorators.SubfieldCodes;
 
 import edu.indiana.dlib.vfrbr.persist.NormalIdent;
 import edu.indiana.dlib.vfrbr.persist.entity.responsibleparty.CorporateBodyJpa;
@@ -42,6 +43,12 @@ import edu.indiana.dlib.vfrbr.persist.entity.responsibleparty.CorporateBodyJpa;
  */
 public class CorporateBodyMapper {
 
+    private static final SubfieldCodes SUBFIELDS_ABCDE =
+            SubfieldCodes.of("abcde");
+
+    private static final SubfieldCodes SUBFIELDS_ABE =
+            SubfieldCodes.of("abe");
+
     /**
      * Get a normalized authority-name based identifier string.
      * The identifier is a "normalized" concatenation of subfields "abcde"
@@ -55,7 +62,7 @@ public class CorporateBodyMapper {
     public static String getAuthIdent(final MarcDataField corpBodyField) {
 
         return NormalIdent.getAuthIdent(
-                corpBodyField.concatSubfields("abcde".toCharArray()));
+                corpBodyField.concatSubfields(SUBFIELDS_ABCDE));
     }
 
     /**
@@ -89,7 +96,7 @@ public class CorporateBodyMapper {
             final MarcDataField corpBodyField) {
         // persisting spec uses |a (NR) |b (R) |e (R)
 
-        return corpBodyField.concatSubfields("abe".toCharArray());
+        return corpBodyField.concatSubfields(SUBFIELDS_ABE);
     }
 
     /**
@@ -150,10 +150,6 @@ public class DateNormalizer {
         }
     }
 
-    private static String baseDate;
-
-    private static StringBuilder normalizing = new StringBuilder();
-
     /**
      * Normalize yyyymmdd to yyyy-mm-dd.
      * Replace any '-' date characters with '?'.
@@ -165,11 +161,11 @@ public class DateNormalizer {
         // dateField: yyyymmdd...  (with '-' for unknown digits)
         // normalized: yyyy-mm-dd
 
-        baseDate = dateField;
-        normalizing.setLength(0);
+        // local state only, called concurrently by parallel workers
+        final StringBuilder normalizing = new StringBuilder(10);
 
         // replace any '-' with '?'
-        baseDate = baseDate.replace('-', '?');
+        final String baseDate = dateField.replace('-', '?');
 
         // years
 
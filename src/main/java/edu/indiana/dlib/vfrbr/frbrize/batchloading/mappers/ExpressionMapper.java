@@ -30,14 +30,10 @@
  */
 package edu.indiana.dlib.vfrbr.frbrize.batchloading.mappers;
 
-import edu.indiana.dlib.vfrbr.frbrize.batchloading.marcDecorators.MarcDataField;
 import edu.indiana.dlib.vfrbr.frbrize.batchloading.marcDecorators.MarcRecord;
 import edu.indiana.dlib.vfrbr.persist.dao.ExpressionDAO;
 import edu.indiana.dlib.vfrbr.persist.entity.expression.ExpressionJpa;
-import edu.indiana.dlib.vfrbr.persist.entity.responsibleparty.CorporateBodyJpa;
-import edu.indiana.dlib.vfrbr.persist.entity.responsibleparty.PersonJpa;
 import edu.indiana.dlib.vfrbr.persist.entity.work.WorkJpa;
-import edu.indiana.dlib.vfrbr.persist.relation.ExpressionToResponsibleParty;
 
 /**
  *  Mapping from MarcRecord to Expression.
@@ -55,6 +51,11 @@ public class ExpressionMapper {
      */
     private final WorkJpa work;
 
+    /**
+     * Match keys of the MarcRecord.
+     */
+    private ExpressionMatchKeys matchKeys;
+
     /**
      *  Create new ExpressionMapper instance.
      *
@@ -68,161 +69,51 @@ public class ExpressionMapper {
         this.work = work;
     }
 
+    /**
+     *  Create new ExpressionMapper instance, with the match keys
+     * already computed for its MarcRecord.
+     *
+     * @param marcRecord the source MarcRecord
+     * from which to map the ExpressionJpa.
+     * @param work the WorkJpa which the ExpressionJpa expresses.
+     * @param matchKeys the ExpressionMatchKeys of the MarcRecord.
+     */
+    public ExpressionMapper(final MarcRecord marcRecord,
+                            final WorkJpa work,
+                            final ExpressionMatchKeys matchKeys) {
+        this.marcRecord = marcRecord;
+        this.work = work;
+        this.matchKeys = matchKeys;
+    }
+
     /**
      * Is this persisted Expression parameter a match
      * for the expression definition
      * contained in the MarcRecord of this ExpressionMapper.
+     * <p>
+     * A match is at least one 033|a matching one dateOfExpression,
+     * with at least one 700 |4 prf or cnd person, or one 710 |4 prf
+     * corporateBody, whose authIdent matches that of a realizedBy
+     * ResponsibleParty of the expression; or at least two such
+     * matching realizers.
      * @param expression the persisted ExpressionJpa to check for matching
      * @return true for is a match, false for not a match
      */
     public final boolean isMatchingExpression(final ExpressionJpa expression) {
 
-        final boolean isDateMatch = isOneDateMatch(expression);
-
-        final boolean isMatch =
-                (isDateMatch && ((countMatchingPerson(expression) > 0)
-                                 || (countMatchingCorpBody(expression) > 0)))
-                || (areTwoMatchingRelators(expression));
-
-
-        return isMatch;
-    }
-
-    /**
-     * Does "at least one 033|a matches one dateOfExpression".
-     * @param expr ExpressionJpa expression being tested for equality.
-     * @return boolean for at least one date matching.
-     */
-    private boolean isOneDateMatch(final ExpressionJpa expr) {
-        boolean isOneMatch = false;
-
-        // 033 (R)
-        for (MarcDataField field033 :
-                this.marcRecord.getDataFields("033")) {
-            // |a (R)
-            for (String date033 : field033.getValueList('a')) {
-                // expression.dates
-                for (int idx = 0;
-                        idx < expr.getDates().size();
-                        idx++) {
-                    // normalize for comparison
-                    if (expr.getDates().get(idx).getText().equals(
-                            DateNormalizer.normalizeExpr033Date(date033))) {
-                        isOneMatch = true;
-                    }
-                }
-            }
-        }
-
-        return isOneMatch;
-    }
-
-    /**
-     * In this ExpressionMapper MarcRecord
-     * how many 700 (R) MarcField with a |4 (R) relator code of prf or cnd
-     * whose authIdent matches the
-     * authIdent of any expression parameter
-     * "realizedBy" Person.
-     * @param expression persisted ExpressionJpa of realizedBy persons to match
-     * @return count of matching persons
-     */
-    private int countMatchingPerson(final ExpressionJpa expression) {
-
-        int matchCount = 0;
-
-        for (MarcDataField field700 : this.marcRecord.getDataFields("700")) {
-            for (String relatorSubfield : field700.getValueList('4')) {
-                if ("prf".equals(relatorSubfield)
-                        || "cnd".equals(relatorSubfield)) {
-                    final String persAuthIdent =
-                            PersonMapper.getAuthIdent(field700);
-                    // now have a personIdent from the MarcRecord
-                    // is there a matching persisted personIdent
-                    // under the expression.realizedBy relationship
-                    for (ExpressionToResponsibleParty realizedBy :
-                            expression.getHasRealizers()) {
-                        // this should be a PersonJpa, but ...
-                        // TODO better way to screen ResponsiblePartyJpa subclasses?
-                        try {
-                            final PersonJpa responPers =
-                                    (PersonJpa) realizedBy.
-                                    getTargetResponsibleParty();
-                            if (persAuthIdent.equals(responPers.getAuthIdent())) {
-                                matchCount++;
-                            }
-                        } catch (ClassCastException notPerson) {
-                            // not a PersonJpa
-                        }
-                    }
-                }
-            }
-        }
-
-        return matchCount;
+        return getMatchKeys().matches(ExpressionMatchKeys.forExpression(expression));
     }
 
     /**
-     * In this ExpressionMapper MarcRecord
-     * how many 710 (R) MarcField with |4 (R) relator code of prf
-     * whose "authIdent" matches the
-     * "authIdent" of any expression parameter
-     * "realizedBy" CorporateBody.
-     * @param expression ExpressionJpa of realizedBy corporations to match
-     * @return count of matching corporateBodies
+     * Get the match keys of the MarcRecord of this ExpressionMapper,
+     * computed on first use.
+     * @return the ExpressionMatchKeys of the MarcRecord.
      */
-    private int countMatchingCorpBody(final ExpressionJpa expression) {
-
-        int matchCount = 0;
-
-        for (MarcDataField field710 : this.marcRecord.getDataFields("710")) {
-            for (String relatorSubfield : field710.getValueList('4')) {
-                if ("prf".equals(relatorSubfield)) {
-                    final String corpAuthIdent =
-                            CorporateBodyMapper.getAuthIdent(field710);
-                    // have a corpIdent from the MarcRecord
-                    // is there a matching persisted corpIdent
-                    // under the expression.realizedBy relationship
-                    for (ExpressionToResponsibleParty realizedBy :
-                            expression.getHasRealizers()) {
-                        // just want the CorporateBodyJpa ones
-                        // TODO a better way to screen ResponsiblePartyJpa subclasses?
-                        try {
-                            final CorporateBodyJpa corpPers =
-                                    (CorporateBodyJpa) realizedBy.
-                                    getTargetResponsibleParty();
-                            if (corpAuthIdent.equals(corpPers.getAuthIdent())) {
-                                matchCount++;
-                            }
-                        } catch (ClassCastException notCorpBody) {
-                            // not a CorporateBodyJpa
-                        }
-                    }
-                }
-            }
+    public final ExpressionMatchKeys getMatchKeys() {
+        if (null == this.matchKeys) {
+            this.matchKeys = ExpressionMatchKeys.forRecord(this.marcRecord);
         }
-
-        return matchCount;
-    }
-
-    /**
-     * In this ExpressionMapper MarcRecord
-     * are there at least two 7XX (R) with any |4 code
-     * whose "authIdent" matches the
-     * "authIdent" of any expression parameter
-     * "realizedBy" ResponsibleParty (Person or CorporateBody).
-     * @param expression the ExpressionJpa to compare to the MarcRecord.
-     * @return are there at least two relator codes.
-     */
-    private boolean areTwoMatchingRelators(final ExpressionJpa expression) {
-        /*
-         * since we are only dealing Person and CorporateBody
-         * an assertion is that we are only dealing with 700 and 710 fields
-         * and can reuse our counts
-         */
-
-        return (countMatchingPerson(expression)
-                + countMatchingCorpBody(expression))
-                >= 2;
+        return this.matchKeys;
     }
 
     /**
@@ -0,0 +1,219 @@
+/**
+ * Copyright 2009-2011, Trustees of Indiana University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *   Neither the name of Indiana University nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.indiana.dlib.vfrbr.frbrize.batchloading.mappers;
+
+import edu.indiana.dlib.vfrbr.frbrize.batchloading.marcDecorators.MarcDataField;
+import edu.indiana.dlib.vfrbr.frbrize.batchloading.marcDecorators.MarcRecord;
+import edu.indiana.dlib.vfrbr.persist.entity.expression.ExpressionDate;
+import edu.indiana.dlib.vfrbr.persist.entity.expression.ExpressionJpa;
+import edu.indiana.dlib.vfrbr.persist.entity.responsibleparty.CorporateBodyJpa;
+import edu.indiana.dlib.vfrbr.persist.entity.responsibleparty.PersonJpa;
+import edu.indiana.dlib.vfrbr.persist.relation.ExpressionToResponsibleParty;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ *  The keys an expression is matched on: its normalized dates,
+ * and the authIdents of its person and corporateBody realizers,
+ * each with the number of times it occurs.
+ * <p>
+ * Built once for a MarcRecord, from its 033 |a dates, 700 |4 prf or cnd
+ * persons and 710 |4 prf corporateBodies, and once for a persisted
+ * ExpressionJpa, from its dates and realizers, so that matching them is
+ * a few map lookups rather than a pass over the fields of the record
+ * for each persisted expression.
+ *
+ * @see ExpressionMapper#isMatchingExpression(ExpressionJpa)
+ */
+public final class ExpressionMatchKeys {
+
+    private final Set<String> dates;
+
+    private final Map<String, Integer> persons;
+
+    private final Map<String, Integer> corporateBodies;
+
+    private ExpressionMatchKeys(final Set<String> dates,
+                                final Map<String, Integer> persons,
+                                final Map<String, Integer> corporateBodies) {
+        this.dates = dates;
+        this.persons = persons;
+        this.corporateBodies = corporateBodies;
+    }
+
+    /**
+     *  Get the match keys of the expression described by a MarcRecord.
+     * A field is counted once for each of its matching relator codes.
+     *
+     * @param marcRecord the bibliographic MarcRecord.
+     * @return the ExpressionMatchKeys.
+     */
+    public static ExpressionMatchKeys forRecord(final MarcRecord marcRecord) {
+
+        final Set<String> dates = new HashSet<String>();
+        // 033 (R) |a (R)
+        for (MarcDataField field033 : marcRecord.getDataFields("033")) {
+            for (String date033 : field033.getValueList('a')) {
+                dates.add(DateNormalizer.normalizeExpr033Date(date033));
+            }
+        }
+
+        final Map<String, Integer> persons = new HashMap<String, Integer>();
+        for (MarcDataField field700 : marcRecord.getDataFields("700")) {
+            String persAuthIdent = null;
+            for (String relatorSubfield : field700.getValueList('4')) {
+                if ("prf".equals(relatorSubfield)
+                        || "cnd".equals(relatorSubfield)) {
+                    if (null == persAuthIdent) {
+                        persAuthIdent = PersonMapper.getAuthIdent(field700);
+                    }
+                    increment(persons, persAuthIdent);
+                }
+            }
+        }
+
+        final Map<String, Integer> corporateBodies =
+                new HashMap<String, Integer>();
+        for (MarcDataField field710 : marcRecord.getDataFields("710")) {
+            String corpAuthIdent = null;
+            for (String relatorSubfield : field710.getValueList('4')) {
+                if ("prf".equals(relatorSubfield)) {
+                    if (null == corpAuthIdent) {
+                        corpAuthIdent =
+                                CorporateBodyMapper.getAuthIdent(field710);
+                    }
+                    increment(corporateBodies, corpAuthIdent);
+                }
+            }
+        }
+
+        return new ExpressionMatchKeys(dates, persons, corporateBodies);
+    }
+
+    /**
+     *  Get the match keys of a persisted expression.
+     * A realizer is counted once for each of its realizer relations.
+     *
+     * @param expression the ExpressionJpa.
+     * @return the ExpressionMatchKeys.
+     */
+    public static ExpressionMatchKeys forExpression(final ExpressionJpa expression) {
+
+        final Set<String> dates = new HashSet<String>();
+        for (ExpressionDate date : expression.getDates()) {
+            if (null != date.getText()) {
+                dates.add(date.getText());
+            }
+        }
+
+        final Map<String, Integer> persons = new HashMap<String, Integer>();
+        final Map<String, Integer> corporateBodies =
+                new HashMap<String, Integer>();
+        for (ExpressionToResponsibleParty realizedBy :
+                expression.getHasRealizers()) {
+            final Object realizer = realizedBy.getTargetResponsibleParty();
+            if (realizer instanceof PersonJpa) {
+                increment(persons, ((PersonJpa) realizer).getAuthIdent());
+            } else if (realizer instanceof CorporateBodyJpa) {
+                increment(corporateBodies,
+                          ((CorporateBodyJpa) realizer).getAuthIdent());
+            }
+        }
+
+        return new ExpressionMatchKeys(dates, persons, corporateBodies);
+    }
+
+    /**
+     *  Does an expression with these keys match one with the other keys?
+     * Matches on at least one date and one realizer, or on at least
+     * two realizers, counted as pairs of equal authIdents.
+     *
+     * @param other the keys of the persisted expression.
+     * @return true for a match.
+     */
+    public boolean matches(final ExpressionMatchKeys other) {
+
+        final int realizerMatches =
+                countMatching(this.persons, other.persons)
+                + countMatching(this.corporateBodies, other.corporateBodies);
+
+        if (realizerMatches >= 2) {
+            return true;
+        }
+        if (realizerMatches == 0) {
+            return false;
+        }
+        for (String date : this.dates) {
+            if (other.dates.contains(date)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the person realizer authIdents.
+     */
+    public Set<String> getPersons() {
+        return Collections.unmodifiableSet(this.persons.keySet());
+    }
+
+    /**
+     * @return the corporateBody realizer authIdents.
+     */
+    public Set<String> getCorporateBodies() {
+        return Collections.unmodifiableSet(this.corporateBodies.keySet());
+    }
+
+    private static int countMatching(final Map<String, Integer> ours,
+                                     final Map<String, Integer> theirs) {
+        int matchCount = 0;
+        for (Map.Entry<String, Integer> entry : ours.entrySet()) {
+            final Integer theirCount = theirs.get(entry.getKey());
+            if (null != theirCount) {
+                matchCount += entry.getValue() * theirCount;
+            }
+        }
+        return matchCount;
+    }
+
+    private static void increment(final Map<String, Integer> counts,
+                                  final String authIdent) {
+        if (null == authIdent) {
+            return;
+        }
+        final Integer count = counts.get(authIdent);
+        counts.put(authIdent, (null == count) ? 1 : count + 1);
+    }
+}
@@ -32,6 +32,7 @@ package edu.indiana.dlib.vfrbr.frbrize.batchloading.mappers;
 
 import edu.indiana.dlib.vfrbr.frbrize.batchloading.marcDecorators.MarcDataField;
 import edu.indiana.dlib.vfrbr.frbrize.batchloading.marcDecorators.MarcRecord;
+import edu.indiana.dlib.vfrbr.frbrize.batchloading.marcDecorators.SubfieldCodes;
 import edu.indiana.dlib.vfrbr.persist.NormalIdent;
 import edu.indiana.dlib.vfrbr.persist.entity.responsibleparty.PersonDate;
 import edu.indiana.dlib.vfrbr.persist.entity.responsibleparty.PersonJpa;
@@ -43,6 +44,12 @@ import edu.indiana.dlib.vfrbr.persist.entity.responsibleparty.PersonJpa;
  */
 public class PersonMapper {
 
+    private static final SubfieldCodes SUBFIELDS_AQBCD =
+            SubfieldCodes.of("aqbcd");
+
+    private static final SubfieldCodes SUBFIELDS_AQ =
+            SubfieldCodes.of("aq");
+
     /**
      * Get a normalized authority-name based identifier string.
      * The identifier is a "normalized" concatenation of subfields "aqbcd"
@@ -56,7 +63,7 @@ public class PersonMapper {
     public static String getAuthIdent(final MarcDataField personField) {
 
         return NormalIdent.getAuthIdent(
-                personField.concatSubfields("aqbcd".toCharArray()));
+                personField.concatSubfields(SUBFIELDS_AQBCD));
     }
 
     /**
@@ -89,7 +96,7 @@ public class PersonMapper {
     public static String getPersistNameString(
             final MarcDataField personField) {
 
-        return personField.concatSubfields("aq".toCharArray());
+        return personField.concatSubfields(SUBFIELDS_AQ);
     }
 
     /**
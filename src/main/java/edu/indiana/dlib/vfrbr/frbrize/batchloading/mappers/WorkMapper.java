@@ -33,6 +33,8 @@ package edu.indiana.dlib.vfrbr.frbrize.batchloading.mappers;
 import edu.indiana.dlib.vfrbr.frbrize.batchloading.AuthorityHandler;
 import edu.indiana.dlib.vfrbr.frbrize.batchloading.marcDecorators.MarcDataField;
 import edu.indiana.dlib.vfrbr.frbrize.batchloading.marcDecorators.MarcRecord;
+import edu.indiana.dlib.vfrbr.frbrize.batchloading.marcDecorators.SubfieldCodes;
+import edu.indiana.dlib.vfrbr.persist.NormalIdent;
 import edu.indiana.dlib.vfrbr.persist.entity.work.WorkDate;
 import edu.indiana.dlib.vfrbr.persist.entity.work.WorkJpa;
 import edu.indiana.dlib.vfrbr.persist.entity.work.WorkKey;
@@ -52,6 +54,24 @@ public class WorkMapper {
 
     private static Logger log = Logger.getLogger(WorkMapper.class);
 
+    private static final SubfieldCodes SUBFIELDS_AMNR =
+            SubfieldCodes.of("amnr");
+
+    private static final SubfieldCodes SUBFIELDS_TMNR =
+            SubfieldCodes.of("tmnr");
+
+    private static final SubfieldCodes SUBFIELDS_AN =
+            SubfieldCodes.of("an");
+
+    private static final SubfieldCodes SUBFIELD_M =
+            SubfieldCodes.of("m");
+
+    private static final SubfieldCodes SUBFIELD_R =
+            SubfieldCodes.of("r");
+
+    private static final SubfieldCodes SUBFIELD_B =
+            SubfieldCodes.of("b");
+
     private MarcDataField marcBibDataField;
 
     private MarcRecord marcBibRecord;
@@ -105,13 +125,13 @@ public class WorkMapper {
                 || fieldTag.equals("130")
                 || fieldTag.equals("730")) {
             uniformTitle =
-                    this.marcBibDataField.concatSubfields("amnr".toCharArray());
+                    this.marcBibDataField.concatSubfields(SUBFIELDS_AMNR);
 
         } else if (fieldTag.equals("700")
                 || fieldTag.equals("710")
                 || fieldTag.equals("711")) {
             uniformTitle =
-                    this.marcBibDataField.concatSubfields("tmnr".toCharArray());
+                    this.marcBibDataField.concatSubfields(SUBFIELDS_TMNR);
 
         } // otherwise return null
 
@@ -161,12 +181,12 @@ public class WorkMapper {
         ArrayList<WorkPerformanceMedium> performanceMediums =
                 new ArrayList<WorkPerformanceMedium>();
 
-        if (!marcBibDataField.hasSubfields("m".toCharArray())) {
+        if (!marcBibDataField.hasSubfields(SUBFIELD_M)) {
             return performanceMediums;
         }
 
         String valueFromMarc = marcBibDataField.concatSubfields(
-                "m".toCharArray());
+                SUBFIELD_M);
 
         String[] listValueFromMarc = valueFromMarc.split(",");
 
@@ -184,7 +204,7 @@ public class WorkMapper {
 
     public List<WorkKey> getKeys(WorkJpa work) {
         List<WorkKey> keys = new ArrayList<WorkKey>();
-        String keyValue = marcBibDataField.concatSubfields("r".toCharArray());
+        String keyValue = marcBibDataField.concatSubfields(SUBFIELD_R);
 
         if (keyValue != null && !keyValue.equals("")) {
 
@@ -375,13 +395,53 @@ public class WorkMapper {
         return null; //possible for work field not to have composer
     }
 
+    /**
+     *  Get the work key of the bib field: the authIdent mapWork gives
+     * the work when there is no matching authority record, the title of
+     * the field as mapped by WorkMap, and the composer authIdent.
+     * Computed from the bib record alone, without an authority lookup.
+     *
+     * @return String work key.
+     */
+    public String getBibWorkKey() {
+
+        final String fieldTag = this.marcBibDataField.getTag();
+
+        String title = null;
+        boolean hasTitle = true;
+
+        if (fieldTag.equals("240")
+                || fieldTag.equals("130")
+                || fieldTag.equals("730")) {
+            title = this.marcBibDataField.concatSubfields(SUBFIELDS_AMNR);
+        } else if (fieldTag.equals("700")
+                || fieldTag.equals("710")
+                || fieldTag.equals("711")) {
+            title = this.marcBibDataField.concatSubfields(SUBFIELDS_TMNR);
+        } else if (fieldTag.equals("740")) {
+            title = this.marcBibDataField.concatSubfields(SUBFIELDS_AN);
+        } else if (fieldTag.equals("245")) {
+            title = this.marcBibDataField.getValue('a');
+        } else {
+            hasTitle = false;
+        }
+
+        if (hasTitle) {
+            return NormalIdent.getAuthIdent(title)
+                    + "::"
+                    + getComposerAuthIdent();
+        } else {
+            return "::" + getComposerAuthIdent();
+        }
+    }
+
     public List<WorkDate> getDates(WorkJpa work) {
 
         List<WorkDate> dates = new ArrayList<WorkDate>();
 
         if (this.marcBibRecord.hasField("045")) {
             MarcDataField field045 = this.marcBibRecord.getDataField("045");
-            String dateStringValue = field045.concatSubfields("b".toCharArray());
+            String dateStringValue = field045.concatSubfields(SUBFIELD_B);
             WorkDate workDate = new WorkDate(work, dateStringValue);
             dates.add(workDate);
         }
@@ -398,7 +458,7 @@ public class WorkMapper {
 
         for (MarcDataField currentField : variantFields) {
 
-            String title = currentField.concatSubfields("tmnr".toCharArray());
+            String title = currentField.concatSubfields(SUBFIELDS_TMNR);
             WorkTitle currentTitle = new WorkTitle();
             currentTitle.setType("variant");
             currentTitle.setText(title.trim());
@@ -0,0 +1,359 @@
+/**
+ * Copyright 2009-2011, Trustees of Indiana University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *   Neither the name of Indiana University nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.indiana.dlib.vfrbr.frbrize.batchloading.marcDecorators;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.xml.parsers.SAXParserFactory;
+
+import org.apache.log4j.Logger;
+import org.marc4j.converter.impl.AnselToUnicode;
+import org.marc4j.converter.impl.CodeTableInterface;
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * A table-driven MARC-8 code table, answering the same as the
+ * marc4j CodeTableGenerated class.
+ *
+ * The generated class is a single switch over every code, with methods
+ * too large for HotSpot to compile, so each decoded character runs
+ * interpreted. Here the single-byte character sets are dense arrays
+ * indexed by code, and the multi-byte (CJK) set is an open-addressed
+ * hash table, all built once from codetables.xml.
+ */
+public final class CompactCodeTable implements CodeTableInterface {
+
+    private static final Logger log =
+            Logger.getLogger(CompactCodeTable.class);
+
+    /**
+     * The code tables as packaged with marc4j, relative to AnselToUnicode.
+     */
+    private static final String CODE_TABLES = "resources/codetables.xml";
+
+    /**
+     * The ISO code of the multi-byte East Asian character set.
+     */
+    private static final int MULTI_BYTE = 0x31;
+
+    private static final int SPACE = 0x20;
+
+    private static CompactCodeTable instance;
+
+    /**
+     * Single-byte character sets by ISO code, each indexed by MARC code.
+     * A 0 char is an unmapped code.
+     */
+    private final char[][] charSets = new char[0x80][];
+
+    /**
+     * Combining flags for the single-byte character sets by ISO code.
+     */
+    private final boolean[][] combining = new boolean[0x80][];
+
+    /**
+     * Multi-byte MARC codes, 0 for an empty slot.
+     */
+    private int[] multiKeys;
+
+    /**
+     * Unicode chars for the multi-byte codes, by multiKeys slot.
+     */
+    private char[] multiChars;
+
+    private int multiCount;
+
+    private CompactCodeTable() {
+        this.multiKeys = new int[1 << 14];
+        this.multiChars = new char[this.multiKeys.length];
+    }
+
+    /**
+     * Get the shared code table, reading codetables.xml on first use.
+     * The table is not modified once built.
+     *
+     * @return the code table.
+     */
+    public static synchronized CompactCodeTable getInstance() {
+        if (null == instance) {
+            final InputStream in =
+                    AnselToUnicode.class.getResourceAsStream(CODE_TABLES);
+            if (null == in) {
+                throw new IllegalStateException(
+                        "marc4j " + CODE_TABLES + " not found");
+            }
+            try {
+                instance = load(in);
+            } finally {
+                try {
+                    in.close();
+                } catch (IOException ex) {
+                    log.warn("closing " + CODE_TABLES + ": " + ex);
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Build a code table from a codetables.xml stream.
+     *
+     * @param in the codetables.xml content.
+     * @return the code table.
+     */
+    static CompactCodeTable load(final InputStream in) {
+        final CompactCodeTable table = new CompactCodeTable();
+        try {
+            SAXParserFactory.newInstance().newSAXParser().parse(
+                    in, new CodeTablesHandler(table));
+        } catch (Exception ex) {
+            throw new IllegalStateException(
+                    "reading " + CODE_TABLES + ": " + ex, ex);
+        }
+        log.debug("code table: " + table.multiCount + " multi-byte codes");
+        return table;
+    }
+
+    public boolean isCombining(final int i, final int g0, final int g1) {
+        final int set = (i <= 0x7E) ? g0 : g1;
+        if (set < 0 || set >= this.combining.length
+                || i < 0 || i > 0xFF) {
+            return false;
+        }
+        final boolean[] flags = this.combining[set];
+        return (null != flags) && flags[i];
+    }
+
+    public char getChar(final int c, final int mode) {
+        int code = this.getCharCode(c, mode);
+        if (code == -1) {
+            return (char) 0;
+        }
+        if (code != 0) {
+            return (char) code;
+        }
+        code = this.getCharCode(c < 0x80 ? c + 0x80 : c - 0x80, mode);
+        return (char) code;
+    }
+
+    /**
+     * The Unicode code for c in the mode character set,
+     * 0 for an unmapped code, -1 for an unknown character set.
+     */
+    private int getCharCode(final int c, final int mode) {
+        if (c == SPACE) {
+            return c;
+        }
+        if (mode == MULTI_BYTE) {
+            return this.getMultiByteChar(c);
+        }
+        if (mode < 0 || mode >= this.charSets.length) {
+            return -1;
+        }
+        final char[] charSet = this.charSets[mode];
+        if (null == charSet) {
+            return -1;
+        }
+        if (c < 0 || c >= charSet.length) {
+            return 0;
+        }
+        return charSet[c];
+    }
+
+    private int getMultiByteChar(final int c) {
+        if (c <= 0) {
+            return 0;
+        }
+        final int mask = this.multiKeys.length - 1;
+        int slot = mix(c) & mask;
+        while (true) {
+            final int key = this.multiKeys[slot];
+            if (key == c) {
+                return this.multiChars[slot];
+            }
+            if (key == 0) {
+                return 0;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Add a code, keeping the first mapping seen for a MARC code.
+     */
+    private void add(final int set, final int marc, final char ucs,
+                     final boolean isCombining) {
+        if (set == MULTI_BYTE) {
+            if (ucs != 0) {
+                this.addMultiByte(marc, ucs);
+            }
+            return;
+        }
+        if (set < 0 || set >= this.charSets.length
+                || marc < 0 || marc > 0xFF) {
+            log.warn("code table: ignoring code " + Integer.toHexString(marc)
+                     + " in set " + Integer.toHexString(set));
+            return;
+        }
+        if (null == this.charSets[set]) {
+            this.charSets[set] = new char[0x100];
+            this.combining[set] = new boolean[0x100];
+        }
+        if (this.charSets[set][marc] == 0) {
+            this.charSets[set][marc] = ucs;
+        }
+        if (isCombining) {
+            this.combining[set][marc] = true;
+        }
+    }
+
+    private void addMultiByte(final int marc, final char ucs) {
+        if (marc <= 0) {
+            return;
+        }
+        if ((this.multiCount + 1) * 2 > this.multiKeys.length) {
+            this.growMultiByte();
+        }
+        final int mask = this.multiKeys.length - 1;
+        int slot = mix(marc) & mask;
+        while (this.multiKeys[slot] != 0) {
+            if (this.multiKeys[slot] == marc) {
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        this.multiKeys[slot] = marc;
+        this.multiChars[slot] = ucs;
+        this.multiCount++;
+    }
+
+    private void growMultiByte() {
+        final int[] oldKeys = this.multiKeys;
+        final char[] oldChars = this.multiChars;
+        this.multiKeys = new int[oldKeys.length * 2];
+        this.multiChars = new char[this.multiKeys.length];
+        this.multiCount = 0;
+        for (int slot = 0; slot < oldKeys.length; slot++) {
+            if (oldKeys[slot] != 0) {
+                this.addMultiByte(oldKeys[slot], oldChars[slot]);
+            }
+        }
+    }
+
+    private static int mix(final int key) {
+        final int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Collects the characterSet and code elements of codetables.xml.
+     */
+    private static final class CodeTablesHandler extends DefaultHandler {
+
+        private final CompactCodeTable table;
+
+        private final StringBuilder text = new StringBuilder();
+
+        private int set = -1;
+
+        private String marc;
+
+        private String ucs;
+
+        private boolean isCombining;
+
+        CodeTablesHandler(final CompactCodeTable table) {
+            this.table = table;
+        }
+
+        @Override
+        public void startElement(final String uri,
+                                 final String localName,
+                                 final String qName,
+                                 final Attributes attributes) {
+            if ("characterSet".equals(qName)) {
+                this.set = Integer.parseInt(
+                        attributes.getValue("ISOcode"), 16);
+            } else if ("code".equals(qName)) {
+                this.marc = null;
+                this.ucs = null;
+                this.isCombining = false;
+            }
+            this.text.setLength(0);
+        }
+
+        @Override
+        public void characters(final char[] ch,
+                               final int start,
+                               final int length) {
+            this.text.append(ch, start, length);
+        }
+
+        @Override
+        public void endElement(final String uri,
+                               final String localName,
+                               final String qName) {
+            final String value = this.text.toString().trim();
+            if ("marc".equals(qName)) {
+                this.marc = value;
+            } else if ("ucs".equals(qName)) {
+                this.ucs = value;
+            } else if ("isCombining".equals(qName)) {
+                this.isCombining = "true".equals(value);
+            } else if ("code".equals(qName)) {
+                this.endCode();
+            } else if ("characterSet".equals(qName)) {
+                this.set = -1;
+            }
+            this.text.setLength(0);
+        }
+
+        /**
+         * Add the code just read. A code with no ucs mapping, e.g. the
+         * second half of a double diacritic, stays unmapped, but is
+         * still flagged when combining.
+         */
+        private void endCode() {
+            if (this.set < 0 || null == this.marc || this.marc.length() == 0) {
+                return;
+            }
+            final char unicode = (null == this.ucs || this.ucs.length() == 0)
+                    ? (char) 0
+                    : (char) Integer.parseInt(this.ucs, 16);
+            this.table.add(this.set,
+                           Integer.parseInt(this.marc, 16),
+                           unicode,
+                           this.isCombining);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/**
+ * Copyright 2009-2011, Trustees of Indiana University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *   Neither the name of Indiana University nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.indiana.dlib.vfrbr.frbrize.batchloading.marcDecorators;
+
+import org.marc4j.converter.impl.AnselToUnicode;
+
+/**
+ * Decoding of MARC field data to Unicode, aware of the record encoding.
+ *
+ * MARC-8 (ANSEL) data is converted by an AnselToUnicode per thread,
+ * created once, since each new converter sets up its code tables.
+ * The converters share the table-driven CompactCodeTable in place of
+ * the marc4j generated code table.
+ * Unicode records (leader/09 'a') are already decoded by the
+ * MarcStreamReader, and plain ASCII data converts to itself,
+ * so neither is converted.
+ */
+public final class MarcCharDecoder {
+
+    private static final ThreadLocal<AnselToUnicode> converters =
+            new ThreadLocal<AnselToUnicode>() {
+
+                @Override
+                protected AnselToUnicode initialValue() {
+                    return new CompactAnselToUnicode();
+                }
+            };
+
+    private MarcCharDecoder() {
+    }
+
+    /**
+     * An AnselToUnicode converting through the CompactCodeTable.
+     */
+    private static final class CompactAnselToUnicode extends AnselToUnicode {
+
+        CompactAnselToUnicode() {
+            super();
+            this.ct = CompactCodeTable.getInstance();
+        }
+    }
+
+    /**
+     * Decode field data to Unicode.
+     *
+     * @param data the field data as read.
+     * @param unicode whether the record is Unicode encoded.
+     * @return the Unicode String, null for null data.
+     */
+    public static String decode(final String data, final boolean unicode) {
+        if (data == null || unicode || isPlainAscii(data)) {
+            return data;
+        }
+        return converters.get().convert(data);
+    }
+
+    /**
+     * Is data printable ASCII only, with no escape sequences,
+     * and so the same in MARC-8 and Unicode?
+     */
+    private static boolean isPlainAscii(final String data) {
+        for (int idx = 0; idx < data.length(); idx++) {
+            final char ch = data.charAt(idx);
+            if (ch < 0x20 || ch > 0x7E) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -34,18 +34,127 @@ import org.marc4j.MarcReader;
 import org.marc4j.MarcStreamReader;
 
 import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 
 public class MarcCollection {
 
+    /**
+     * Told of each record skipped for its type of record.
+     */
+    public interface SkipListener {
+
+        /**
+         * A record was skipped, without being decoded.
+         * @param typeOfRecord leader/06 of the skipped record.
+         */
+        void skipped(char typeOfRecord);
+    }
+
     private MarcReader marcReader;
 
     public MarcCollection(String file) throws Exception {
-        InputStream in = new FileInputStream(file);
+        this(new FileInputStream(file));
+    }
+
+    public MarcCollection(InputStream in) {
         // defaults to Latin-1 or UTF8 input, unless...
         this.marcReader = new MarcStreamReader(in);
     }
 
+    /**
+     * A collection of only the records of the given types of record.
+     * Other records are skipped by their leader alone.
+     *
+     * @param file the MARC data file.
+     * @param types leader/06 type of record codes to read, e.g. "jcd",
+     *              null or empty for all records.
+     * @param listener told of skipped records, or null.
+     * @throws Exception if the file cannot be opened.
+     */
+    public MarcCollection(String file, String types, SkipListener listener)
+            throws Exception {
+        this(new FileInputStream(file), types, listener);
+    }
+
+    public MarcCollection(InputStream in, String types, SkipListener listener) {
+        this((null == types || types.length() == 0)
+                ? in
+                : new MarcTypeFilterInputStream(in, types, listener));
+    }
+
+    /**
+     * A collection of the records within a byte range of a MARC data file,
+     * such as a range of a MarcOffsetIndex.
+     *
+     * @param file the MARC data file.
+     * @param start offset of the first record.
+     * @param end offset just past the last record.
+     * @param types leader/06 type of record codes to read, e.g. "jcd",
+     *              null or empty for all records.
+     * @param listener told of skipped records, or null.
+     * @throws IOException if the file cannot be opened.
+     */
+    public MarcCollection(String file,
+                          long start,
+                          long end,
+                          String types,
+                          SkipListener listener) throws IOException {
+        this(openRange(file, start, end), types, listener);
+    }
+
+    /**
+     * A collection of the records from fromRecNum up to, not including,
+     * toRecNum.
+     *
+     * @param file the MARC data file.
+     * @param index the offset index of the file.
+     * @param fromRecNum first record number, from 1.
+     * @param toRecNum record number after the last, up to size() + 1.
+     * @param types leader/06 type of record codes to read,
+     *              null or empty for all records.
+     * @param listener told of skipped records, or null.
+     * @throws IOException if the file cannot be opened.
+     */
+    public MarcCollection(String file,
+                          MarcOffsetIndex index,
+                          int fromRecNum,
+                          int toRecNum,
+                          String types,
+                          SkipListener listener) throws IOException {
+        this(file, index.offset(fromRecNum), index.offset(toRecNum),
+             types, listener);
+    }
+
+    /**
+     * Read a single record by its number, through the offset index.
+     *
+     * @param file the MARC data file.
+     * @param recNum the record number, from 1.
+     * @return the record.
+     * @throws IOException if the file cannot be indexed or read.
+     */
+    public static MarcRecord readRecord(String file, int recNum)
+            throws IOException {
+        final MarcOffsetIndex index = MarcOffsetIndex.forFile(file);
+        final MarcCollection collection =
+                new MarcCollection(file, index, recNum, recNum + 1, null, null);
+        return collection.next();
+    }
+
+    private static InputStream openRange(String file, long start, long end)
+            throws IOException {
+        final FileInputStream in = new FileInputStream(file);
+        try {
+            in.getChannel().position(start);
+        } catch (IOException ex) {
+            in.close();
+            throw ex;
+        }
+        return new RangeInputStream(in, end - start);
+    }
+
     public boolean hasNext() {
         return this.marcReader.hasNext();
     }
@@ -58,6 +167,61 @@ public class MarcCollection {
         }
     }
 
+    /**
+     * A stream ending after a given number of bytes.
+     */
+    private static final class RangeInputStream extends FilterInputStream {
+
+        private long remaining;
+
+        RangeInputStream(InputStream in, long length) {
+            super(in);
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (this.remaining <= 0) {
+                return -1;
+            }
+            final int value = this.in.read();
+            if (value != -1) {
+                this.remaining--;
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] buf, int off, int len) throws IOException {
+            if (this.remaining <= 0) {
+                return -1;
+            }
+            final int count =
+                    this.in.read(buf, off, (int) Math.min(len, this.remaining));
+            if (count > 0) {
+                this.remaining -= count;
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            final long skipped = this.in.skip(Math.min(n, this.remaining));
+            this.remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(this.in.available(), this.remaining);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+
 //    public static void main(String[] args) throws Exception {
 //        final MarcCollection collection = new MarcCollection(args[0]);
 //        DAOFactory daoFac = new DAOFactory();
@@ -33,7 +33,6 @@ package edu.indiana.dlib.vfrbr.frbrize.batchloading.marcDecorators;
 import java.util.ArrayList;
 import java.util.List;
 
-import org.marc4j.converter.impl.AnselToUnicode;
 import org.marc4j.marc.DataField;
 import org.marc4j.marc.Subfield;
 
@@ -41,68 +40,139 @@ public class MarcDataField {
 
     DataField dataField;
 
+    /**
+     * Whether the record of the field is Unicode encoded.
+     */
+    private final boolean unicode;
+
+    /*
+     * subfield codes and decoded data, in field order,
+     * decoded on first use, and published whole,
+     * since records are shared between loading threads
+     */
+    private volatile Subfields subfields;
+
     public MarcDataField(DataField variableField) {
+        this(variableField, false);
+    }
+
+    public MarcDataField(DataField variableField, boolean unicode) {
         this.dataField = variableField;
+        this.unicode = unicode;
     }
 
     public String getTag() {
         return this.dataField.getTag();
     }
 
+    /**
+     * Would concatSubfields(fields) be non-empty?
+     * Checked without building the concatenation.
+     *
+     * @param fields the subfield codes.
+     * @return whether the field has non-empty data in those subfields.
+     */
     public boolean hasSubfields(char[] fields) {
-        return !(this.concatSubfields(fields).equals(""));
+        if (!isDistinct(fields)) {
+            // repeated codes repeat their data
+            return !concat(fields, null, false).equals("");
+        }
+        return has(fields, null);
+    }
+
+    /**
+     * Would concatSubfields(fields) be non-empty?
+     *
+     * @param fields the precompiled subfield codes.
+     * @return whether the field has non-empty data in those subfields.
+     */
+    public boolean hasSubfields(SubfieldCodes fields) {
+        if (!fields.isDistinct()) {
+            return !concatSubfields(fields).equals("");
+        }
+        return has(fields.getCodes(), fields);
+    }
+
+    private boolean has(char[] codes, SubfieldCodes table) {
+        final Subfields decoded = decodeSubfields();
+        int nonBlank = 0;
+        char lastNonBlank = ' ';
+        for (int idx = 0; idx < decoded.codes.length; idx++) {
+            if (position(codes, table, decoded.codes[idx]) >= 0) {
+                final String value = decoded.values[idx];
+                if (value == null) {
+                    // concatenated as "null"
+                    return true;
+                }
+                for (int pos = 0; pos < value.length(); pos++) {
+                    final char ch = value.charAt(pos);
+                    if (ch > ' ') {
+                        nonBlank++;
+                        lastNonBlank = ch;
+                    }
+                }
+                if (nonBlank > 1) {
+                    return true;
+                }
+            }
+        }
+        // a lone trailing punctuation mark is cleaned away
+        return nonBlank == 1 && !isCleanedPunctuation(lastNonBlank);
     }
 
     public String get1stIndicator() {
         String returnValue = String.valueOf(this.dataField.getIndicator1());
-        AnselToUnicode converter = new AnselToUnicode();
-        return converter.convert(returnValue);
+        return MarcCharDecoder.decode(returnValue, this.unicode);
     }
 
     public String get2ndIndicator() {
         String returnValue = String.valueOf(this.dataField.getIndicator2());
-        AnselToUnicode converter = new AnselToUnicode();
-        return converter.convert(returnValue);
+        return MarcCharDecoder.decode(returnValue, this.unicode);
     }
 
+    /**
+     * Concatenate the data of the subfields, space separated,
+     * all the subfields of the first code, then of the second code, ...
+     *
+     * @param fields the subfield codes, in concatenation order.
+     * @return the cleaned concatenation, "" if none.
+     */
     public String concatSubfields(char[] fields) {
-        String returnValue = "";
-        for (char currentField : fields) {
-            List<Subfield> values = dataField.getSubfields(currentField);
-            for (Subfield value : values) {
-                returnValue = returnValue + " " + value.getData();
-            }
-        }
-
-        AnselToUnicode converter = new AnselToUnicode();
+        return concat(fields, null, isDistinct(fields));
+    }
 
-        return clean(converter.convert(returnValue));
+    /**
+     * Concatenate the data of the subfields, as concatSubfields(char[]).
+     *
+     * @param fields the precompiled subfield codes.
+     * @return the cleaned concatenation, "" if none.
+     */
+    public String concatSubfields(SubfieldCodes fields) {
+        return concat(fields.getCodes(), fields, fields.isDistinct());
     }
 
     public String concatAllBut(String excludeFields) {
-        String returnValue = "";
-        for (Object tempObject : this.dataField.getSubfields()) {
-            Subfield currentSubfield = (Subfield) tempObject;
-            if (!excludeFields.contains(
-                    String.valueOf(currentSubfield.getCode()))) {
-                returnValue = returnValue + " " + currentSubfield.getData();
+        final Subfields decoded = decodeSubfields();
+        StringBuilder returnValue = null;
+        for (int idx = 0; idx < decoded.codes.length; idx++) {
+            if (excludeFields.indexOf(decoded.codes[idx]) < 0) {
+                if (returnValue == null) {
+                    returnValue = new StringBuilder();
+                }
+                returnValue.append(' ').append(decoded.values[idx]);
             }
         }
 
-        AnselToUnicode converter = new AnselToUnicode();
-        return clean(converter.convert(returnValue));
+        return (returnValue == null) ? "" : clean(returnValue.toString());
     }
 
     public List<String> getValueList(char field) {
+        final Subfields decoded = decodeSubfields();
         ArrayList<String> returnList = new ArrayList<String>();
 
-        List<Subfield> tempList = this.dataField.getSubfields(field);
-
-        AnselToUnicode converter = new AnselToUnicode();
-
-        for (Subfield sf : tempList) {
-            if (sf != null) {
-                returnList.add(clean(converter.convert(sf.getData())));
+        for (int idx = 0; idx < decoded.codes.length; idx++) {
+            if (decoded.codes[idx] == field) {
+                returnList.add(clean(decoded.values[idx]));
             }
         }
 
@@ -110,17 +180,134 @@ public class MarcDataField {
     }
 
     public String getValue(char field) {
+        final Subfields decoded = decodeSubfields();
         String returnValue = null;
 
-        Subfield subField = this.dataField.getSubfield(field);
-        if (subField != null) {
-            AnselToUnicode converter = new AnselToUnicode();
-            returnValue = clean(converter.convert(subField.getData()));
+        // the first subfield of the code
+        for (int idx = 0; idx < decoded.codes.length; idx++) {
+            if (decoded.codes[idx] == field) {
+                returnValue = clean(decoded.values[idx]);
+                break;
+            }
         }
 
         return returnValue;
     }
 
+    /**
+     * The concatenation engine.
+     * One pass over the subfields while they come in code order,
+     * which is the usual case, else a pass per code.
+     */
+    private String concat(char[] codes, SubfieldCodes table, boolean distinct) {
+        final Subfields decoded = decodeSubfields();
+        StringBuilder returnValue = null;
+
+        boolean inCodeOrder = distinct;
+        int lastPosition = -1;
+        for (int idx = 0; idx < decoded.codes.length && inCodeOrder; idx++) {
+            final int position =
+                    position(codes, table, decoded.codes[idx]);
+            if (position >= 0) {
+                if (position < lastPosition) {
+                    inCodeOrder = false;
+                } else {
+                    lastPosition = position;
+                    if (returnValue == null) {
+                        returnValue = new StringBuilder();
+                    }
+                    returnValue.append(' ').append(decoded.values[idx]);
+                }
+            }
+        }
+
+        if (!inCodeOrder) {
+            if (returnValue != null) {
+                returnValue.setLength(0);
+            }
+            for (char currentField : codes) {
+                for (int idx = 0; idx < decoded.codes.length; idx++) {
+                    if (decoded.codes[idx] == currentField) {
+                        if (returnValue == null) {
+                            returnValue = new StringBuilder();
+                        }
+                        returnValue.append(' ').append(decoded.values[idx]);
+                    }
+                }
+            }
+        }
+
+        return (returnValue == null) ? "" : clean(returnValue.toString());
+    }
+
+    /**
+     * Position of code in codes, by table if precompiled.
+     */
+    private static int position(char[] codes, SubfieldCodes table, char code) {
+        return (table != null) ? table.indexOf(code) : indexOf(codes, code);
+    }
+
+    private static int indexOf(char[] codes, char code) {
+        for (int idx = 0; idx < codes.length; idx++) {
+            if (codes[idx] == code) {
+                return idx;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isDistinct(char[] codes) {
+        for (int idx = 1; idx < codes.length; idx++) {
+            if (indexOf(codes, codes[idx]) < idx) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isCleanedPunctuation(char ch) {
+        return ch == '.' || ch == ',' || ch == ';';
+    }
+
+    /**
+     * Decode the subfield data, once per MarcDataField.
+     * A thread racing the first decode may decode again,
+     * to an equal result.
+     */
+    private Subfields decodeSubfields() {
+        Subfields decoded = this.subfields;
+        if (decoded != null) {
+            return decoded;
+        }
+        final List<?> fieldSubfields = this.dataField.getSubfields();
+        final char[] codes = new char[fieldSubfields.size()];
+        final String[] values = new String[fieldSubfields.size()];
+        for (int idx = 0; idx < codes.length; idx++) {
+            final Subfield subfield = (Subfield) fieldSubfields.get(idx);
+            codes[idx] = subfield.getCode();
+            values[idx] = MarcCharDecoder.decode(subfield.getData(),
+                                                 this.unicode);
+        }
+        decoded = new Subfields(codes, values);
+        this.subfields = decoded;
+        return decoded;
+    }
+
+    /**
+     * The decoded subfields, never modified once built.
+     */
+    private static final class Subfields {
+
+        private final char[] codes;
+
+        private final String[] values;
+
+        Subfields(final char[] codes, final String[] values) {
+            this.codes = codes;
+            this.values = values;
+        }
+    }
+
     private String clean(String value) {
         String trimmedValue = value.trim();
         if (trimmedValue.endsWith(".")
@@ -0,0 +1,305 @@
+/**
+ * Copyright 2009-2011, Trustees of Indiana University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *   Neither the name of Indiana University nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.indiana.dlib.vfrbr.frbrize.batchloading.marcDecorators;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Byte offsets of the records of a MARC data file, by record number.
+ *
+ * Each ISO 2709 record carries its length in leader/00-04, so the file
+ * is indexed by hopping from leader to leader of a memory-mapped view,
+ * without decoding any record. The index is kept beside the data file
+ * as a sidecar, e.g. frbr14.mrc.idx, and rebuilt when the data file
+ * changes length or modification time.
+ *
+ * Record numbers count from 1 in file order, as the fileName:recNum
+ * of the logs and report tables.
+ */
+public final class MarcOffsetIndex {
+
+    private static final Logger log = Logger.getLogger(MarcOffsetIndex.class);
+
+    /**
+     * Sidecar file name suffix.
+     */
+    public static final String SUFFIX = ".idx";
+
+    private static final int MAGIC = 0x4D415258;
+
+    private static final int VERSION = 1;
+
+    private static final int RECORD_LENGTH_DIGITS = 5;
+
+    private static final int LEADER_LENGTH = 24;
+
+    /**
+     * Largest memory-mapped view of the data file while indexing.
+     */
+    private static final long WINDOW = 64L * 1024 * 1024;
+
+    private final long fileLength;
+
+    private final long lastModified;
+
+    /**
+     * Record start offsets, offsets[recNum - 1].
+     */
+    private final long[] offsets;
+
+    private MarcOffsetIndex(final long fileLength,
+                            final long lastModified,
+                            final long[] offsets) {
+        this.fileLength = fileLength;
+        this.lastModified = lastModified;
+        this.offsets = offsets;
+    }
+
+    /**
+     * Get the index of a MARC data file, from its sidecar when current,
+     * otherwise indexing the file and writing the sidecar.
+     *
+     * @param path the MARC data file.
+     * @return the index.
+     * @throws IOException if the file cannot be read or is not MARC.
+     */
+    public static MarcOffsetIndex forFile(final String path)
+            throws IOException {
+        final File marcFile = new File(path);
+        final File sidecar = new File(path + SUFFIX);
+        if (sidecar.isFile()) {
+            try {
+                final MarcOffsetIndex index = read(sidecar);
+                if (index.fileLength == marcFile.length()
+                        && index.lastModified == marcFile.lastModified()) {
+                    return index;
+                }
+                log.info("offset index out of date: " + sidecar);
+            } catch (IOException ex) {
+                log.warn("offset index unreadable, rebuilding: " + sidecar, ex);
+            }
+        }
+        final MarcOffsetIndex index = build(marcFile);
+        try {
+            index.write(sidecar);
+        } catch (IOException ex) {
+            // still usable from memory
+            log.warn("offset index not written: " + sidecar, ex);
+        }
+        return index;
+    }
+
+    /**
+     * Index a MARC data file by its record lengths.
+     *
+     * @param marcFile the MARC data file.
+     * @return the index.
+     * @throws IOException if the file cannot be read or is not MARC.
+     */
+    public static MarcOffsetIndex build(final File marcFile)
+            throws IOException {
+        final long lastModified = marcFile.lastModified();
+        final RandomAccessFile raf = new RandomAccessFile(marcFile, "r");
+        try {
+            final FileChannel channel = raf.getChannel();
+            final long size = channel.size();
+
+            long[] offsets = new long[1024];
+            int count = 0;
+
+            MappedByteBuffer window = null;
+            long windowStart = 0;
+            long pos = 0;
+            while (pos < size) {
+                if (size - pos < LEADER_LENGTH) {
+                    log.warn("offset index: " + (size - pos)
+                            + " trailing bytes ignored in " + marcFile);
+                    break;
+                }
+                if (null == window
+                        || pos + RECORD_LENGTH_DIGITS
+                        > windowStart + window.limit()) {
+                    windowStart = pos;
+                    window = channel.map(FileChannel.MapMode.READ_ONLY,
+                                         pos,
+                                         Math.min(WINDOW, size - pos));
+                }
+                int length = 0;
+                for (int idx = 0; idx < RECORD_LENGTH_DIGITS; idx++) {
+                    final int digit =
+                            window.get((int) (pos - windowStart) + idx) - '0';
+                    if (digit < 0 || digit > 9) {
+                        throw new IOException("no record length at offset "
+                                + pos + " of " + marcFile);
+                    }
+                    length = (length * 10) + digit;
+                }
+                if (length < LEADER_LENGTH) {
+                    throw new IOException("record length " + length
+                            + " at offset " + pos + " of " + marcFile);
+                }
+                if (count == offsets.length) {
+                    offsets = Arrays.copyOf(offsets, count * 2);
+                }
+                offsets[count++] = pos;
+                pos += length;
+            }
+
+            return new MarcOffsetIndex(size,
+                                       lastModified,
+                                       Arrays.copyOf(offsets, count));
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static MarcOffsetIndex read(final File sidecar)
+            throws IOException {
+        final DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(sidecar)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("not an offset index");
+            }
+            final long fileLength = in.readLong();
+            final long lastModified = in.readLong();
+            final long[] offsets = new long[in.readInt()];
+            for (int idx = 0; idx < offsets.length; idx++) {
+                offsets[idx] = in.readLong();
+            }
+            return new MarcOffsetIndex(fileLength, lastModified, offsets);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Write the sidecar, by way of a temporary file renamed into place.
+     */
+    private void write(final File sidecar) throws IOException {
+        final File temp = new File(sidecar.getPath() + ".tmp");
+        final DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(this.fileLength);
+            out.writeLong(this.lastModified);
+            out.writeInt(this.offsets.length);
+            for (long offset : this.offsets) {
+                out.writeLong(offset);
+            }
+        } finally {
+            out.close();
+        }
+        if (sidecar.exists() && !sidecar.delete()) {
+            throw new IOException("cannot replace " + sidecar);
+        }
+        if (!temp.renameTo(sidecar)) {
+            throw new IOException("cannot rename " + temp + " to " + sidecar);
+        }
+    }
+
+    /**
+     * @return the number of records in the file.
+     */
+    public int size() {
+        return this.offsets.length;
+    }
+
+    /**
+     * Get the start offset of a record, or the end of the file for the
+     * record number just past the last record.
+     *
+     * @param recNum record number, from 1 to size() + 1.
+     * @return the byte offset.
+     */
+    public long offset(final int recNum) {
+        if (recNum < 1 || recNum > this.offsets.length + 1) {
+            throw new IndexOutOfBoundsException("record " + recNum
+                    + " of " + this.offsets.length);
+        }
+        return (recNum > this.offsets.length)
+                ? this.fileLength
+                : this.offsets[recNum - 1];
+    }
+
+    /**
+     * Split the records into consecutive ranges of at most
+     * recordsPerPartition records.
+     *
+     * @param recordsPerPartition the most records in a range.
+     * @return the first record number of each range, and size() + 1
+     *         after the last.
+     */
+    public int[] partitions(final int recordsPerPartition) {
+        final int per = Math.max(1, recordsPerPartition);
+        final int parts = Math.max(1, (this.offsets.length + per - 1) / per);
+        final int[] starts = new int[parts + 1];
+        for (int part = 0; part < parts; part++) {
+            starts[part] = 1 + (part * per);
+        }
+        starts[parts] = this.offsets.length + 1;
+        return starts;
+    }
+
+    /**
+     * Index MARC data files, or print a single record by number.
+     * Usage: MarcOffsetIndex file.mrc... | MarcOffsetIndex -r file.mrc recNum
+     *
+     * @param args the arguments.
+     * @throws Exception if a file cannot be indexed or read.
+     */
+    public static void main(final String[] args) throws Exception {
+        if (args.length == 3 && "-r".equals(args[0])) {
+            System.out.println(MarcCollection.readRecord(
+                    args[1], Integer.parseInt(args[2])));
+            return;
+        }
+        for (String path : args) {
+            final MarcOffsetIndex index = forFile(path);
+            System.out.println(path + ": " + index.size() + " records");
+        }
+    }
+}
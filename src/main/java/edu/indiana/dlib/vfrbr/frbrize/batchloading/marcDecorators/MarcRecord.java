@@ -31,8 +31,10 @@
 package edu.indiana.dlib.vfrbr.frbrize.batchloading.marcDecorators;
 
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.marc4j.marc.ControlField;
 import org.marc4j.marc.DataField;
@@ -61,10 +63,48 @@ public class MarcRecord {
 
     public static final String OTHER = "Other";
 
+    private static final String[] FIELDS_7XX = {"700", "710", "711"};
+
+    private static final String[] FIELDS_1XX = {"100", "110", "111", "130"};
+
     private Record record;
 
+    /**
+     * Whether the record is Unicode encoded, leader/09 'a'.
+     */
+    private final boolean unicode;
+
+    /**
+     * Wrapped data fields and their tag index, built on first field lookup
+     * and published whole, since records are shared between loading
+     * threads.
+     */
+    private volatile FieldIndex fieldIndex;
+
+    /**
+     * Memoized getGroup() result.
+     */
+    private String group;
+
+    /**
+     * Memoized getType() result.
+     */
+    private String type;
+
     public MarcRecord(Record record) {
         this.record = record;
+        final Leader leader = record.getLeader();
+        this.unicode = (leader != null)
+                && (leader.getCharCodingScheme() == 'a');
+    }
+
+    /**
+     * Is the record Unicode encoded, rather than MARC-8?
+     *
+     * @return whether leader/09 is 'a'.
+     */
+    public boolean isUnicode() {
+        return this.unicode;
     }
 
     public boolean hasField(String field) {
@@ -72,33 +112,65 @@ public class MarcRecord {
     }
 
     public boolean hasField(String[] fields) {
-        return (this.getDataFields(fields).size() > 0);
+        final Map<String, int[]> index = this.getTagIndex();
+        for (String field : fields) {
+            if (index.containsKey(field)) {
+                return true;
+            }
+        }
+        return false;
     }
 
+    /**
+     * Get the data fields with the given tag, in record order.
+     * The wrappers are shared for the life of this record, and the
+     * returned list is not modifiable.
+     *
+     * @param field the field tag.
+     * @return the matching data fields, possibly empty.
+     */
     public List<MarcDataField> getDataFields(String field) {
-        List<?> tempFields = record.getVariableFields(field);
-        List<MarcDataField> marcFields = new ArrayList<MarcDataField>();
-        for (Object tempField : tempFields) {
-            marcFields.add(new MarcDataField((DataField) tempField));
+        final int[] positions = this.getTagIndex().get(field);
+        if (null == positions) {
+            return Collections.emptyList();
         }
-        return marcFields;
+        return this.wrap(positions);
     }
 
+    /**
+     * Get the data fields with any of the given tags, grouped by tag in
+     * the order of the tags, each group in record order, as marc4j's
+     * Record.getVariableFields(String[]).
+     *
+     * @param fields the field tags.
+     * @return the matching data fields, possibly empty.
+     */
     public List<MarcDataField> getDataFields(String[] fields) {
-        List<?> tempFields = record.getVariableFields(fields);
-        List<MarcDataField> marcFields = new ArrayList<MarcDataField>();
-        for (Object tempField : tempFields) {
-            marcFields.add(new MarcDataField((DataField) tempField));
+        final Map<String, int[]> index = this.getTagIndex();
+        int[] positions = null;
+        for (String field : fields) {
+            final int[] tagPositions = index.get(field);
+            if (null == tagPositions) {
+                continue;
+            }
+            if (null == positions) {
+                positions = tagPositions;
+            } else {
+                positions = concat(positions, tagPositions);
+            }
         }
-        return marcFields;
+        if (null == positions) {
+            return Collections.emptyList();
+        }
+        return this.wrap(positions);
     }
 
     public MarcDataField getDataField(String field) {
-        DataField dataField = (DataField) record.getVariableField(field);
-        if (null == dataField) {
+        final int[] positions = this.getTagIndex().get(field);
+        if (null == positions) {
             return null;
         } else {
-            return new MarcDataField(dataField);
+            return this.wrapAt(positions[0]);
         }
     }
 
@@ -144,32 +216,33 @@ public class MarcRecord {
      * Group4 - 3+ 700|t
      */
     public String getGroup() {
-        String[] fields7xx = {"700", "710", "711"};
-        String[] fields1xx = {"100", "110", "111", "130"};
-        String field240 = "240";
-        String field245 = "245";
+        if (null == this.group) {
+            this.group = this.computeGroup();
+        }
+        return this.group;
+    }
 
-        //FIXED currently ignores subfield t 
-//        int number7xx = (this.record.getVariableFields( fields7xx )).size();
+    private String computeGroup() {
+        final Map<String, int[]> index = this.getTagIndex();
 
         // of the 7xx fields, how many have 't' subfields
+        final List<?> fields = this.record.getDataFields();
         int number7xxt = 0;
-        Iterator<DataField> dataFields =
-                (this.record.getVariableFields(fields7xx)).iterator();
-        while (dataFields.hasNext()) {
-            if (null != (dataFields.next()).getSubfield('t')) {
-                number7xxt++;
+        for (String field7xx : FIELDS_7XX) {
+            final int[] positions = index.get(field7xx);
+            if (null == positions) {
+                continue;
+            }
+            for (int pos : positions) {
+                if (null != ((DataField) fields.get(pos)).getSubfield('t')) {
+                    number7xxt++;
+                }
             }
         }
 
-
-        boolean has1xx;
-        boolean has240;
-        boolean has245;
-
-        has1xx = (this.record.getVariableFields(fields1xx).size() > 0);
-        has240 = (this.record.getVariableFields(field240).size() > 0);
-        has245 = (this.record.getVariableFields(field245).size() > 0);
+        boolean has1xx = this.hasField(FIELDS_1XX);
+        boolean has240 = index.containsKey("240");
+        boolean has245 = index.containsKey("245");
 
         if (number7xxt == 0) { //group1x check
             if (has1xx && has240 && has245) { //group1a check
@@ -194,8 +267,19 @@ public class MarcRecord {
     //leader position 6 values
     // j - Musical Recording
     public String getType() {
-        Leader leader = this.record.getLeader();
-        char typeChar = leader.getTypeOfRecord();
+        if (null == this.type) {
+            this.type = typeOf(this.record.getLeader().getTypeOfRecord());
+        }
+        return this.type;
+    }
+
+    /**
+     * Map a leader/06 type of record to RECORDING, SCORE or OTHER.
+     *
+     * @param typeChar the leader/06 value.
+     * @return the record type.
+     */
+    public static String typeOf(char typeChar) {
         switch (typeChar) {
             case 'j':
                 return RECORDING;
@@ -220,8 +304,89 @@ public class MarcRecord {
         return this.record;
     }
 
+    private Map<String, int[]> getTagIndex() {
+        return this.getFieldIndex().byTag;
+    }
+
+    /**
+     * Build the tag index over the record's data fields on first use.
+     * The record is not modified after it is read, so the index stays
+     * valid for the life of this decorator.  A thread racing the first
+     * lookup may build it again, to an equal result.
+     */
+    private FieldIndex getFieldIndex() {
+        FieldIndex built = this.fieldIndex;
+        if (null == built) {
+            final List<?> fields = this.record.getDataFields();
+            final MarcDataField[] wrapped = new MarcDataField[fields.size()];
+            final Map<String, int[]> index =
+                    new HashMap<String, int[]>(fields.size() * 2);
+            for (int pos = 0; pos < fields.size(); pos++) {
+                final DataField field = (DataField) fields.get(pos);
+                // wrapping is cheap, the subfields decode on first use
+                wrapped[pos] = new MarcDataField(field, this.unicode);
+                final String tag = field.getTag();
+                final int[] positions = index.get(tag);
+                if (null == positions) {
+                    index.put(tag, new int[]{pos});
+                } else {
+                    final int[] grown = new int[positions.length + 1];
+                    System.arraycopy(positions, 0, grown, 0, positions.length);
+                    grown[positions.length] = pos;
+                    index.put(tag, grown);
+                }
+            }
+            built = new FieldIndex(wrapped, index);
+            this.fieldIndex = built;
+        }
+        return built;
+    }
+
+    private MarcDataField wrapAt(int pos) {
+        return this.getFieldIndex().fields[pos];
+    }
+
+    private List<MarcDataField> wrap(int[] positions) {
+        if (positions.length == 1) {
+            return Collections.singletonList(this.wrapAt(positions[0]));
+        }
+        final List<MarcDataField> marcFields =
+                new ArrayList<MarcDataField>(positions.length);
+        for (int pos : positions) {
+            marcFields.add(this.wrapAt(pos));
+        }
+        return Collections.unmodifiableList(marcFields);
+    }
+
+    /**
+     * Append one position array to another.
+     */
+    private static int[] concat(int[] left, int[] right) {
+        final int[] joined = new int[left.length + right.length];
+        System.arraycopy(left, 0, joined, 0, left.length);
+        System.arraycopy(right, 0, joined, left.length, right.length);
+        return joined;
+    }
+
     @Override
     public String toString() {
         return this.record.toString();
     }
-}
\ No newline at end of file
+
+    /**
+     * The wrapped data fields in record order, and their positions by tag,
+     * never modified once built.
+     */
+    private static final class FieldIndex {
+
+        private final MarcDataField[] fields;
+
+        private final Map<String, int[]> byTag;
+
+        FieldIndex(final MarcDataField[] fields,
+                   final Map<String, int[]> byTag) {
+            this.fields = fields;
+            this.byTag = byTag;
+        }
+    }
+}
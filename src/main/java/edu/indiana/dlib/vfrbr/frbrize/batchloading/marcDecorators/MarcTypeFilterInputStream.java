@@ -0,0 +1,261 @@
+/**
+ * Copyright 2009-2011, Trustees of Indiana University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *   Neither the name of Indiana University nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.indiana.dlib.vfrbr.frbrize.batchloading.marcDecorators;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A MARC transmission stream passing on only the records of the wanted
+ * types of record, leader/06.
+ *
+ * Only the 24 byte leader of each record is read here: its record
+ * length, leader/00-04, and type of record. The rest of an unwanted
+ * record is skipped without decoding its directory or fields.
+ * Should a leader not carry a numeric record length, the stream is
+ * passed on unfiltered from there, for the MarcStreamReader to report.
+ */
+final class MarcTypeFilterInputStream extends FilterInputStream {
+
+    private static final int LEADER_LENGTH = 24;
+
+    private static final int RECORD_LENGTH_DIGITS = 5;
+
+    private static final int TYPE_OF_RECORD = 6;
+
+    /**
+     * Wanted types of record, by leader/06 byte.
+     */
+    private final boolean[] wanted = new boolean[0x100];
+
+    private final MarcCollection.SkipListener listener;
+
+    /**
+     * Leader of the current record, passed on before the rest of it.
+     */
+    private final byte[] leader = new byte[LEADER_LENGTH];
+
+    private int leaderLength;
+
+    private int leaderPos;
+
+    /**
+     * Bytes of the current record after its leader still to pass on.
+     */
+    private long remaining;
+
+    private boolean unfiltered;
+
+    private boolean ended;
+
+    /**
+     * @param in the MARC data.
+     * @param types the wanted leader/06 type of record codes, e.g. "jcd".
+     * @param listener told of skipped records, or null.
+     */
+    MarcTypeFilterInputStream(final InputStream in,
+                              final String types,
+                              final MarcCollection.SkipListener listener) {
+        super(new BufferedInputStream(in));
+        for (int idx = 0; idx < types.length(); idx++) {
+            this.wanted[types.charAt(idx) & 0xFF] = true;
+        }
+        this.listener = listener;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final byte[] one = new byte[1];
+        return (this.read(one, 0, 1) == -1) ? -1 : (one[0] & 0xFF);
+    }
+
+    @Override
+    public int read(final byte[] buf, final int off, final int len)
+            throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!this.advance()) {
+            return -1;
+        }
+        if (this.leaderPos < this.leaderLength) {
+            final int count = Math.min(len, this.leaderLength - this.leaderPos);
+            System.arraycopy(this.leader, this.leaderPos, buf, off, count);
+            this.leaderPos += count;
+            return count;
+        }
+        final int want = this.unfiltered
+                ? len
+                : (int) Math.min(len, this.remaining);
+        final int count = this.in.read(buf, off, want);
+        if (count == -1) {
+            this.ended = true;
+            return -1;
+        }
+        this.remaining -= count;
+        return count;
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+        final byte[] buf = new byte[(int) Math.min(n, 8192)];
+        long skipped = 0;
+        while (skipped < n) {
+            final int count = this.read(
+                    buf, 0, (int) Math.min(buf.length, n - skipped));
+            if (count == -1) {
+                break;
+            }
+            skipped += count;
+        }
+        return skipped;
+    }
+
+    /**
+     * Nonzero while a wanted record is left, the MarcStreamReader
+     * takes 0 as the end of the data.
+     */
+    @Override
+    public int available() throws IOException {
+        if (!this.advance()) {
+            return 0;
+        }
+        final long left = (this.leaderLength - this.leaderPos)
+                + (this.unfiltered ? this.in.available() : this.remaining);
+        return (int) Math.min(left, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(final int readlimit) {
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    /**
+     * Position at the next wanted record, unless within one.
+     * @return false at the end of the data.
+     */
+    private boolean advance() throws IOException {
+        if (this.leaderPos < this.leaderLength) {
+            return true;
+        }
+        if (this.unfiltered) {
+            return !this.ended;
+        }
+        if (this.remaining > 0) {
+            return true;
+        }
+        while (!this.ended) {
+            this.leaderLength = this.readLeader();
+            this.leaderPos = 0;
+            if (this.leaderLength < LEADER_LENGTH) {
+                // a truncated last record
+                this.ended = true;
+                this.unfiltered = true;
+                return this.leaderLength > 0;
+            }
+            final int recordLength = this.recordLength();
+            if (recordLength < LEADER_LENGTH) {
+                this.unfiltered = true;
+                return true;
+            }
+            this.remaining = recordLength - LEADER_LENGTH;
+            final char type = (char) (this.leader[TYPE_OF_RECORD] & 0xFF);
+            if (this.wanted[type]) {
+                return true;
+            }
+            this.skipRecord();
+            if (this.listener != null) {
+                this.listener.skipped(type);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the leader bytes read, short only at the end of the data.
+     */
+    private int readLeader() throws IOException {
+        int length = 0;
+        while (length < LEADER_LENGTH) {
+            final int count =
+                    this.in.read(this.leader, length, LEADER_LENGTH - length);
+            if (count == -1) {
+                this.ended = true;
+                break;
+            }
+            length += count;
+        }
+        return length;
+    }
+
+    /**
+     * @return the leader/00-04 record length, -1 if not numeric.
+     */
+    private int recordLength() {
+        int length = 0;
+        for (int idx = 0; idx < RECORD_LENGTH_DIGITS; idx++) {
+            final int digit = this.leader[idx] - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            length = (length * 10) + digit;
+        }
+        return length;
+    }
+
+    private void skipRecord() throws IOException {
+        while (this.remaining > 0) {
+            long count = this.in.skip(this.remaining);
+            if (count <= 0) {
+                // skip may stop short, see whether the data ended
+                if (this.in.read() == -1) {
+                    this.ended = true;
+                    this.remaining = 0;
+                    return;
+                }
+                count = 1;
+            }
+            this.remaining -= count;
+        }
+        this.leaderPos = this.leaderLength;
+    }
+}
@@ -0,0 +1,123 @@
+/**
+ * Copyright 2009-2011, Trustees of Indiana University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *   Neither the name of Indiana University nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.indiana.dlib.vfrbr.frbrize.batchloading.marcDecorators;
+
+import java.util.Arrays;
+
+/**
+ * A precompiled set of subfield codes, in the order their subfields
+ * are to be concatenated, e.g. "abcdejq" for a person heading.
+ *
+ * Callers repeating the same code set keep it as a constant, and
+ * MarcDataField then looks codes up by table rather than by scanning.
+ */
+public final class SubfieldCodes {
+
+    /**
+     * Subfield codes are ASCII.
+     */
+    private static final int TABLE_SIZE = 128;
+
+    private final char[] codes;
+
+    /**
+     * Position of each code in codes, -1 if not a code.
+     */
+    private final byte[] positions = new byte[TABLE_SIZE];
+
+    /**
+     * Whether no code is repeated.
+     */
+    private final boolean distinct;
+
+    private SubfieldCodes(final char[] codes) {
+        this.codes = codes;
+
+        Arrays.fill(this.positions, (byte) -1);
+        boolean noRepeats = true;
+        for (int idx = 0; idx < codes.length; idx++) {
+            final char code = codes[idx];
+            if (code >= TABLE_SIZE || idx > Byte.MAX_VALUE) {
+                throw new IllegalArgumentException(
+                        "not a subfield code set: " + new String(codes));
+            }
+            if (this.positions[code] >= 0) {
+                noRepeats = false;
+            } else {
+                this.positions[code] = (byte) idx;
+            }
+        }
+        this.distinct = noRepeats;
+    }
+
+    /**
+     * Precompile a subfield code set.
+     *
+     * @param codes the subfield codes, in concatenation order.
+     * @return the SubfieldCodes.
+     */
+    public static SubfieldCodes of(final String codes) {
+        return new SubfieldCodes(codes.toCharArray());
+    }
+
+    /**
+     * Is code in the set?
+     *
+     * @param code a subfield code.
+     * @return whether the code is in the set.
+     */
+    public boolean contains(final char code) {
+        return indexOf(code) >= 0;
+    }
+
+    /**
+     * Position of a code in the concatenation order.
+     *
+     * @param code a subfield code.
+     * @return the position, or -1 if the code is not in the set.
+     */
+    public int indexOf(final char code) {
+        return (code < TABLE_SIZE) ? this.positions[code] : -1;
+    }
+
+    char[] getCodes() {
+        return this.codes;
+    }
+
+    boolean isDistinct() {
+        return this.distinct;
+    }
+
+    @Override
+    public String toString() {
+        return new String(this.codes);
+    }
+}
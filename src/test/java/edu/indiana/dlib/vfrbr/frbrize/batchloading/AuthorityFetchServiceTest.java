@@ -0,0 +1,208 @@
+/**
+ * Copyright 2009-2011, Trustees of Indiana University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *   Neither the name of Indiana University nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.indiana.dlib.vfrbr.frbrize.batchloading;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *  Concurrent fetches of a heading share the one fetch in flight,
+ * its records and its failure.
+ */
+public class AuthorityFetchServiceTest {
+
+    private static final String KEY = "bach_js";
+
+    private static final String QUERY = "@attr 1=1 \"Bach, Johann Sebastian\"";
+
+    private static final byte[] RECORDS = {'0', '0', '0', '2', '4'};
+
+    /**
+     * Searches made by the stub fetchers.
+     */
+    private static final AtomicInteger searches = new AtomicInteger();
+
+    /**
+     * Counted down when a search has started.
+     */
+    private static volatile CountDownLatch searchStarted;
+
+    /**
+     * Searches wait on it, until both fetches are made.
+     */
+    private static volatile CountDownLatch releaseSearch;
+
+    /**
+     * Whether the searches fail.
+     */
+    private static volatile boolean failing;
+
+    /**
+     *  Stub fetcher, searching once released.
+     */
+    public static final class StubFetcher implements AuthorityFetcher {
+
+        public StubFetcher(final Properties props) {
+        }
+
+        public byte[] search(final String query) throws Exception {
+            searches.incrementAndGet();
+            searchStarted.countDown();
+            if (!releaseSearch.await(10, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("search never released");
+            }
+            if (failing) {
+                throw new IOException("server down");
+            }
+            return RECORDS;
+        }
+
+        public void close() {
+        }
+    }
+
+    private final AtomicInteger stored = new AtomicInteger();
+
+    private final AuthorityFetchService.Sink sink =
+            new AuthorityFetchService.Sink() {
+
+                public void fetched(final byte[] records) {
+                    stored.incrementAndGet();
+                }
+            };
+
+    private ExecutorService callers;
+
+    private AuthorityFetchService service;
+
+    @Before
+    public void setUp() throws Exception {
+        AuthorityFetchService.shutdown();
+        searches.set(0);
+        searchStarted = new CountDownLatch(1);
+        releaseSearch = new CountDownLatch(1);
+        failing = false;
+
+        final Properties props = new Properties();
+        props.setProperty("authority_fetcher", StubFetcher.class.getName());
+        props.setProperty("authority_connections", "2");
+        props.setProperty("authority_requests_per_second", "1000");
+        props.setProperty("authority_burst", "10");
+        this.service = AuthorityFetchService.getInstance(props);
+        this.callers = Executors.newFixedThreadPool(2);
+    }
+
+    @After
+    public void tearDown() {
+        releaseSearch.countDown();
+        this.callers.shutdownNow();
+        AuthorityFetchService.shutdown();
+    }
+
+    @Test
+    public void concurrentFetchesShareOneFetch() throws Exception {
+
+        final List<Future<byte[]>> fetches = fetchConcurrently();
+        assertSame(fetches.get(0), fetches.get(1));
+
+        releaseSearch.countDown();
+        assertSame(RECORDS, fetches.get(0).get(10, TimeUnit.SECONDS));
+        assertSame(RECORDS, fetches.get(1).get(10, TimeUnit.SECONDS));
+        assertEquals(1, searches.get());
+        assertEquals(1, this.stored.get());
+        assertEquals(0, this.service.getInFlightCount());
+    }
+
+    @Test
+    public void failedFetchReachesEveryWaiter() throws Exception {
+
+        failing = true;
+        final List<Future<byte[]>> fetches = fetchConcurrently();
+
+        releaseSearch.countDown();
+        for (Future<byte[]> fetch : fetches) {
+            try {
+                fetch.get(10, TimeUnit.SECONDS);
+                fail("fetch should have failed");
+            } catch (ExecutionException ex) {
+                assertEquals("server down", ex.getCause().getMessage());
+            }
+        }
+        assertEquals(1, searches.get());
+        assertEquals(0, this.stored.get());
+        assertEquals(0, this.service.getInFlightCount());
+    }
+
+    /**
+     *  Fetch the heading from two threads at once,
+     * while the search of the first fetch waits to be released.
+     */
+    private List<Future<byte[]>> fetchConcurrently() throws Exception {
+
+        final CyclicBarrier together = new CyclicBarrier(2);
+        final Callable<Future<byte[]>> fetchCall =
+                new Callable<Future<byte[]>>() {
+
+                    public Future<byte[]> call() throws Exception {
+                        together.await(10, TimeUnit.SECONDS);
+                        return service.fetch(KEY, QUERY, sink);
+                    }
+                };
+        final Future<Future<byte[]>> first = this.callers.submit(fetchCall);
+        final Future<Future<byte[]>> second = this.callers.submit(fetchCall);
+
+        final List<Future<byte[]>> fetches = new ArrayList<Future<byte[]>>();
+        fetches.add(first.get(10, TimeUnit.SECONDS));
+        fetches.add(second.get(10, TimeUnit.SECONDS));
+        if (!searchStarted.await(10, TimeUnit.SECONDS)) {
+            fail("search never started");
+        }
+        return fetches;
+    }
+}
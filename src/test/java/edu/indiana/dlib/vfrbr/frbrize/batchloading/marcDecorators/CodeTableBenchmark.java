@@ -0,0 +1,137 @@
+/**
+ * Copyright 2009-2011, Trustees of Indiana University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *   Neither the name of Indiana University nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.indiana.dlib.vfrbr.frbrize.batchloading.marcDecorators;
+
+import java.util.Arrays;
+import org.marc4j.converter.impl.CodeTableGenerated;
+import org.marc4j.converter.impl.CodeTableInterface;
+
+/**
+ *  Lookup time of CompactCodeTable or marc4j's generated code table,
+ * over the Latin and extended Latin sets, and the East Asian set.
+ * <p>
+ * The build targets Java 6 and has no JMH, so this is a plain timing
+ * loop.  It measures one table per JVM, so neither table's profile
+ * shapes the other's compilation: run it once per table.  The warm-up
+ * rounds are discarded, and the median of the measured rounds is
+ * reported.
+ *
+ * usage: CodeTableBenchmark generated|compact [lookups] [warmups] [rounds]
+ */
+public final class CodeTableBenchmark {
+
+    private static final int BASIC_LATIN = 0x42;
+
+    private static final int EXTENDED_LATIN = 0x45;
+
+    private static final int MULTI_BYTE = 0x31;
+
+    /**
+     * Sample EACC codes, first rows of the East Asian table.
+     */
+    private static final int MULTI_BYTE_FIRST = 0x213021;
+
+    private static final int MULTI_BYTE_COUNT = 0x5E;
+
+    /**
+     * Sink for the lookups, so they are not optimized away.
+     */
+    private static int sink;
+
+    private CodeTableBenchmark() {
+    }
+
+    public static void main(final String[] args) {
+
+        if (args.length < 1) {
+            System.err.println("usage: CodeTableBenchmark generated|compact"
+                    + " [lookups] [warmups] [rounds]");
+            System.exit(1);
+        }
+        final CodeTableInterface table = "generated".equals(args[0])
+                ? new CodeTableGenerated() : CompactCodeTable.getInstance();
+        final int lookups = (args.length > 1)
+                ? Integer.parseInt(args[1]) : 20000000;
+        final int warmups = (args.length > 2) ? Integer.parseInt(args[2]) : 5;
+        final int rounds = (args.length > 3) ? Integer.parseInt(args[3]) : 10;
+
+        for (int round = 0; round < warmups; round++) {
+            singleByte(table, lookups);
+            multiByte(table, lookups);
+        }
+
+        final long[] singleByteMillis = new long[rounds];
+        final long[] multiByteMillis = new long[rounds];
+        for (int round = 0; round < rounds; round++) {
+            singleByteMillis[round] = singleByte(table, lookups);
+            multiByteMillis[round] = multiByte(table, lookups);
+        }
+        System.out.println(args[0] + ", " + lookups + " lookups per round,"
+                + " median of " + rounds + " rounds: single-byte "
+                + median(singleByteMillis) + " ms, multi-byte "
+                + median(multiByteMillis) + " ms");
+        System.out.println(sink & 1);
+    }
+
+    private static long singleByte(final CodeTableInterface table,
+                                   final int lookups) {
+        final long start = System.nanoTime();
+        int sum = 0;
+        for (int idx = 0; idx < lookups; idx++) {
+            sum += table.getChar(0x21 + (idx % 0x5E), BASIC_LATIN);
+            sum += table.getChar(0xE1 + (idx % 0x0F), EXTENDED_LATIN);
+            if (table.isCombining(0xE1 + (idx % 0x0F),
+                                  BASIC_LATIN, EXTENDED_LATIN)) {
+                sum++;
+            }
+        }
+        sink += sum;
+        return (System.nanoTime() - start) / 1000000;
+    }
+
+    private static long multiByte(final CodeTableInterface table,
+                                  final int lookups) {
+        final long start = System.nanoTime();
+        int sum = 0;
+        for (int idx = 0; idx < lookups; idx++) {
+            sum += table.getChar(MULTI_BYTE_FIRST + (idx % MULTI_BYTE_COUNT),
+                                 MULTI_BYTE);
+        }
+        sink += sum;
+        return (System.nanoTime() - start) / 1000000;
+    }
+
+    private static long median(final long[] values) {
+        final long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
@@ -0,0 +1,133 @@
+/**
+ * Copyright 2009-2011, Trustees of Indiana University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *   Neither the name of Indiana University nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.indiana.dlib.vfrbr.frbrize.batchloading.marcDecorators;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.marc4j.converter.impl.CodeTableGenerated;
+import org.marc4j.converter.impl.CodeTableInterface;
+
+/**
+ *  CompactCodeTable answers as marc4j's generated code table,
+ * for every code of every character set.
+ */
+public class CompactCodeTableTest {
+
+    /**
+     * ISO codes of the character sets of codetables.xml.
+     */
+    private static final int[] CHARACTER_SETS = {
+        0x42, 0x45, 0x67, 0x62, 0x70, 0x32, 0x4E, 0x51, 0x33, 0x34, 0x53, 0x31
+    };
+
+    /**
+     * Character set codes with no table.
+     */
+    private static final int[] UNKNOWN_SETS = {0x00, 0x41, 0x7F, 0x99};
+
+    /**
+     * Range of the three byte East Asian (EACC) codes.
+     */
+    private static final int MULTI_BYTE_FIRST = 0x200000;
+
+    private static final int MULTI_BYTE_LAST = 0x7FFFFF;
+
+    private static final int MULTI_BYTE = 0x31;
+
+    private final CodeTableInterface generated = new CodeTableGenerated();
+
+    private final CodeTableInterface compact = CompactCodeTable.getInstance();
+
+    @Test
+    public void combiningMatchesForEverySingleByteCode() {
+        final int[] sets = allSets();
+        for (int g0 : sets) {
+            for (int g1 : sets) {
+                for (int code = 0; code <= 0xFF; code++) {
+                    assertEquals("isCombining " + hex(code)
+                            + " g0 " + hex(g0) + " g1 " + hex(g1),
+                            this.generated.isCombining(code, g0, g1),
+                            this.compact.isCombining(code, g0, g1));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void combiningMatchesForEveryMultiByteCode() {
+        for (int code = MULTI_BYTE_FIRST; code <= MULTI_BYTE_LAST; code++) {
+            final boolean expected =
+                    this.generated.isCombining(code, MULTI_BYTE, MULTI_BYTE);
+            final boolean actual =
+                    this.compact.isCombining(code, MULTI_BYTE, MULTI_BYTE);
+            // asserted only on a mismatch, to keep the loop cheap
+            if (expected != actual) {
+                assertEquals("isCombining " + hex(code), expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void charMatchesForEverySingleByteCode() {
+        for (int mode : allSets()) {
+            for (int code = 0; code <= 0xFF; code++) {
+                assertEquals("getChar " + hex(code) + " mode " + hex(mode),
+                        this.generated.getChar(code, mode),
+                        this.compact.getChar(code, mode));
+            }
+        }
+    }
+
+    @Test
+    public void charMatchesForEveryMultiByteCode() {
+        for (int code = MULTI_BYTE_FIRST; code <= MULTI_BYTE_LAST; code++) {
+            final char expected = this.generated.getChar(code, MULTI_BYTE);
+            final char actual = this.compact.getChar(code, MULTI_BYTE);
+            // asserted only on a mismatch, to keep the loop cheap
+            if (expected != actual) {
+                assertEquals("getChar " + hex(code), expected, actual);
+            }
+        }
+    }
+
+    private static int[] allSets() {
+        final int[] sets = new int[CHARACTER_SETS.length + UNKNOWN_SETS.length];
+        System.arraycopy(CHARACTER_SETS, 0, sets, 0, CHARACTER_SETS.length);
+        System.arraycopy(UNKNOWN_SETS, 0,
+                         sets, CHARACTER_SETS.length, UNKNOWN_SETS.length);
+        return sets;
+    }
+
+    private static String hex(final int value) {
+        return "0x" + Integer.toHexString(value);
+    }
+}
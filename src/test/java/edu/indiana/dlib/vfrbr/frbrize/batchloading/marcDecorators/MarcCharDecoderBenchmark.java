@@ -0,0 +1,154 @@
+/**
+ * Copyright 2009-2011, Trustees of Indiana University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *   Neither the name of Indiana University nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.indiana.dlib.vfrbr.frbrize.batchloading.marcDecorators;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import org.marc4j.MarcReader;
+import org.marc4j.MarcStreamReader;
+import org.marc4j.converter.impl.AnselToUnicode;
+import org.marc4j.marc.DataField;
+import org.marc4j.marc.Record;
+import org.marc4j.marc.Subfield;
+
+/**
+ *  Field data decoding time per record, through MarcDataField with its
+ * per-thread converter, against a new AnselToUnicode converting the
+ * joined subfields of each accessor call.
+ * Each data field gets five accessor calls, as from the mappers.
+ *
+ * usage: MarcCharDecoderBenchmark file.mrc [passes]
+ */
+public final class MarcCharDecoderBenchmark {
+
+    private static final char[] NAME_SUBFIELDS = {'a', 'b', 'c', 'd'};
+
+    private static final int ACCESSOR_CALLS = 5;
+
+    /**
+     * Sink for the decoded lengths, so the work is not optimized away.
+     */
+    private static long sink;
+
+    private MarcCharDecoderBenchmark() {
+    }
+
+    public static void main(final String[] args) throws Exception {
+
+        if (args.length < 1) {
+            System.err.println(
+                    "usage: MarcCharDecoderBenchmark file.mrc [passes]");
+            System.exit(1);
+        }
+        final int passes = (args.length > 1) ? Integer.parseInt(args[1]) : 10;
+
+        final List<Record> records = new ArrayList<Record>();
+        final InputStream in =
+                new BufferedInputStream(new FileInputStream(args[0]));
+        try {
+            final MarcReader reader = new MarcStreamReader(in);
+            while (reader.hasNext()) {
+                records.add(reader.next());
+            }
+        } finally {
+            in.close();
+        }
+        System.out.println(records.size() + " records, " + passes + " passes");
+
+        // warm up both, then measure
+        perCall(records);
+        perField(records);
+
+        long start = System.nanoTime();
+        for (int pass = 0; pass < passes; pass++) {
+            perCall(records);
+        }
+        final long perCallNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int pass = 0; pass < passes; pass++) {
+            perField(records);
+        }
+        final long perFieldNanos = System.nanoTime() - start;
+
+        final long recordCount = (long) records.size() * passes;
+        System.out.println("converter per call: "
+                + (perCallNanos / recordCount) + " ns/record");
+        System.out.println("decoded per field:  "
+                + (perFieldNanos / recordCount) + " ns/record");
+        System.out.println(sink & 1);
+    }
+
+    /**
+     * Each accessor call converts the joined subfields
+     * with a new converter, Unicode records included.
+     */
+    private static void perCall(final List<Record> records) {
+        for (Record record : records) {
+            for (Object field : record.getDataFields()) {
+                final String joined = joined((DataField) field);
+                for (int call = 0; call < ACCESSOR_CALLS; call++) {
+                    sink += new AnselToUnicode().convert(
+                            joined.toCharArray()).length();
+                }
+            }
+        }
+    }
+
+    /**
+     * The accessor calls through one MarcRecord per record.
+     */
+    private static void perField(final List<Record> records) {
+        for (Record record : records) {
+            final MarcRecord marcRecord = new MarcRecord(record);
+            for (Object field : record.getDataFields()) {
+                final MarcDataField marcField = new MarcDataField(
+                        (DataField) field, marcRecord.isUnicode());
+                sink += marcField.concatSubfields(NAME_SUBFIELDS).length();
+                sink += String.valueOf(marcField.getValue('a')).length();
+                sink += marcField.getValueList('t').size();
+                sink += marcField.get1stIndicator().length();
+                sink += marcField.concatAllBut("0").length();
+            }
+        }
+    }
+
+    private static String joined(final DataField field) {
+        final StringBuilder joined = new StringBuilder();
+        for (Object subfield : field.getSubfields()) {
+            joined.append(' ').append(((Subfield) subfield).getData());
+        }
+        return joined.toString();
+    }
+}
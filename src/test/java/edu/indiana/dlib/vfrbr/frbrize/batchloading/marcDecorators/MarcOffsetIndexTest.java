@@ -0,0 +1,187 @@
+/**
+ * Copyright 2009-2011, Trustees of Indiana University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *   Neither the name of Indiana University nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.indiana.dlib.vfrbr.frbrize.batchloading.marcDecorators;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *  MarcOffsetIndex finds every record of a MARC data file, keeps its
+ * sidecar while the file is unchanged, and partitions the records.
+ */
+public class MarcOffsetIndexTest {
+
+    private static final int RECORDS = 500;
+
+    private File marcFile;
+
+    private File sidecar;
+
+    /**
+     * Expected record start offsets, then the file length.
+     */
+    private long[] offsets;
+
+    @Before
+    public void writeMarcFile() throws IOException {
+        this.marcFile = File.createTempFile("offsetIndex", ".mrc");
+        this.sidecar = new File(this.marcFile.getPath() + MarcOffsetIndex.SUFFIX);
+        this.offsets = new long[RECORDS + 1];
+        final FileOutputStream out = new FileOutputStream(this.marcFile);
+        try {
+            long pos = 0;
+            for (int idx = 0; idx < RECORDS; idx++) {
+                final byte[] rec = MarcTypeFilterInputStreamTest.record(
+                        "acdjm".charAt(idx % 5), idx, (idx * 131) % 2000);
+                this.offsets[idx] = pos;
+                out.write(rec);
+                pos += rec.length;
+            }
+            this.offsets[RECORDS] = pos;
+        } finally {
+            out.close();
+        }
+    }
+
+    @After
+    public void deleteMarcFile() {
+        this.sidecar.delete();
+        this.marcFile.delete();
+    }
+
+    @Test
+    public void offsetsAreTheRecordStarts() throws IOException {
+        final MarcOffsetIndex index = MarcOffsetIndex.build(this.marcFile);
+        assertEquals(RECORDS, index.size());
+        for (int recNum = 1; recNum <= RECORDS + 1; recNum++) {
+            assertEquals("offset of " + recNum,
+                         this.offsets[recNum - 1], index.offset(recNum));
+        }
+        for (int recNum : new int[] {0, RECORDS + 2}) {
+            try {
+                index.offset(recNum);
+                fail("offset of " + recNum);
+            } catch (IndexOutOfBoundsException expected) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void sidecarIsWrittenAndReused() throws IOException {
+        assertTrue(!this.sidecar.exists());
+        final MarcOffsetIndex built = MarcOffsetIndex.forFile(this.marcFile.getPath());
+        assertTrue("sidecar written", this.sidecar.isFile());
+
+        // a rewritten sidecar would have a new modification time
+        final long written = 1000L * 1000 * 1000 * 1000;
+        assertTrue(this.sidecar.setLastModified(written));
+        final MarcOffsetIndex reused = MarcOffsetIndex.forFile(this.marcFile.getPath());
+        assertEquals("sidecar reused", written, this.sidecar.lastModified());
+        assertEquals(built.size(), reused.size());
+        for (int recNum = 1; recNum <= RECORDS + 1; recNum++) {
+            assertEquals("offset of " + recNum,
+                         this.offsets[recNum - 1], reused.offset(recNum));
+        }
+    }
+
+    @Test
+    public void sidecarIsRebuiltWhenTheFileChanges() throws IOException {
+        MarcOffsetIndex.forFile(this.marcFile.getPath());
+        final byte[] rec = MarcTypeFilterInputStreamTest.record('j', 0, 10);
+        final FileOutputStream out = new FileOutputStream(this.marcFile, true);
+        try {
+            out.write(rec);
+        } finally {
+            out.close();
+        }
+        final MarcOffsetIndex index = MarcOffsetIndex.forFile(this.marcFile.getPath());
+        assertEquals(RECORDS + 1, index.size());
+        assertEquals(this.offsets[RECORDS], index.offset(RECORDS + 1));
+        assertEquals(this.offsets[RECORDS] + rec.length, index.offset(RECORDS + 2));
+    }
+
+    @Test
+    public void unreadableSidecarIsRebuilt() throws IOException {
+        final FileOutputStream out = new FileOutputStream(this.sidecar);
+        try {
+            out.write(new byte[] {1, 2, 3});
+        } finally {
+            out.close();
+        }
+        final MarcOffsetIndex index = MarcOffsetIndex.forFile(this.marcFile.getPath());
+        assertEquals(RECORDS, index.size());
+        assertEquals(RECORDS, MarcOffsetIndex.forFile(this.marcFile.getPath()).size());
+    }
+
+    @Test
+    public void partitionsCoverEveryRecordOnce() throws IOException {
+        final MarcOffsetIndex index = MarcOffsetIndex.build(this.marcFile);
+        for (int per : new int[] {0, 1, 7, 100, 499, 500, 501, 10000}) {
+            final int[] starts = index.partitions(per);
+            assertEquals("first of " + per, 1, starts[0]);
+            assertEquals("end of " + per, RECORDS + 1, starts[starts.length - 1]);
+            for (int part = 1; part < starts.length; part++) {
+                final int records = starts[part] - starts[part - 1];
+                assertTrue("partition " + part + " of " + per + ": " + records,
+                           records > 0 && records <= Math.max(1, per));
+            }
+            assertEquals("partitions of " + per,
+                         (RECORDS + Math.max(1, per) - 1) / Math.max(1, per),
+                         starts.length - 1);
+        }
+    }
+
+    @Test
+    public void notMarcIsRejected() throws IOException {
+        final FileOutputStream out = new FileOutputStream(this.marcFile);
+        try {
+            out.write("not a MARC record, only some text".getBytes("US-ASCII"));
+        } finally {
+            out.close();
+        }
+        try {
+            MarcOffsetIndex.build(this.marcFile);
+            fail("indexed text");
+        } catch (IOException expected) {
+            // expected
+        }
+    }
+}
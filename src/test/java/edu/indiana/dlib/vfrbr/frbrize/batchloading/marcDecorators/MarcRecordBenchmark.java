@@ -0,0 +1,172 @@
+/**
+ * Copyright 2009-2011, Trustees of Indiana University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *   Neither the name of Indiana University nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.indiana.dlib.vfrbr.frbrize.batchloading.marcDecorators;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import org.marc4j.MarcReader;
+import org.marc4j.MarcStreamReader;
+import org.marc4j.marc.DataField;
+import org.marc4j.marc.Record;
+import org.marc4j.marc.VariableField;
+
+/**
+ *  Field lookup cost per record, through the MarcRecord tag index,
+ * against a marc4j scan wrapping every hit.
+ * Each record gets the lookups a frbrize pass makes of it.
+ *
+ * usage: MarcRecordBenchmark file.mrc [passes]
+ */
+public final class MarcRecordBenchmark {
+
+    /**
+     * Tag sets looked up per record, as by the record handlers.
+     */
+    private static final String[][] LOOKUPS = {
+        {"100"}, {"110"}, {"130"}, {"240"}, {"245"}, {"245"},
+        {"700"}, {"700"}, {"710"}, {"711"}, {"730"}, {"740"},
+        {"100", "700"}, {"110", "710"}, {"110", "111", "710", "711"},
+        {"100", "110", "111", "700", "710", "711"}
+    };
+
+    private MarcRecordBenchmark() {
+    }
+
+    public static void main(final String[] args) throws Exception {
+
+        if (args.length < 1) {
+            System.err.println("usage: MarcRecordBenchmark file.mrc [passes]");
+            System.exit(1);
+        }
+        final int passes = (args.length > 1) ? Integer.parseInt(args[1]) : 20;
+
+        final List<Record> records = new ArrayList<Record>();
+        final InputStream in =
+                new BufferedInputStream(new FileInputStream(args[0]));
+        try {
+            final MarcReader reader = new MarcStreamReader(in);
+            while (reader.hasNext()) {
+                records.add(reader.next());
+            }
+        } finally {
+            in.close();
+        }
+        System.out.println(records.size() + " records, " + passes + " passes");
+
+        // warm up both, then measure
+        for (int pass = 0; pass < passes; pass++) {
+            scan(records);
+            indexed(records);
+        }
+        report("marc4j scan", records.size() * passes, new Runnable() {
+            public void run() {
+                for (int pass = 0; pass < passes; pass++) {
+                    scan(records);
+                }
+            }
+        });
+        report("tag index", records.size() * passes, new Runnable() {
+            public void run() {
+                for (int pass = 0; pass < passes; pass++) {
+                    indexed(records);
+                }
+            }
+        });
+    }
+
+    /**
+     * The lookups as a scan of the record per call, wrapping each hit.
+     */
+    private static int scan(final List<Record> records) {
+        int found = 0;
+        for (Record record : records) {
+            for (String[] tags : LOOKUPS) {
+                for (Object field : record.getVariableFields(tags)) {
+                    if (field instanceof DataField) {
+                        found += wrapped((VariableField) field);
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    private static int wrapped(final VariableField field) {
+        return (new MarcDataField((DataField) field) != null) ? 1 : 0;
+    }
+
+    /**
+     * The lookups through one MarcRecord decorator per record.
+     */
+    private static int indexed(final List<Record> records) {
+        int found = 0;
+        for (Record record : records) {
+            final MarcRecord marcRecord = new MarcRecord(record);
+            for (String[] tags : LOOKUPS) {
+                found += marcRecord.getDataFields(tags).size();
+            }
+        }
+        return found;
+    }
+
+    private static void report(final String label,
+                               final int recordCount,
+                               final Runnable run) {
+
+        final long allocatedBefore = allocatedBytes();
+        final long start = System.nanoTime();
+        run.run();
+        final long nanos = System.nanoTime() - start;
+        final long allocated = allocatedBytes() - allocatedBefore;
+
+        System.out.println(label
+                + ": " + (nanos / recordCount) + " ns/record"
+                + ((allocatedBefore < 0)
+                   ? "" : ", " + (allocated / recordCount) + " bytes/record"));
+    }
+
+    /**
+     * Bytes allocated by this thread, or -1 where the JVM can't tell.
+     */
+    private static long allocatedBytes() {
+        final java.lang.management.ThreadMXBean threads =
+                ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads)
+                    .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,199 @@
+/**
+ * Copyright 2009-2011, Trustees of Indiana University
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *   Redistributions of source code must retain the above copyright notice,
+ *   this list of conditions and the following disclaimer.
+ *
+ *   Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *   Neither the name of Indiana University nor the names of its
+ *   contributors may be used to endorse or promote products derived from this
+ *   software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package edu.indiana.dlib.vfrbr.frbrize.batchloading.marcDecorators;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ *  MarcTypeFilterInputStream passes on the wanted records byte for byte,
+ * and skips the others by their leader alone.
+ */
+public class MarcTypeFilterInputStreamTest {
+
+    private static final String WANTED = "jcd";
+
+    /**
+     * Types of record of the synthetic stream, wanted and not, with
+     * unwanted records first, between and last.
+     */
+    private static final String TYPES = "ajjcaaeidkjgtcmdaa";
+
+    private final byte[][] records = new byte[TYPES.length()][];
+
+    private final ByteArrayOutputStream all = new ByteArrayOutputStream();
+
+    private final ByteArrayOutputStream wanted = new ByteArrayOutputStream();
+
+    private final int[] skips = new int[0x100];
+
+    private int skipped;
+
+    public MarcTypeFilterInputStreamTest() throws IOException {
+        for (int idx = 0; idx < TYPES.length(); idx++) {
+            final char type = TYPES.charAt(idx);
+            // lengths from shorter to longer than a read buffer
+            this.records[idx] = record(type, idx, (idx * 37) % 300);
+            this.all.write(this.records[idx]);
+            if (WANTED.indexOf(type) >= 0) {
+                this.wanted.write(this.records[idx]);
+            }
+        }
+    }
+
+    @Test
+    public void passesExactlyTheWantedRecords() throws IOException {
+        for (int bufLength : new int[] {1, 7, 24, 100, 8192}) {
+            final InputStream in = this.filter();
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buf = new byte[bufLength];
+            while (in.available() > 0) {
+                final int count = in.read(buf);
+                assertTrue("read " + count, count > 0);
+                out.write(buf, 0, count);
+            }
+            assertTrue("bytes read with buffer " + bufLength,
+                       Arrays.equals(this.wanted.toByteArray(),
+                                     out.toByteArray()));
+            assertEquals(-1, in.read());
+            assertEquals(-1, in.read(buf));
+        }
+    }
+
+    @Test
+    public void passesTheWantedRecordsByteAtATime() throws IOException {
+        final InputStream in = this.filter();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int one;
+        while ((one = in.read()) != -1) {
+            out.write(one);
+        }
+        assertTrue(Arrays.equals(this.wanted.toByteArray(),
+                                 out.toByteArray()));
+    }
+
+    @Test
+    public void countsTheSkippedRecords() throws IOException {
+        final InputStream in = this.filter();
+        final byte[] buf = new byte[64];
+        while (in.read(buf) != -1) {
+            // drain
+        }
+        int unwanted = 0;
+        for (int idx = 0; idx < TYPES.length(); idx++) {
+            if (WANTED.indexOf(TYPES.charAt(idx)) < 0) {
+                unwanted++;
+            }
+        }
+        assertEquals(unwanted, this.skipped);
+        for (char type = 'a'; type <= 'z'; type++) {
+            assertEquals("skips of " + type,
+                         (WANTED.indexOf(type) < 0) ? occurrences(type) : 0,
+                         this.skips[type]);
+        }
+    }
+
+    @Test
+    public void availableDropsToZeroAfterTheLastWantedRecord()
+            throws IOException {
+        final InputStream in = this.filter();
+        final int wantedLength = this.wanted.size();
+        final byte[] buf = new byte[wantedLength];
+        int read = 0;
+        while (read < wantedLength) {
+            assertTrue("available at " + read, in.available() > 0);
+            read += in.read(buf, read, wantedLength - read);
+        }
+        // only unwanted records are left
+        assertEquals(0, in.available());
+        assertEquals(0, in.available());
+        assertEquals(-1, in.read());
+    }
+
+    @Test
+    public void passesNothingWhenNoRecordIsWanted() throws IOException {
+        final InputStream in = new MarcTypeFilterInputStream(
+                new ByteArrayInputStream(this.all.toByteArray()), "z", null);
+        assertEquals(0, in.available());
+        assertEquals(-1, in.read());
+    }
+
+    private InputStream filter() {
+        this.skipped = 0;
+        Arrays.fill(this.skips, 0);
+        return new MarcTypeFilterInputStream(
+                new ByteArrayInputStream(this.all.toByteArray()),
+                WANTED,
+                new MarcCollection.SkipListener() {
+                    public void skipped(final char typeOfRecord) {
+                        MarcTypeFilterInputStreamTest.this.skipped++;
+                        MarcTypeFilterInputStreamTest.this.skips[typeOfRecord]++;
+                    }
+                });
+    }
+
+    private static int occurrences(final char type) {
+        int count = 0;
+        for (int idx = 0; idx < TYPES.length(); idx++) {
+            if (TYPES.charAt(idx) == type) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * A record of a leader of the given type, then bodyLength bytes
+     * distinct to the record, then the record terminator.
+     */
+    static byte[] record(final char type, final int seq, final int bodyLength) {
+        final int length = 24 + bodyLength + 1;
+        final byte[] rec = new byte[length];
+        final String leader = String.format("%05d", length)
+                + "n" + type + "m a2200000 a 4500";
+        for (int idx = 0; idx < 24; idx++) {
+            rec[idx] = (byte) leader.charAt(idx);
+        }
+        for (int idx = 0; idx < bodyLength; idx++) {
+            rec[24 + idx] = (byte) ('0' + ((seq + idx) % 64));
+        }
+        rec[length - 1] = 0x1D;
+        return rec;
+    }
+}